@@ -38,6 +38,7 @@ import org.slf4j.LoggerFactory;
 import cc.sferalabs.sfera.core.Configuration;
 import cc.sferalabs.sfera.core.PluginsClassLoader;
 import cc.sferalabs.sfera.core.Sfera;
+import cc.sferalabs.sfera.core.SystemNode;
 import cc.sferalabs.sfera.events.Bus;
 import cc.sferalabs.sfera.util.files.FilesWatcher;
 
@@ -105,7 +106,7 @@ public abstract class Applications {
 								Bus.register((EventListener) appInstance);
 							}
 							logger.info("App '{}' instantiated", appClass);
-							appInstance.init();
+							initWhenReady(appInstance);
 						} catch (Throwable e) {
 							logger.error("Error instantiating app: " + appClass, e);
 						}
@@ -130,6 +131,27 @@ public abstract class Applications {
 		}
 	}
 
+	/**
+	 * Initializes the specified application as soon as the services it
+	 * depends on have been initialized.
+	 * 
+	 * @param app
+	 */
+	private static void initWhenReady(Application app) {
+		String appClass = app.getClass().getName();
+		SystemNode.whenServicesInitialized(app.getDependencies()).whenComplete((v, e) -> {
+			if (e != null) {
+				logger.error("App '{}' not initialized: dependencies not initialized", appClass);
+				return;
+			}
+			try {
+				app.init();
+			} catch (Throwable t) {
+				logger.error("Error initializing app: " + appClass, t);
+			}
+		});
+	}
+
 	/**
 	 * 
 	 * @param appClass
@@ -24,6 +24,8 @@ package cc.sferalabs.sfera.console;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -64,6 +66,11 @@ public class Console implements AutoStartService {
 		logger.debug("Added console handler: {}", key);
 	}
 
+	@Override
+	public Collection<Class<? extends AutoStartService>> getDependencies() {
+		return Collections.emptyList();
+	}
+
 	@Override
 	public void init() {
 		StandardConsoleSession scs = new StandardConsoleSession();
@@ -0,0 +1,234 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utility class recording wall-clock and CPU time of the phases of the system
+ * start-up.
+ * <p>
+ * Phases are identified by names with a '/'-separated prefix denoting their
+ * category, e.g. {@code service/WebServer} or {@code script/myscript.ev}. Only
+ * the first occurrence of each phase is recorded, so that reloads and restarts
+ * happening after the start-up do not add up; phases ending after the system
+ * is ready, like the first initialization of drivers, are still recorded.
+ * </p>
+ * 
+ * <pre>
+ * BootProfiler.Phase p = BootProfiler.start("plugins");
+ * try {
+ * 	...
+ * } finally {
+ * 	p.end();
+ * }
+ * </pre>
+ */
+public abstract class BootProfiler {
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+	private static final Map<String, Phase> PHASES = new LinkedHashMap<>();
+	private static final Phase NO_OP = new Phase(null);
+	private static final long START = System.nanoTime();
+
+	private static volatile long bootTime = -1;
+
+	/**
+	 * A profiled start-up phase.
+	 */
+	public static class Phase {
+
+		private final String name;
+		private final String thread;
+		private final long offset;
+		private final long wallStart;
+		private final long cpuStart;
+		private volatile long wall = -1;
+		private volatile long cpu = -1;
+
+		/**
+		 * 
+		 * @param name
+		 */
+		private Phase(String name) {
+			this.name = name;
+			this.thread = Thread.currentThread().getName();
+			this.wallStart = System.nanoTime();
+			this.offset = wallStart - START;
+			this.cpuStart = getCurrentThreadCpuTime();
+		}
+
+		/**
+		 * Marks the end of this phase. Subsequent invocations have no effect.
+		 */
+		public void end() {
+			if (name == null || wall >= 0) {
+				return;
+			}
+			long cpuEnd = getCurrentThreadCpuTime();
+			if (cpuStart >= 0 && cpuEnd >= 0) {
+				cpu = cpuEnd - cpuStart;
+			}
+			wall = System.nanoTime() - wallStart;
+		}
+
+		/**
+		 * Returns the name of this phase.
+		 * 
+		 * @return the name of this phase
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the name of the thread executing this phase.
+		 * 
+		 * @return the name of the thread executing this phase
+		 */
+		public String getThread() {
+			return thread;
+		}
+
+		/**
+		 * Returns the time elapsed from the start of the system to the start of
+		 * this phase, in milliseconds.
+		 * 
+		 * @return the start time of this phase relative to the start of the
+		 *         system
+		 */
+		public long getStartMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(offset);
+		}
+
+		/**
+		 * Returns the wall-clock duration of this phase, in milliseconds.
+		 * 
+		 * @return the wall-clock duration of this phase, or -1 if the phase
+		 *         has not ended yet
+		 */
+		public long getWallMillis() {
+			long wall = this.wall;
+			return wall < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(wall);
+		}
+
+		/**
+		 * Returns the CPU time used by the thread executing this phase, in
+		 * milliseconds.
+		 * 
+		 * @return the CPU time of this phase, or -1 if the phase has not ended
+		 *         yet or CPU time measurement is not supported
+		 */
+		public long getCpuMillis() {
+			long cpu = this.cpu;
+			return cpu < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(cpu);
+		}
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	private static long getCurrentThreadCpuTime() {
+		try {
+			if (THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()) {
+				return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+			}
+		} catch (Exception e) {
+		}
+		return -1;
+	}
+
+	/**
+	 * Starts a new phase with the specified name. The {@link Phase#end()}
+	 * method of the returned phase must be invoked when the phase ends, by the
+	 * same thread. If a phase with the same
+	 * name was already recorded, the returned phase is not recorded.
+	 * 
+	 * @param name
+	 *            the phase name
+	 * @return the started phase
+	 */
+	public static Phase start(String name) {
+		synchronized (PHASES) {
+			if (PHASES.containsKey(name)) {
+				return NO_OP;
+			}
+			Phase phase = new Phase(name);
+			PHASES.put(name, phase);
+			return phase;
+		}
+	}
+
+	/**
+	 * Marks the end of the system start-up.
+	 */
+	static void ready() {
+		bootTime = System.nanoTime() - START;
+	}
+
+	/**
+	 * Returns the time elapsed from the start of the system until it was
+	 * ready, in milliseconds.
+	 * 
+	 * @return the boot time, or -1 if the system is not ready yet
+	 */
+	public static long getBootMillis() {
+		long bootTime = BootProfiler.bootTime;
+		return bootTime < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(bootTime);
+	}
+
+	/**
+	 * Returns the recorded phases, in order of start.
+	 * 
+	 * @return the recorded phases
+	 */
+	public static List<Phase> getPhases() {
+		synchronized (PHASES) {
+			return new ArrayList<>(PHASES.values());
+		}
+	}
+
+	/**
+	 * Returns a textual report of the recorded phases.
+	 * 
+	 * @return a textual report of the recorded phases
+	 */
+	public static String getReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Boot time: ").append(getBootMillis()).append(" ms\n");
+		sb.append(String.format("%8s %8s %8s  %-24s %s%n", "start", "wall", "cpu", "thread", "phase"));
+		for (Phase p : getPhases()) {
+			sb.append(String.format("%8d %8d %8d  %-24s %s%n", p.getStartMillis(), p.getWallMillis(),
+					p.getCpuMillis(), p.getThread(), p.getName()));
+		}
+		return sb.toString();
+	}
+
+}
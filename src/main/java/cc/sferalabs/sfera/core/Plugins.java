@@ -75,7 +75,13 @@ public abstract class Plugins {
 			for (Path file : stream) {
 				try {
 					if (!Files.isHidden(file)) {
-						Plugin p = new Plugin(file);
+						Plugin p;
+						BootProfiler.Phase phase = BootProfiler.start("plugin/" + file.getFileName());
+						try {
+							p = new Plugin(file);
+						} finally {
+							phase.end();
+						}
 						plugins.put(p.getId(), p);
 						logger.info("Plugin '{}' version '{}' loaded", p.getId(), p.getVersion());
 					}
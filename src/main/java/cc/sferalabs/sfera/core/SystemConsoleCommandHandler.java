@@ -27,7 +27,6 @@ package cc.sferalabs.sfera.core;
 
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.Map;
 import java.util.function.Predicate;
 
 import cc.sferalabs.sfera.console.ConsoleCommandHandler;
@@ -62,6 +61,8 @@ public class SystemConsoleCommandHandler implements ConsoleCommandHandler {
 	public String accept(String cmd, ConsoleSession session) {
 		if (cmd.startsWith("state")) {
 			return getState(cmd.substring(5));
+		} else if (cmd.equals("boot")) {
+			return BootProfiler.getReport();
 		} else if (cmd.equals("quit")) {
 			SystemNode.getInstance().quit();
 			return "Quitting...";
@@ -88,8 +89,7 @@ public class SystemConsoleCommandHandler implements ConsoleCommandHandler {
 
 		Predicate<Event> predicate = EventsUtil.getEventIdSpecMatchingPredicate(finalId);
 
-		Map<String, Event> state = Bus.getCurrentState();
-		Collection<Event> events = state.values();
+		Collection<Event> events = Bus.getCurrentEvents();
 
 		StringBuilder sb = new StringBuilder();
 		events.stream().filter(predicate).sorted(comparator).forEach(e -> {
@@ -28,10 +28,19 @@ import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -48,6 +57,7 @@ import cc.sferalabs.sfera.core.services.TasksManager;
 import cc.sferalabs.sfera.drivers.Drivers;
 import cc.sferalabs.sfera.events.Bus;
 import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.scripts.ScriptsEngine;
 
 /**
  * The system node
@@ -63,7 +73,10 @@ public class SystemNode extends Node {
 	private static final SystemNode INSTANCE = new SystemNode();
 	private static final String VERSION = SystemNode.class.getPackage().getImplementationVersion();
 	private static final List<Service> services = new ArrayList<>();
+	private static final Collection<Class<? extends AutoStartService>> DRIVERS_DEPENDENCIES = Collections
+			.singletonList(ScriptsEngine.class);
 	private Configuration config;
+	private volatile Map<Class<?>, CompletableFuture<Void>> servicesInitialization;
 
 	/**
 	 * Constructor for singleton instance
@@ -87,6 +100,40 @@ public class SystemNode extends Node {
 		return INSTANCE;
 	}
 
+	/**
+	 * Returns a future that completes when the specified services have been
+	 * initialized. The future completes exceptionally if any of the services
+	 * is unknown or failed to initialize.
+	 * 
+	 * @param dependencies
+	 *            the classes of the services to wait for, or {@code null} to
+	 *            wait for all the services
+	 * @return a future that completes when the specified services have been
+	 *         initialized
+	 */
+	public static CompletableFuture<Void> whenServicesInitialized(
+			Collection<Class<? extends AutoStartService>> dependencies) {
+		Map<Class<?>, CompletableFuture<Void>> initialized = INSTANCE.servicesInitialization;
+		if (initialized == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		List<CompletableFuture<Void>> waitFor = new ArrayList<>();
+		if (dependencies == null) {
+			waitFor.addAll(initialized.values());
+		} else {
+			for (Class<?> dependency : dependencies) {
+				CompletableFuture<Void> f = initialized.get(dependency);
+				if (f == null) {
+					f = new CompletableFuture<>();
+					f.completeExceptionally(
+							new IllegalStateException("Unknown service " + dependency.getName()));
+				}
+				waitFor.add(f);
+			}
+		}
+		return CompletableFuture.allOf(waitFor.toArray(new CompletableFuture<?>[waitFor.size()]));
+	}
+
 	/**
 	 * 
 	 * @return the system configuration
@@ -99,11 +146,19 @@ public class SystemNode extends Node {
 	 * Starts the process
 	 */
 	void start() {
-		logger.info("Starting...");
-		logSystemInfo();
-		Bus.post(SystemStateEvent.START);
-		init();
+		BootProfiler.Phase p = BootProfiler.start("boot");
+		try {
+			logger.info("Starting...");
+			logSystemInfo();
+			Bus.post(SystemStateEvent.START);
+			init();
+		} finally {
+			p.end();
+		}
+		BootProfiler.ready();
 		Bus.post(SystemStateEvent.READY);
+		logger.info("Ready in {} ms - services startup times (ms): {}", BootProfiler.getBootMillis(),
+				getServicesStartupTimes());
 	}
 
 	/**
@@ -130,45 +185,233 @@ public class SystemNode extends Node {
 	 * Initializes data structures, launches services, drivers and applications
 	 */
 	private synchronized void init() {
+		BootProfiler.Phase p = BootProfiler.start("config");
 		try {
 			config = new Configuration("sfera.yml");
 		} catch (NoSuchFileException e) {
 			// no config file, that's fine...
 		} catch (Exception e) {
 			throw new RuntimeException(e);
+		} finally {
+			p.end();
 		}
 
+		p = BootProfiler.start("access");
 		try {
 			Access.init();
 		} catch (Exception e) {
 			logger.error("Error initializing access config", e);
+		} finally {
+			p.end();
 		}
 
-		Plugins.load();
+		p = BootProfiler.start("plugins");
+		try {
+			Plugins.load();
+		} finally {
+			p.end();
+		}
 
+		BootProfiler.Phase servicesPhase = BootProfiler.start("services");
+		servicesInitialization = initServices();
+
+		p = BootProfiler.start("applications");
+		try {
+			Applications.load();
+		} finally {
+			p.end();
+		}
+
+		try {
+			whenServicesInitialized(DRIVERS_DEPENDENCIES).join();
+		} catch (CompletionException e) {
+			logger.warn("Loading drivers without initialized dependencies");
+		}
+		p = BootProfiler.start("drivers");
+		try {
+			Drivers.load();
+		} finally {
+			p.end();
+		}
+
+		try {
+			whenServicesInitialized(null).join();
+		} catch (CompletionException e) {
+			// already logged
+		} finally {
+			servicesPhase.end();
+		}
+
+		Console.addHandler(SystemConsoleCommandHandler.INSTANCE);
+	}
+
+	/**
+	 * Initializes the {@link AutoStartService}s. Each service is initialized
+	 * after the services it depends on; independent services are initialized
+	 * in parallel, unless the {@code startup_parallel} configuration parameter
+	 * is set to {@code false}. Services with unknown or cyclic dependencies,
+	 * and the services depending on them, are not initialized.
+	 * 
+	 * @return the initialization futures of the services, by service class
+	 */
+	private Map<Class<?>, CompletableFuture<Void>> initServices() {
+		Map<Class<?>, AutoStartService> services = new LinkedHashMap<>();
 		ServiceLoader<AutoStartService> autoStartServices = ServiceLoader.load(AutoStartService.class);
 		Iterator<AutoStartService> it = autoStartServices.iterator();
 		while (it.hasNext()) {
 			try {
 				AutoStartService service = it.next();
-				String name = service.getClass().getSimpleName();
-				try {
-					logger.debug("Initializing service {}...", name);
-					service.init();
-					addToLifeCycle(service);
-					logger.debug("Service {} initiated", name);
-				} catch (Exception e) {
-					logger.error("Error initiating service '" + name + "'", e);
-				}
+				services.put(service.getClass(), service);
 			} catch (Throwable e) {
 				logger.error("Error initializing service", e);
 			}
 		}
 
-		Applications.load();
-		Drivers.load();
+		Map<Class<?>, List<Class<?>>> graph = new HashMap<>();
+		List<Class<?>> preceding = new ArrayList<>();
+		for (Class<?> c : services.keySet()) {
+			Collection<Class<? extends AutoStartService>> dependencies = services.get(c).getDependencies();
+			graph.put(c, dependencies == null ? new ArrayList<>(preceding) : new ArrayList<>(dependencies));
+			preceding.add(c);
+		}
 
-		Console.addHandler(SystemConsoleCommandHandler.INSTANCE);
+		boolean parallel = config == null || config.get("startup_parallel", true);
+		Executor executor = parallel ? TasksManager.getTasksExecutorService() : Runnable::run;
+		Map<Class<?>, CompletableFuture<Void>> initialized = new HashMap<>();
+		for (Class<?> c : services.keySet()) {
+			scheduleService(c, services, graph, initialized, new ArrayList<>(), executor);
+		}
+
+		return initialized;
+	}
+
+	/**
+	 * Creates the initialization future of the specified service, after
+	 * recursively creating the ones of its dependencies. The future completes
+	 * exceptionally if a dependency is unknown or cyclic, if the future of a
+	 * dependency did or if the initialization of the service fails.
+	 * 
+	 * @param c
+	 * @param services
+	 * @param graph
+	 * @param initialized
+	 * @param path
+	 * @param executor
+	 * @return
+	 */
+	private CompletableFuture<Void> scheduleService(Class<?> c, Map<Class<?>, AutoStartService> services,
+			Map<Class<?>, List<Class<?>>> graph, Map<Class<?>, CompletableFuture<Void>> initialized,
+			List<Class<?>> path, Executor executor) {
+		CompletableFuture<Void> f = initialized.get(c);
+		if (f != null) {
+			return f;
+		}
+		String name = c.getSimpleName();
+		if (path.contains(c)) {
+			StringBuilder cycle = new StringBuilder();
+			for (Class<?> p : path.subList(path.indexOf(c), path.size())) {
+				cycle.append(p.getSimpleName()).append(" -> ");
+			}
+			cycle.append(name);
+			logger.error("Cyclic services dependency: {}", cycle);
+			f = new CompletableFuture<>();
+			f.completeExceptionally(new IllegalStateException("Cyclic dependency"));
+			return f;
+		}
+		Map<String, CompletableFuture<Void>> waitFor = new LinkedHashMap<>();
+		path.add(c);
+		for (Class<?> dependency : graph.get(c)) {
+			if (!services.containsKey(dependency)) {
+				f = failedService(name, "unknown dependency " + dependency.getName());
+				break;
+			}
+			CompletableFuture<Void> df = scheduleService(dependency, services, graph, initialized, path,
+					executor);
+			if (df.isCompletedExceptionally()) {
+				f = failedService(name, "dependency " + dependency.getSimpleName() + " not initialized");
+				break;
+			}
+			waitFor.put(dependency.getSimpleName(), df);
+		}
+		path.remove(path.size() - 1);
+		if (f == null) {
+			AutoStartService service = services.get(c);
+			CompletableFuture<Void> init = new CompletableFuture<>();
+			Collection<CompletableFuture<Void>> dfs = waitFor.values();
+			CompletableFuture<Void> all = CompletableFuture
+					.allOf(dfs.toArray(new CompletableFuture<?>[dfs.size()]));
+			all.whenComplete((v, e) -> {
+				if (e == null) {
+					executor.execute(Task.create("Service " + name + " init",
+							() -> initService(service, name, init)));
+					return;
+				}
+				for (Entry<String, CompletableFuture<Void>> df : waitFor.entrySet()) {
+					if (df.getValue().isCompletedExceptionally()) {
+						logger.error("Service '{}' not initialized: dependency {} not initialized", name,
+								df.getKey());
+						break;
+					}
+				}
+				init.completeExceptionally(e);
+			});
+			f = init;
+		}
+		initialized.put(c, f);
+		return f;
+	}
+
+	/**
+	 * 
+	 * @param name
+	 * @param reason
+	 * @return
+	 */
+	private CompletableFuture<Void> failedService(String name, String reason) {
+		logger.error("Service '{}' not initialized: {}", name, reason);
+		CompletableFuture<Void> f = new CompletableFuture<>();
+		f.completeExceptionally(new IllegalStateException(reason));
+		return f;
+	}
+
+	/**
+	 * 
+	 * @param service
+	 * @param name
+	 * @param future
+	 */
+	private void initService(AutoStartService service, String name, CompletableFuture<Void> future) {
+		BootProfiler.Phase p = BootProfiler.start("service/" + name);
+		try {
+			logger.debug("Initializing service {}...", name);
+			service.init();
+			addToLifeCycle(service);
+			logger.debug("Service {} initiated", name);
+		} catch (Throwable e) {
+			logger.error("Error initiating service '" + name + "'", e);
+			future.completeExceptionally(e);
+			return;
+		} finally {
+			p.end();
+		}
+		future.complete(null);
+	}
+
+	/**
+	 * Returns the time, in milliseconds, taken by the initialization of each of
+	 * the {@link AutoStartService}s.
+	 * 
+	 * @return a map from service names to initialization times
+	 * @see BootProfiler
+	 */
+	public static Map<String, Long> getServicesStartupTimes() {
+		Map<String, Long> times = new LinkedHashMap<>();
+		for (BootProfiler.Phase p : BootProfiler.getPhases()) {
+			if (p.getName().startsWith("service/")) {
+				times.put(p.getName().substring(8), p.getWallMillis());
+			}
+		}
+		return times;
 	}
 
 	/**
@@ -242,7 +485,9 @@ public class SystemNode extends Node {
 	 *            the service to be added
 	 */
 	public static void addToLifeCycle(Service service) {
-		services.add(service);
+		synchronized (services) {
+			services.add(service);
+		}
 	}
 
 	/**
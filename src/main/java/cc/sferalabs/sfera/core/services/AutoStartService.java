@@ -22,6 +22,8 @@
 
 package cc.sferalabs.sfera.core.services;
 
+import java.util.Collection;
+
 /**
  * Interface for services to be started at the beginning of Sfera life cycle.
  * 
@@ -40,4 +42,21 @@ public interface AutoStartService extends Service {
 	 */
 	public void init() throws Exception;
 
+	/**
+	 * Returns the classes of the services that must be initialized before this
+	 * service. Services not depending on each other may be initialized in
+	 * parallel.
+	 * <p>
+	 * The default implementation returns {@code null}, meaning that this
+	 * service depends on all the services preceding it in the service
+	 * configuration files.
+	 * </p>
+	 * 
+	 * @return the classes of the services this service depends on, or
+	 *         {@code null} to depend on all the preceding services
+	 */
+	public default Collection<Class<? extends AutoStartService>> getDependencies() {
+		return null;
+	}
+
 }
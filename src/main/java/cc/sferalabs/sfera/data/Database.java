@@ -31,6 +31,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EventListener;
 import java.util.GregorianCalendar;
 import java.util.Objects;
@@ -93,6 +95,11 @@ public class Database extends Node implements AutoStartService, EventListener {
 		return dbConnection;
 	}
 
+	@Override
+	public Collection<Class<? extends AutoStartService>> getDependencies() {
+		return Collections.emptyList();
+	}
+
 	@Override
 	public void init() throws Exception {
 		synchronized (dbLock) {
@@ -30,6 +30,8 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +63,11 @@ public class DocServer implements AutoStartService {
 
 	private boolean servletAdded = false;
 
+	@Override
+	public Collection<Class<? extends AutoStartService>> getDependencies() {
+		return Collections.singletonList(WebServer.class);
+	}
+
 	@Override
 	public void init() {
 		Path docsPath = Paths.get("docs/");
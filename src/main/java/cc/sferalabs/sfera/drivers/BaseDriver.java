@@ -0,0 +1,552 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cc.sferalabs.sfera.core.Configuration;
+import cc.sferalabs.sfera.events.Bus;
+import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.events.StringEvent;
+import cc.sferalabs.sfera.util.files.FilesWatcher;
+
+/**
+ * Base class of the drivers, implementing their life cycle: configuration,
+ * initialization, restarts with backoff and termination. Drivers extend
+ * either {@link Driver}, running in a dedicated thread, or
+ * {@link EventLoopDriver}, reacting to callbacks on a shared event loop.
+ * 
+ * @author Giampiero Baggiani
+ *
+ * @version 1.0.0
+ *
+ */
+public abstract class BaseDriver extends Node {
+
+	private static final String CIRCUIT_CLOSED = "closed";
+	private static final String CIRCUIT_OPEN = "open";
+	private static final String CIRCUIT_HALF_OPEN = "half_open";
+
+	private static final ClassValue<Constructor<?>> STATE_EVENTS_CONSTRUCTORS = new ClassValue<Constructor<?>>() {
+
+		@Override
+		protected Constructor<?> computeValue(Class<?> driverClass) {
+			try {
+				return Proxy.getProxyClass(driverClass.getClassLoader(), getDriverEventsInterfaces(driverClass))
+						.getConstructor(InvocationHandler.class);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	private String configFile;
+	private Configuration config;
+	private volatile boolean quit = false;
+	private volatile boolean restart = false;
+	private Future<?> future;
+	// guarded by this
+	private int failures = 0;
+	private long runningSince = 0;
+	private String circuit = CIRCUIT_CLOSED;
+
+	protected final Logger log;
+
+	/**
+	 * Constructs a {@code BaseDriver}
+	 * 
+	 * @param id
+	 *            the driver ID
+	 */
+	BaseDriver(String id) {
+		super(id);
+		this.log = LoggerFactory.getLogger(getClass().getName() + "." + id);
+	}
+
+	/**
+	 * Loads the driver configuration from the configuration file, if set, and
+	 * registers the watcher reloading it on change.
+	 * 
+	 * @return the ID of the registered configuration file watcher, or
+	 *         {@code null} if none was registered
+	 * @throws Exception
+	 *             if an error occurs loading the configuration
+	 */
+	UUID loadConfiguration() throws Exception {
+		UUID configWatcherId = null;
+		if (configFile != null) {
+			config = new Configuration(configFile);
+			try {
+				configWatcherId = FilesWatcher.register(config.getRealPath(), "Driver config reload",
+						this::reloadConfiguration, false, false);
+			} catch (IOException e) {
+				log.error("Error watching config file", e);
+			}
+		} else if (config == null) {
+			config = new Configuration();
+		}
+		return configWatcherId;
+	}
+
+	/**
+	 * 
+	 */
+	private void reloadConfiguration() {
+		Configuration config = null;
+		try {
+			try {
+				config = new Configuration(configFile);
+			} catch (NoSuchFileException e) {
+				log.debug("Configuration file deleted");
+				return;
+			}
+			log.info("Configuration file changed");
+			onConfigChange(config);
+		} catch (Throwable t) {
+			log.error("Error reloading configuration", t);
+		}
+	}
+
+	/**
+	 * Returns the current driver configuration.
+	 * 
+	 * @return the current driver configuration
+	 */
+	Configuration getConfiguration() {
+		return config;
+	}
+
+	/**
+	 * Returns whether the driver has been requested to quit.
+	 * 
+	 * @return {@code true} if the driver has been requested to quit,
+	 *         {@code false} otherwise
+	 */
+	boolean isQuitting() {
+		return quit;
+	}
+
+	/**
+	 * Terminates a run of the driver, posting the quit state event and calling
+	 * {@link #onQuit()}.
+	 * 
+	 * @param configWatcherId
+	 *            the ID of the configuration file watcher to unregister, or
+	 *            {@code null}
+	 */
+	void quitRun(UUID configWatcherId) {
+		try {
+			log.info("Quitting...");
+			postDriverStateEvent("quit");
+			if (configWatcherId != null) {
+				FilesWatcher.unregister(configWatcherId);
+			}
+			onQuit();
+			log.info("Quitted");
+		} catch (Throwable t) {
+			log.error("Exception in onQuit()", t);
+		}
+	}
+
+	/**
+	 * Called when the driver has been successfully initialized.
+	 */
+	synchronized void runStarted() {
+		runningSince = System.currentTimeMillis();
+		setCircuit(CIRCUIT_CLOSED);
+	}
+
+	/**
+	 * Called when a run of the driver has ended before quitting, computes the
+	 * delay after which the driver is initialized again.
+	 * <p>
+	 * The delay starts from the {@code restart_delay} configuration parameter
+	 * and is multiplied by {@code restart_backoff_multiplier} for each
+	 * consecutive failure, up to {@code restart_max_delay}, with a random
+	 * variation of {@code restart_jitter} (fraction of the delay). The failures
+	 * count is reset when a run lasts longer than {@code restart_max_delay}.
+	 * After {@code restart_circuit_failures} consecutive failures the circuit
+	 * state of the driver becomes "open".
+	 * </p>
+	 * 
+	 * @return the delay in milliseconds
+	 */
+	synchronized long nextRestartDelay() {
+		Configuration config = this.config == null ? new Configuration() : this.config;
+		long delay = config.get("restart_delay", (Number) 5000).longValue();
+		long maxDelay = Math.max(delay, config.get("restart_max_delay", (Number) 300000).longValue());
+		double multiplier = Math.max(1, config.get("restart_backoff_multiplier", (Number) 2).doubleValue());
+		double jitter = Math.min(1, Math.max(0, config.get("restart_jitter", (Number) 0.2).doubleValue()));
+		int circuitFailures = config.get("restart_circuit_failures", (Number) 5).intValue();
+
+		long now = System.currentTimeMillis();
+		if (runningSince > 0 && now - runningSince >= maxDelay) {
+			failures = 0;
+		}
+		runningSince = 0;
+		failures++;
+		if (failures >= circuitFailures) {
+			setCircuit(CIRCUIT_OPEN);
+		}
+
+		double d = Math.min(maxDelay, delay * Math.pow(multiplier, failures - 1));
+		d *= 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+		long next = Math.max(0, Math.round(d));
+		log.info("Restarting in {} ms (failures: {})", next, failures);
+		return next;
+	}
+
+	/**
+	 * Called before initializing the driver again after a failure.
+	 */
+	synchronized void retryStarting() {
+		if (CIRCUIT_OPEN.equals(circuit)) {
+			setCircuit(CIRCUIT_HALF_OPEN);
+		}
+	}
+
+	/**
+	 * 
+	 * @param state
+	 */
+	private void setCircuit(String state) {
+		if (!state.equals(circuit)) {
+			circuit = state;
+			postDriverEvent("driverCircuit", state);
+		}
+	}
+
+	/**
+	 * Called when the driver execution has terminated, restarts it if a restart
+	 * was requested.
+	 */
+	synchronized void terminated() {
+		future = null;
+		failures = 0;
+		runningSince = 0;
+		setCircuit(CIRCUIT_CLOSED);
+		notifyAll();
+		if (restart) {
+			restart = false;
+			start();
+		}
+	}
+
+	/**
+	 * Submits the driver execution.
+	 * 
+	 * @return the {@code Future} representing the driver execution, cancelled
+	 *         when the driver is requested to quit
+	 */
+	abstract Future<?> submit();
+
+	/**
+	 * @param driverClass
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private static Class<? extends Event>[] getDriverEventsInterfaces(Class<?> driverClass) {
+		Class<? extends Event> driverEventsInterface;
+		try {
+			String packageName = driverClass.getPackage().getName() + ".events";
+			String className = driverClass.getSimpleName() + "Event";
+			driverEventsInterface = (Class<? extends Event>) Class.forName(packageName + "." + className, true,
+					driverClass.getClassLoader());
+		} catch (Exception e) {
+			driverEventsInterface = null;
+		}
+
+		return driverEventsInterface == null ? new Class[] { DriverStateEvent.class }
+				: new Class[] { driverEventsInterface, DriverStateEvent.class };
+	}
+
+	/**
+	 * Invocation handler of the driver state events proxies. The methods of
+	 * the {@code Event} interface are dispatched directly to the wrapped
+	 * event, the others reflectively.
+	 */
+	private static class DriverStateEventHandler implements InvocationHandler {
+
+		private final StringEvent wrappedEvent;
+
+		/**
+		 * 
+		 * @param wrappedEvent
+		 */
+		private DriverStateEventHandler(StringEvent wrappedEvent) {
+			this.wrappedEvent = wrappedEvent;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (args == null) {
+				switch (method.getName()) {
+				case "getId":
+					return wrappedEvent.getId();
+				case "getEventId":
+					return wrappedEvent.getEventId();
+				case "getSubId":
+					return wrappedEvent.getSubId();
+				case "getSource":
+					return wrappedEvent.getSource();
+				case "getTimestamp":
+					return wrappedEvent.getTimestamp();
+				case "getValue":
+					return wrappedEvent.getValue();
+				case "getSimpleValue":
+					return wrappedEvent.getSimpleValue();
+				case "isLoacal":
+					return wrappedEvent.isLoacal();
+				case "hashCode":
+					return wrappedEvent.hashCode();
+				case "toString":
+					return wrappedEvent.toString();
+				default:
+					break;
+				}
+			}
+			Method wrappedMethod = wrappedEvent.getClass().getMethod(method.getName(), method.getParameterTypes());
+			try {
+				return wrappedMethod.invoke(wrappedEvent, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param state
+	 */
+	void postDriverStateEvent(String state) {
+		postDriverEvent("driverState", state);
+	}
+
+	/**
+	 * 
+	 * @param id
+	 * @param value
+	 */
+	private void postDriverEvent(String id, String value) {
+		StringEvent wrappedEvent = new StringEvent(this, id, value) {
+		};
+		Event ev;
+		try {
+			ev = (Event) STATE_EVENTS_CONSTRUCTORS.get(getClass())
+					.newInstance(new DriverStateEventHandler(wrappedEvent));
+		} catch (Exception e) {
+			log.error("Error creating driver state event", e);
+			return;
+		}
+		Bus.post(ev);
+	}
+
+	/**
+	 * Sets the path of the configuration file relative to the configuration
+	 * directory.
+	 * 
+	 * @param configFile
+	 *            the relative configuration file path
+	 */
+	void setConfigFile(String configFile) {
+		this.configFile = configFile;
+	}
+
+	/**
+	 * Returns the path of the configuration file relative to the configuration
+	 * directory.
+	 * 
+	 * @return the path of the configuration file relative to the configuration
+	 *         directory, {@code null} if not set
+	 */
+	String getConfigFile() {
+		return this.configFile;
+	}
+
+	/**
+	 * Sets the driver configuration
+	 * 
+	 * @param map
+	 *            the configuration map
+	 */
+	public synchronized void setConfiguration(Map<String, Object> map) {
+		this.config = new Configuration(map);
+		onConfigChange(this.config);
+	}
+
+	/**
+	 * Interrupts the driver process.
+	 */
+	public synchronized void quit() {
+		quit = true;
+		if (future != null) {
+			log.debug("Stopping driver...");
+			try {
+				future.cancel(true);
+			} catch (NullPointerException e) {
+			}
+		}
+	}
+
+	/**
+	 * Unless you know what you are doing, use {@link Drivers#destroyDriver(String)}
+	 */
+	@Override
+	public void destroy() {
+		quit();
+		super.destroy();
+	}
+
+	/**
+	 * Stars the driver in a separate process.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the driver is already running
+	 */
+	public synchronized void start() throws IllegalStateException {
+		if (future == null) {
+			quit = false;
+			future = submit();
+		} else {
+			throw new IllegalStateException("Running");
+		}
+	}
+
+	/**
+	 * Gracefully restarts the driver process.
+	 */
+	public synchronized void restart() {
+		if (future != null) {
+			restart = true;
+			quit();
+		} else {
+			start();
+		}
+	}
+
+	/**
+	 * Waits for the termination of the driver task. If the timeout expires before
+	 * termination a TimeoutException is thrown.
+	 * 
+	 * @param timeout
+	 *            timeout in milliseconds
+	 * @throws InterruptedException
+	 *             if interrupted
+	 * @throws TimeoutException
+	 *             if the timeout expires
+	 */
+	synchronized void waitTermination(long timeout) throws InterruptedException, TimeoutException {
+		long giveUpTime = System.currentTimeMillis() + timeout;
+		while (future != null) {
+			long left = giveUpTime - System.currentTimeMillis();
+			if (left <= 0) {
+				throw new TimeoutException();
+			}
+			wait(left);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Callback method called when the driver configuration has changed.
+	 * </p>
+	 * <p>
+	 * The default implementation simply restarts the driver, if running. Subclasses
+	 * can override this method to optimize the handling of configuration change.
+	 * </p>
+	 * 
+	 * @param config
+	 *            the new configuration
+	 */
+	protected void onConfigChange(Configuration config) {
+		if (future != null) {
+			restart();
+		}
+	}
+
+	/**
+	 * Callback method called on driver initialization.
+	 * 
+	 * @param config
+	 *            the driver configuration
+	 * @return {@code true} if the initialization is successful, {@code false}
+	 *         otherwise
+	 * @throws InterruptedException
+	 *             if interrupted while executing
+	 */
+	protected abstract boolean onInit(Configuration config) throws InterruptedException;
+
+	/**
+	 * Callback method called when the driver is about to quit.
+	 */
+	protected abstract void onQuit();
+
+	/**
+	 * Returns the path to the directory to be used to store data for all instances
+	 * of this driver.
+	 * 
+	 * @return the path to the directory to be used to store data for all instances
+	 *         of this driver
+	 * @throws IOException
+	 *             if an I/O error occurs creating the directory
+	 */
+	protected Path getDriverGlobalDataDir() throws IOException {
+		Path path = Paths.get("data/drivers/", getClass().getPackage().getName());
+		Files.createDirectories(path);
+		return path;
+	}
+
+	/**
+	 * Returns the path to the directory to be used to store data this driver
+	 * instance.
+	 * 
+	 * @return the path to the directory to be used to store data this driver
+	 *         instance
+	 * @throws IOException
+	 *             if an I/O error occurs creating the directory
+	 */
+	protected Path getDriverInstanceDataDir() throws IOException {
+		Path path = getDriverGlobalDataDir().resolve(getId());
+		Files.createDirectories(path);
+		return path;
+	}
+
+}
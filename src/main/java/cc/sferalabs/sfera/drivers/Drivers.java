@@ -59,7 +59,7 @@ public abstract class Drivers {
 	private static final String CONFIG_DIR = "drivers";
 	private static final Logger logger = LoggerFactory.getLogger(Drivers.class);
 
-	private static final Map<String, Driver> drivers = new ConcurrentHashMap<>();
+	private static final Map<String, BaseDriver> drivers = new ConcurrentHashMap<>();
 
 	/**
 	 * Instantiate and starts all drivers defined in configuration.
@@ -106,7 +106,7 @@ public abstract class Drivers {
 										+ driverClass;
 							}
 							Class<?> clazz = PluginsClassLoader.getClass(driverClass);
-							Driver driverInstance = instantiateDriver(clazz, driverId);
+							BaseDriver driverInstance = instantiateBaseDriver(clazz, driverId);
 							driverInstance.setConfigFile(CONFIG_DIR + "/" + fileName);
 							driverInstance.start();
 						} catch (Throwable e) {
@@ -121,17 +121,17 @@ public abstract class Drivers {
 			logger.debug("Drivers config directory not found");
 		}
 
-		List<Driver> toRemove = new ArrayList<>();
-		Iterator<Driver> it = drivers.values().iterator();
+		List<BaseDriver> toRemove = new ArrayList<>();
+		Iterator<BaseDriver> it = drivers.values().iterator();
 		while (it.hasNext()) {
-			Driver d = it.next();
+			BaseDriver d = it.next();
 			if (!inConfig.contains(d.getId()) && d.getConfigFile() != null) {
 				logger.info("Configuration file for driver '{}' deleted", d.getId());
 				toRemove.add(d);
 			}
 		}
 
-		for (Driver d : toRemove) {
+		for (BaseDriver d : toRemove) {
 			drivers.remove(d.getId());
 			d.quit();
 			d.destroy();
@@ -139,6 +139,8 @@ public abstract class Drivers {
 	}
 
 	/**
+	 * Instantiates a {@link Driver}. Use
+	 * {@link #instantiateBaseDriver(Class, String)} for the drivers of any type.
 	 * 
 	 * @param clazz
 	 *            the driver class
@@ -154,15 +156,47 @@ public abstract class Drivers {
 	 * @throws IllegalAccessException
 	 *             if thrown when instantiating the class
 	 * @throws IllegalArgumentException
-	 *             if thrown when instantiating the class
+	 *             if the class is not a {@link Driver} or if thrown when
+	 *             instantiating the class
 	 * @throws InvocationTargetException
 	 *             if thrown when instantiating the class
 	 */
 	public synchronized static Driver instantiateDriver(Class<?> clazz, String driverId)
 			throws NoSuchMethodException, SecurityException, InstantiationException, IllegalAccessException,
 			IllegalArgumentException, InvocationTargetException {
+		if (!Driver.class.isAssignableFrom(clazz)) {
+			throw new IllegalArgumentException(clazz.getName() + " is not a " + Driver.class.getName());
+		}
+		return (Driver) instantiateBaseDriver(clazz, driverId);
+	}
+
+	/**
+	 * Instantiates a driver of any type, i.e. a {@link Driver} or an
+	 * {@link EventLoopDriver}.
+	 * 
+	 * @param clazz
+	 *            the driver class
+	 * @param driverId
+	 *            the driver ID
+	 * @return the driver instance
+	 * @throws NoSuchMethodException
+	 *             if thrown when constructing the class
+	 * @throws SecurityException
+	 *             if thrown when instantiating the class
+	 * @throws InstantiationException
+	 *             if thrown when instantiating the class
+	 * @throws IllegalAccessException
+	 *             if thrown when instantiating the class
+	 * @throws IllegalArgumentException
+	 *             if thrown when instantiating the class
+	 * @throws InvocationTargetException
+	 *             if thrown when instantiating the class
+	 */
+	public synchronized static BaseDriver instantiateBaseDriver(Class<?> clazz, String driverId)
+			throws NoSuchMethodException, SecurityException, InstantiationException, IllegalAccessException,
+			IllegalArgumentException, InvocationTargetException {
 		Constructor<?> constructor = clazz.getConstructor(new Class[] { String.class });
-		Driver driverInstance = (Driver) constructor.newInstance(driverId);
+		BaseDriver driverInstance = (BaseDriver) constructor.newInstance(driverId);
 		if (driverInstance instanceof EventListener) {
 			Bus.register((EventListener) driverInstance);
 		}
@@ -179,7 +213,7 @@ public abstract class Drivers {
 	 * @return true if driver was found, false otherwise
 	 */
 	public static boolean destroyDriver(String driverId) {
-		Driver d = drivers.remove(driverId);
+		BaseDriver d = drivers.remove(driverId);
 		if (d == null) {
 			return false;
 		}
@@ -191,14 +225,15 @@ public abstract class Drivers {
 	 * Quits all the drivers.
 	 */
 	public synchronized static void quit() {
-		for (final Driver d : drivers.values()) {
+		for (final BaseDriver d : drivers.values()) {
 			d.quit();
 		}
 	}
 
 	/**
-	 * Waits for the termination of all the drivers. If the timeout expires before
-	 * termination a TimeoutException is thrown.
+	 * Waits for the termination of all the drivers. The drivers terminate in
+	 * parallel, the timeout is a single deadline for all of them: the drivers
+	 * still running when it expires are logged.
 	 * 
 	 * @param timeout
 	 *            timeout in milliseconds
@@ -206,37 +241,68 @@ public abstract class Drivers {
 	 *             if interrupted
 	 */
 	public synchronized static void waitTermination(long timeout) throws InterruptedException {
-		for (final Driver d : drivers.values()) {
-			if (timeout <= 0) {
-				return;
-			}
-			long s = System.currentTimeMillis();
+		long deadline = System.currentTimeMillis() + timeout;
+		List<String> running = new ArrayList<>();
+		for (final BaseDriver d : drivers.values()) {
 			try {
-				d.waitTermination(timeout);
+				d.waitTermination(deadline - System.currentTimeMillis());
 			} catch (TimeoutException e) {
+				running.add(d.getId());
 			}
-			timeout -= System.currentTimeMillis() - s;
+		}
+		if (!running.isEmpty()) {
+			logger.warn("Drivers not terminated: {}", running);
 		}
 	}
 
 	/**
-	 * Returns the driver instance with the specified ID.
+	 * Returns the {@link Driver} instance with the specified ID. Use
+	 * {@link #getBaseDriver(String)} for the drivers of any type.
 	 * 
 	 * @param id
 	 *            the ID of the driver to be returned
 	 * @return the driver instance with the specified ID or {@code null} if no such
-	 *         driver is found
+	 *         driver is found or it is not a {@link Driver}
 	 */
 	public synchronized static Driver getDriver(String id) {
+		BaseDriver d = drivers.get(id);
+		return d instanceof Driver ? (Driver) d : null;
+	}
+
+	/**
+	 * Returns the driver instance with the specified ID, of any type.
+	 * 
+	 * @param id
+	 *            the ID of the driver to be returned
+	 * @return the driver instance with the specified ID or {@code null} if no such
+	 *         driver is found
+	 */
+	public synchronized static BaseDriver getBaseDriver(String id) {
 		return drivers.get(id);
 	}
 
 	/**
-	 * Returns a collection of all the driver instances.
+	 * Returns a collection of all the {@link Driver} instances. Use
+	 * {@link #getAllBaseDrivers()} for the drivers of any type.
 	 * 
-	 * @return a collection of all the driver instances
+	 * @return a collection of all the {@link Driver} instances
 	 */
 	public synchronized static Collection<Driver> getAll() {
+		List<Driver> all = new ArrayList<>();
+		for (BaseDriver d : drivers.values()) {
+			if (d instanceof Driver) {
+				all.add((Driver) d);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Returns a collection of all the driver instances, of any type.
+	 * 
+	 * @return a collection of all the driver instances
+	 */
+	public synchronized static Collection<BaseDriver> getAllBaseDrivers() {
 		return new ArrayList<>(drivers.values());
 	}
 
@@ -57,7 +57,7 @@ public class DriversConsoleCommandHandler implements ConsoleCommandHandler {
 			return "Syntax error";
 		}
 
-		Driver d = Drivers.getDriver(args[1]);
+		BaseDriver d = Drivers.getBaseDriver(args[1]);
 		if (d == null) {
 			return "Driver '" + args[1] + "' not found";
 		}
@@ -0,0 +1,546 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.drivers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import cc.sferalabs.sfera.core.BootProfiler;
+import cc.sferalabs.sfera.core.Configuration;
+import cc.sferalabs.sfera.core.SystemNode;
+import cc.sferalabs.sfera.core.services.Task;
+import cc.sferalabs.sfera.core.services.TasksManager;
+import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.EventIdSpecListener;
+import cc.sferalabs.sfera.io.comm.CommPort;
+import cc.sferalabs.sfera.io.comm.CommPortException;
+import cc.sferalabs.sfera.io.comm.CommPortListener;
+
+/**
+ * Abstract class to be implemented to create event-driven drivers.
+ * <p>
+ * Unlike drivers extending {@link Driver}, event-driven drivers do not own a
+ * thread calling {@link Driver#loop()}: after a successful
+ * {@link #onInit(Configuration)} they only react to the callbacks they
+ * registered, i.e. data read from comm ports (
+ * {@link #setCommPortListener(CommPort, CommPortListener)}), timers (
+ * {@link #schedule(Runnable, long, TimeUnit)},
+ * {@link #scheduleAtFixedRate(Runnable, long, long, TimeUnit)}) and events
+ * posted on the bus ({@link #subscribe(String, Consumer)}). Callbacks are
+ * executed on a thread pool shared by all the event-driven drivers, one at a
+ * time for each driver, and must not block.
+ * </p>
+ * <p>
+ * {@link #onInit(Configuration)} and {@link #onQuit()} keep the semantics they
+ * have for {@link Driver}s and are executed on a temporary thread, thus they
+ * are allowed to block. The callbacks registered during
+ * {@link #onInit(Configuration)} start being executed after it returns
+ * {@code true}. When the driver quits or is terminated all the registered
+ * callbacks are removed.
+ * </p>
+ */
+public abstract class EventLoopDriver extends BaseDriver {
+
+	private volatile Run run;
+
+	/**
+	 * Lazily initialized holder of the shared event loop.
+	 */
+	private static class EventLoop {
+
+		private static final ScheduledExecutorService EXECUTOR;
+
+		static {
+			int threads = SystemNode.getConfiguration().get("drivers_event_loop_threads",
+					Runtime.getRuntime().availableProcessors());
+			AtomicInteger count = new AtomicInteger();
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), r -> {
+				Thread t = new Thread(r, "drivers-event-loop-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+			executor.setRemoveOnCancelPolicy(true);
+			EXECUTOR = executor;
+		}
+	}
+
+	/**
+	 * Executor running the callbacks of a single driver run one at a time on
+	 * the shared event loop. Tasks submitted before {@link #open()} is called
+	 * are queued; tasks submitted after {@link #close()} is called are
+	 * discarded.
+	 */
+	private class SerialExecutor implements Executor {
+
+		private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+		private boolean open = false;
+		private boolean closed = false;
+		private boolean scheduled = false;
+
+		@Override
+		public void execute(Runnable task) {
+			synchronized (queue) {
+				if (closed) {
+					return;
+				}
+				queue.add(task);
+				scheduleNext();
+			}
+		}
+
+		/**
+		 * Starts executing the queued tasks.
+		 */
+		void open() {
+			synchronized (queue) {
+				open = true;
+				scheduleNext();
+			}
+		}
+
+		/**
+		 * Discards the queued tasks and the ones submitted afterwards.
+		 */
+		void close() {
+			synchronized (queue) {
+				closed = true;
+				queue.clear();
+			}
+		}
+
+		/**
+		 * 
+		 */
+		private void scheduleNext() {
+			if (open && !closed && !scheduled && !queue.isEmpty()) {
+				scheduled = true;
+				EventLoop.EXECUTOR.execute(this::runNext);
+			}
+		}
+
+		/**
+		 * 
+		 */
+		private void runNext() {
+			Runnable task;
+			synchronized (queue) {
+				task = queue.poll();
+			}
+			try {
+				if (task != null) {
+					task.run();
+				}
+			} catch (Throwable t) {
+				log.error("Exception in callback", t);
+				terminate();
+			} finally {
+				synchronized (queue) {
+					scheduled = false;
+					scheduleNext();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A single run of the driver, from the initialization to the termination.
+	 */
+	private class Run {
+
+		private final CompletableFuture<Void> execution;
+		private final SerialExecutor executor = new SerialExecutor();
+		private final List<ScheduledFuture<?>> timers = new ArrayList<>();
+		private final List<CommPort> commPorts = new ArrayList<>();
+		private final List<EventIdSpecListener> listeners = new ArrayList<>();
+		private UUID configWatcherId;
+		private ScheduledFuture<?> restart;
+		private Thread initThread;
+		private boolean initializing = true;
+		private boolean ended = false;
+
+		/**
+		 * 
+		 * @param execution
+		 */
+		Run(CompletableFuture<Void> execution) {
+			this.execution = execution;
+		}
+
+		/**
+		 * 
+		 */
+		void init() {
+			synchronized (this) {
+				if (!execution.isDone()) {
+					initThread = Thread.currentThread();
+				} else {
+					initializing = false;
+					ended = true;
+				}
+			}
+			if (ended) {
+				terminated();
+				return;
+			}
+			boolean started = false;
+			try {
+				log.info("Starting...");
+				configWatcherId = loadConfiguration();
+				postDriverStateEvent("init");
+				boolean initialized;
+				BootProfiler.Phase p = BootProfiler.start("driver/" + getId());
+				try {
+					initialized = onInit(getConfiguration());
+				} finally {
+					p.end();
+				}
+				if (initialized) {
+					log.info("Started");
+					postDriverStateEvent("running");
+					runStarted();
+					started = true;
+				} else {
+					log.warn("Initialization failed");
+				}
+			} catch (InterruptedException t) {
+				log.debug("Initialization interrupted");
+			} catch (Throwable t) {
+				log.error("Exception in onInit()", t);
+			}
+			synchronized (this) {
+				Thread.interrupted();
+				initThread = null;
+				initializing = false;
+				if (started && !execution.isDone()) {
+					executor.open();
+					return;
+				}
+			}
+			end();
+		}
+
+		/**
+		 * Ends this run. If still initializing, the initialization thread is
+		 * interrupted and the run is ended when the initialization returns. If
+		 * already ended and waiting to be restarted, the restart is cancelled
+		 * and the driver terminated right away.
+		 */
+		void end() {
+			boolean restartCancelled = false;
+			synchronized (this) {
+				if (initializing) {
+					if (initThread != null) {
+						initThread.interrupt();
+					}
+					return;
+				}
+				if (ended) {
+					if (restart == null || !restart.cancel(false)) {
+						return;
+					}
+					restart = null;
+					restartCancelled = true;
+				} else {
+					ended = true;
+					releaseCallbacks();
+				}
+			}
+			if (restartCancelled) {
+				terminated();
+				return;
+			}
+			TasksManager.execute(Task.create("driver." + getId() + ".quit", () -> {
+				quitRun(configWatcherId);
+				if (!execution.isDone()) {
+					long delay = nextRestartDelay();
+					synchronized (this) {
+						if (!execution.isDone()) {
+							// cancelled by end() if the driver quits meanwhile
+							restart = EventLoop.EXECUTOR.schedule(() -> {
+								if (!execution.isDone()) {
+									retryStarting();
+								}
+								startRun(execution);
+							}, delay, TimeUnit.MILLISECONDS);
+							return;
+						}
+					}
+				}
+				terminated();
+			}));
+		}
+
+		/**
+		 * Removes the callbacks registered during this run.
+		 */
+		private void releaseCallbacks() {
+			executor.close();
+			for (ScheduledFuture<?> timer : timers) {
+				timer.cancel(false);
+			}
+			for (CommPort commPort : commPorts) {
+				try {
+					commPort.removeListener();
+				} catch (CommPortException e) {
+					log.warn("Error removing comm port listener", e);
+				}
+			}
+			for (EventIdSpecListener listener : listeners) {
+				listener.destroy();
+			}
+		}
+
+		/**
+		 * 
+		 * @param timer
+		 */
+		synchronized void add(ScheduledFuture<?> timer) {
+			if (ended) {
+				timer.cancel(false);
+			} else {
+				timers.add(timer);
+			}
+		}
+
+		/**
+		 * 
+		 * @param commPort
+		 */
+		synchronized void add(CommPort commPort) {
+			if (ended) {
+				try {
+					commPort.removeListener();
+				} catch (CommPortException e) {
+					log.warn("Error removing comm port listener", e);
+				}
+				try {
+					commPort.close();
+				} catch (CommPortException e) {
+					log.warn("Error closing comm port", e);
+				}
+			} else {
+				commPorts.add(commPort);
+			}
+		}
+
+		/**
+		 * 
+		 * @param listener
+		 */
+		synchronized void add(EventIdSpecListener listener) {
+			if (ended) {
+				listener.destroy();
+			} else {
+				listeners.add(listener);
+			}
+		}
+	}
+
+	/**
+	 * Constructs an {@code EventLoopDriver}
+	 * 
+	 * @param id
+	 *            the driver ID
+	 */
+	protected EventLoopDriver(String id) {
+		super(id);
+	}
+
+	@Override
+	Future<?> submit() {
+		CompletableFuture<Void> execution = new CompletableFuture<>();
+		execution.whenComplete((r, t) -> {
+			Run run = this.run;
+			if (run != null && run.execution == execution) {
+				run.end();
+			}
+		});
+		startRun(execution);
+		return execution;
+	}
+
+	/**
+	 * 
+	 * @param execution
+	 */
+	private void startRun(CompletableFuture<Void> execution) {
+		Run run = new Run(execution);
+		this.run = run;
+		TasksManager.execute(Task.create("driver." + getId() + ".init", run::init));
+	}
+
+	/**
+	 * Returns the current run, to register callbacks to.
+	 * 
+	 * @return the current run
+	 * @throws IllegalStateException
+	 *             if the driver is not running
+	 */
+	private Run getRun() throws IllegalStateException {
+		Run run = this.run;
+		if (run == null) {
+			throw new IllegalStateException("Not running");
+		}
+		return run;
+	}
+
+	/**
+	 * Executes the specified task on the event loop, serialized with the other
+	 * callbacks of this driver.
+	 * 
+	 * @param task
+	 *            the task to execute
+	 * @throws IllegalStateException
+	 *             if the driver is not running
+	 */
+	protected final void execute(Runnable task) throws IllegalStateException {
+		getRun().executor.execute(task);
+	}
+
+	/**
+	 * Schedules the specified task to be executed on the event loop after the
+	 * specified delay. The task is cancelled if the driver quits.
+	 * 
+	 * @param task
+	 *            the task to execute
+	 * @param delay
+	 *            the delay
+	 * @param unit
+	 *            the time unit of the delay
+	 * @return the {@code ScheduledFuture} representing the scheduled task
+	 * @throws IllegalStateException
+	 *             if the driver is not running
+	 */
+	protected final ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit)
+			throws IllegalStateException {
+		Run run = getRun();
+		ScheduledFuture<?> timer = EventLoop.EXECUTOR.schedule(() -> run.executor.execute(task), delay, unit);
+		run.add(timer);
+		return timer;
+	}
+
+	/**
+	 * Schedules the specified task to be periodically executed on the event
+	 * loop. The task is cancelled if the driver quits.
+	 * 
+	 * @param task
+	 *            the task to execute
+	 * @param initialDelay
+	 *            the delay of the first execution
+	 * @param period
+	 *            the period between successive executions
+	 * @param unit
+	 *            the time unit of the delay and period
+	 * @return the {@code ScheduledFuture} representing the scheduled task
+	 * @throws IllegalStateException
+	 *             if the driver is not running
+	 */
+	protected final ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period,
+			TimeUnit unit) throws IllegalStateException {
+		Run run = getRun();
+		ScheduledFuture<?> timer = EventLoop.EXECUTOR.scheduleAtFixedRate(() -> run.executor.execute(task),
+				initialDelay, period, unit);
+		run.add(timer);
+		return timer;
+	}
+
+	/**
+	 * Sets the listener of the specified comm port, its callbacks will be
+	 * executed on the event loop. The listener is removed if the driver quits.
+	 * 
+	 * @param commPort
+	 *            the comm port
+	 * @param listener
+	 *            the listener
+	 * @throws CommPortException
+	 *             if an error occurs setting the listener
+	 * @throws IllegalStateException
+	 *             if the driver is not running
+	 */
+	protected final void setCommPortListener(CommPort commPort, CommPortListener listener)
+			throws CommPortException, IllegalStateException {
+		Run run = getRun();
+		commPort.setListener(new CommPortListener() {
+
+			@Override
+			public void onRead(byte[] bytes) {
+				run.executor.execute(() -> listener.onRead(bytes));
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				run.executor.execute(() -> listener.onError(t));
+			}
+		});
+		run.add(commPort);
+	}
+
+	/**
+	 * Subscribes the specified handler to the events posted on the bus whose
+	 * IDs match the specified specification. The handler is executed on the
+	 * event loop and unsubscribed if the driver quits.
+	 * 
+	 * @param spec
+	 *            the event ID specification
+	 * @param handler
+	 *            the handler of the events
+	 * @throws IllegalStateException
+	 *             if the driver is not running
+	 * @see cc.sferalabs.sfera.events.EventsUtil#getEventIdSpecMatchingPredicate(String)
+	 */
+	protected final void subscribe(String spec, Consumer<Event> handler) throws IllegalStateException {
+		Run run = getRun();
+		run.add(new EventIdSpecListener(spec) {
+
+			@Override
+			protected void handleEvent(Event event) {
+				run.executor.execute(() -> handler.accept(event));
+			}
+		});
+	}
+
+	/**
+	 * Terminates the current run of the driver, as it happens for
+	 * {@link Driver}s when {@link #loop()} returns {@code false}: the
+	 * registered callbacks are removed, {@link #onQuit()} is called and the
+	 * driver is initialized again after the restart delay.
+	 */
+	protected final void terminate() {
+		Run run = this.run;
+		if (run != null) {
+			run.end();
+		}
+	}
+
+}
@@ -36,6 +36,8 @@ public abstract class BaseEvent implements Event {
 	private final String id;
 	private final String subId;
 	private final long timestamp;
+	private volatile long sequence = -1;
+	private volatile EventId eventId;
 
 	/**
 	 * Constructs a {@code BaseEvent} event with the specified ID and the
@@ -58,6 +60,17 @@ public abstract class BaseEvent implements Event {
 		return id;
 	}
 
+	@Override
+	public EventId getEventId() {
+		// interned only when needed, e.g. by the script engine
+		EventId eventId = this.eventId;
+		if (eventId == null) {
+			eventId = EventId.of(id);
+			this.eventId = eventId;
+		}
+		return eventId;
+	}
+
 	@Override
 	public String getSubId() {
 		return subId;
@@ -73,6 +86,23 @@ public abstract class BaseEvent implements Event {
 		return timestamp;
 	}
 
+	/**
+	 * 
+	 * @return the sequence number assigned when posted, or -1 if not posted
+	 */
+	long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * 
+	 * @param sequence
+	 *            the sequence number assigned by the {@link Bus} when posted
+	 */
+	void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
 	@Override
 	public Object getSimpleValue() {
 		return getValue();
@@ -22,9 +22,14 @@
 
 package cc.sferalabs.sfera.events;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EventListener;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.script.ScriptException;
 
@@ -66,9 +71,18 @@ public abstract class Bus {
 		}
 	};
 
+	/**
+	 * Number of the last posted events whose sequence numbers are retained
+	 */
+	public static final int REPLAY_BUFFER_SIZE = 10000;
+
 	private static final EventBus EVENT_BUS = new AsyncEventBus(TasksManager.getTasksExecutorService(),
 			SUBSCRIBER_EXCEPTION_HANDLER);
-	private static final Map<String, Event> EVENTS_MAP = new HashMap<String, Event>();
+	private static final Map<String, Event> EVENTS_MAP = new ConcurrentHashMap<String, Event>();
+	private static final Collection<Event> EVENTS_VIEW = Collections.unmodifiableCollection(EVENTS_MAP.values());
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+	private static final ReplayBuffer REPLAY_BUFFER = new ReplayBuffer(REPLAY_BUFFER_SIZE);
+	private static final String EPOCH = UUID.randomUUID().toString();
 
 	static {
 		try {
@@ -99,21 +113,31 @@ public abstract class Bus {
 	}
 
 	/**
-	 * Posts the specified event to the bus.
+	 * Posts the specified event to the bus, assigning it the next sequence
+	 * number.
 	 * 
 	 * @param event
 	 *            the event to post
 	 */
 	public static void post(Event event) {
 		EVENTS_MAP.put(event.getId(), event);
+		long seq = SEQUENCE.incrementAndGet();
+		if (event instanceof BaseEvent) {
+			((BaseEvent) event).setSequence(seq);
+		}
+		REPLAY_BUFFER.add(seq, event);
 		EVENT_BUS.post(event);
-		logger.info("Event: {} = {}", event.getId(), event.getValue());
+		if (logger.isInfoEnabled()) {
+			logger.info("Event: {} = {}", event.getId(), event.getValue());
+		}
 	}
 
 	/**
 	 * Posts the specified event to the bus only if the last event with the same ID
 	 * that was posted had a different value or there was no such event. The
-	 * comparison of the values is done by means of the {@code equals()} method.
+	 * comparison of the values is done by means of the {@code equals()} method,
+	 * or on the primitive values if both events are {@link DoubleEvent}s or
+	 * {@link LongEvent}s.
 	 * 
 	 * @param event
 	 *            the event to post
@@ -136,7 +160,14 @@ public abstract class Bus {
 	 *         event; {@code false} otherwise.
 	 */
 	public static boolean valueChanged(Event event) {
-		Object currVal = getValueOf(event.getId());
+		Event curr = getEvent(event.getId());
+		if (curr instanceof DoubleEvent && event instanceof DoubleEvent) {
+			return ((DoubleEvent) event).valueDiffers((DoubleEvent) curr);
+		}
+		if (curr instanceof LongEvent && event instanceof LongEvent) {
+			return ((LongEvent) event).valueDiffers((LongEvent) curr);
+		}
+		Object currVal = curr == null ? null : curr.getValue();
 		Object newVal = event.getValue();
 
 		if (currVal == null) {
@@ -166,7 +197,7 @@ public abstract class Bus {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> T getValueOf(String id) throws ClassCastException {
-		Event ev = EVENTS_MAP.get(id);
+		Event ev = getEvent(id);
 		if (ev == null) {
 			return null;
 		}
@@ -181,6 +212,9 @@ public abstract class Bus {
 	 * @return the last event that was posted on the bus with the specified ID
 	 */
 	public static Event getEvent(String id) {
+		if (id == null) {
+			return null;
+		}
 		return EVENTS_MAP.get(id);
 	}
 
@@ -194,4 +228,79 @@ public abstract class Bus {
 	public static Map<String, Event> getCurrentState() {
 		return new HashMap<>(EVENTS_MAP);
 	}
+
+	/**
+	 * Returns a live, unmodifiable view of the last event instances posted for
+	 * each event ID. The view reflects the events posted while iterating over it
+	 * but it is not guaranteed to reflect all of them; it is, though, guaranteed
+	 * to reflect all the events posted before the value returned by
+	 * {@link #getSequence()} was reached.
+	 * <p>
+	 * Unlike {@link #getCurrentState()}, no copy of the state is made, thus this
+	 * method should be preferred when iterating over a possibly large state.
+	 * </p>
+	 * 
+	 * @return a live, unmodifiable view of the last event instances posted
+	 */
+	public static Collection<Event> getCurrentEvents() {
+		return EVENTS_VIEW;
+	}
+
+	/**
+	 * Returns the sequence number of the last posted event, i.e. the number of
+	 * events posted so far. The value is incremented after the state has been
+	 * updated with the posted event, thus it can be used to mark the point up to
+	 * which the state returned by {@link #getCurrentEvents()} is consistent.
+	 * 
+	 * @return the sequence number of the last posted event
+	 */
+	public static long getSequence() {
+		return SEQUENCE.get();
+	}
+
+	/**
+	 * Returns the identifier of this run of the system. Sequence numbers are
+	 * only meaningful within the same epoch, since they restart at every boot.
+	 * 
+	 * @return the epoch identifier
+	 */
+	public static String getEpoch() {
+		return EPOCH;
+	}
+
+	/**
+	 * Returns the sequence number assigned to the specified event instance when
+	 * posted. The sequence number of a {@link BaseEvent} is stored in the
+	 * event, the one of other events is looked up among the last
+	 * {@link #REPLAY_BUFFER_SIZE} posted events.
+	 * 
+	 * @param event
+	 *            the event
+	 * @return the sequence number assigned to the specified event, or -1 if the
+	 *         event has not been posted or is no longer available
+	 */
+	public static long getSequence(Event event) {
+		if (event instanceof BaseEvent) {
+			return ((BaseEvent) event).getSequence();
+		}
+		return REPLAY_BUFFER.getSequence(event, SEQUENCE.get());
+	}
+
+	/**
+	 * Returns the events posted after the one with the specified sequence number,
+	 * in the order they were posted. Only the last {@link #REPLAY_BUFFER_SIZE}
+	 * posted events are retained, if any of the requested events is no longer
+	 * available {@code null} is returned. Events still being posted concurrently
+	 * are not included; they are delivered to the subscribers as usual. The
+	 * returned replay's {@link EventsReplay#getSequence() sequence number},
+	 * not the number of returned events, tells where to resume from.
+	 * 
+	 * @param seq
+	 *            the sequence number
+	 * @return the events posted after the one with the specified sequence
+	 *         number, or {@code null} if not available
+	 */
+	public static EventsReplay getEventsAfter(long seq) {
+		return REPLAY_BUFFER.getEventsAfter(seq, SEQUENCE.get());
+	}
 }
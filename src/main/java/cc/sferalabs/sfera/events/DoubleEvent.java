@@ -0,0 +1,85 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.events;
+
+/**
+ * Abstract class for events with {@code double} value.
+ * <p>
+ * The value is stored as a primitive and can be read with
+ * {@link #getDoubleValue()} without boxing; {@link #getValue()} boxes it on
+ * first use only.
+ * </p>
+ */
+public abstract class DoubleEvent extends NumberEvent {
+
+	private final double value;
+	private Double boxed;
+
+	/**
+	 * Constructs a {@code DoubleEvent} event with the specified ID, source and
+	 * value.
+	 * 
+	 * @param source
+	 *            the source node
+	 * @param id
+	 *            the event ID
+	 * @param value
+	 *            the event value
+	 */
+	public DoubleEvent(Node source, String id, double value) {
+		super(source, id);
+		this.value = value;
+	}
+
+	/**
+	 * Returns the event value as a primitive {@code double}.
+	 * 
+	 * @return the event value
+	 */
+	public double getDoubleValue() {
+		return value;
+	}
+
+	@Override
+	public Double getValue() {
+		Double boxed = this.boxed;
+		if (boxed == null) {
+			boxed = Double.valueOf(value);
+			this.boxed = boxed;
+		}
+		return boxed;
+	}
+
+	/**
+	 * Returns whether the value of this event differs from the value of the
+	 * specified event, without boxing.
+	 * 
+	 * @param other
+	 *            the event to compare the value with
+	 * @return {@code true} if the values differ, {@code false} otherwise
+	 */
+	public boolean valueDiffers(DoubleEvent other) {
+		return Double.doubleToLongBits(value) != Double.doubleToLongBits(other.value);
+	}
+
+}
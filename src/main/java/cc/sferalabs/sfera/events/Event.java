@@ -39,6 +39,20 @@ public interface Event {
 	 */
 	public String getId();
 
+	/**
+	 * Returns the interned representation of the event ID.
+	 * <p>
+	 * The default implementation looks up the {@link EventId} corresponding to
+	 * {@link #getId()}; implementations should override it returning an
+	 * instance created once, at construction.
+	 * </p>
+	 * 
+	 * @return the interned representation of the event ID
+	 */
+	public default EventId getEventId() {
+		return EventId.of(getId());
+	}
+
 	/**
 	 * Returns the event ID without the source ID prefix
 	 * 
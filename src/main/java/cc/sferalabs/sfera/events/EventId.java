@@ -0,0 +1,186 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Interned representation of an event ID.
+ * <p>
+ * Instances are created once per distinct ID string and reused as long as
+ * they are referenced, thus they can be compared by identity. Each instance
+ * has an integer handle, unique among all the IDs created, and keeps a
+ * reference to the ID of its parent node in the hierarchy, obtained cutting
+ * the ID at its last '.' or '(' character. For instance, the hierarchy of
+ * {@code myLights.light(1).level} is:
+ * {@code myLights.light(1).level}, {@code myLights.light(1)},
+ * {@code myLights.light}, {@code myLights}.
+ * </p>
+ * <p>
+ * Instances are weakly held by the intern table: an ID no longer referenced,
+ * e.g. by a node, a script trigger or the last event posted with it, is
+ * released, so the IDs of the events generated by remote clients and
+ * connections do not accumulate. An ID keeps its ancestors alive.
+ * </p>
+ */
+public final class EventId {
+
+	private static final ConcurrentMap<String, EventId> IDS = new MapMaker().weakValues().makeMap();
+	private static final AtomicInteger HANDLES = new AtomicInteger();
+
+	private final String id;
+	private final int handle;
+	private final EventId parent;
+	private final List<EventId> hierarchy;
+
+	/**
+	 * 
+	 * @param id
+	 * @param parent
+	 */
+	private EventId(String id, EventId parent) {
+		this.id = id;
+		this.handle = HANDLES.getAndIncrement();
+		this.parent = parent;
+		List<EventId> hierarchy = new ArrayList<>(parent == null ? 1 : parent.hierarchy.size() + 1);
+		hierarchy.add(this);
+		if (parent != null) {
+			hierarchy.addAll(parent.hierarchy);
+		}
+		this.hierarchy = Collections.unmodifiableList(hierarchy);
+	}
+
+	/**
+	 * Returns the {@code EventId} instance representing the specified ID.
+	 * 
+	 * @param id
+	 *            the event ID
+	 * @return the {@code EventId} instance representing the specified ID
+	 */
+	public static EventId of(String id) {
+		EventId eventId = IDS.get(id);
+		if (eventId != null) {
+			return eventId;
+		}
+		int cut = lastIndexOfSeparator(id);
+		EventId parent = cut > 0 ? of(id.substring(0, cut)) : null;
+		eventId = new EventId(id, parent);
+		EventId prev = IDS.putIfAbsent(id, eventId);
+		return prev == null ? eventId : prev;
+	}
+
+	/**
+	 * 
+	 * @param id
+	 * @return
+	 */
+	private static int lastIndexOfSeparator(String id) {
+		for (int i = id.length() - 1; i >= 0; i--) {
+			char c = id.charAt(i);
+			if (c == '.' || c == '(') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the {@code EventId} instance representing this ID followed by a
+	 * '.' and the specified sub-ID.
+	 * 
+	 * @param subId
+	 *            the sub-ID
+	 * @return the {@code EventId} of the child with the specified sub-ID
+	 */
+	public EventId getChild(String subId) {
+		return of(id + "." + subId);
+	}
+
+	/**
+	 * Returns the integer handle of this ID, unique among all the
+	 * {@code EventId} instances created.
+	 * 
+	 * @return the integer handle of this ID
+	 */
+	public int getHandle() {
+		return handle;
+	}
+
+	/**
+	 * Returns the parent ID in the hierarchy.
+	 * 
+	 * @return the parent ID, or {@code null} if this is a root ID
+	 */
+	public EventId getParent() {
+		return parent;
+	}
+
+	/**
+	 * Returns the list of IDs composing the hierarchy of this ID, starting from
+	 * this ID up to the root.
+	 * 
+	 * @return the unmodifiable list of IDs composing the hierarchy of this ID
+	 */
+	public List<EventId> getHierarchy() {
+		return hierarchy;
+	}
+
+	/**
+	 * Returns whether this ID is equal to or a descendant of the specified ID.
+	 * 
+	 * @param ancestor
+	 *            the ID to check
+	 * @return {@code true} if this ID is equal to or a descendant of the
+	 *         specified ID, {@code false} otherwise
+	 */
+	public boolean isOrDescendsFrom(EventId ancestor) {
+		for (EventId e = this; e != null; e = e.parent) {
+			if (e == ancestor) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return handle;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return this == obj;
+	}
+
+	@Override
+	public String toString() {
+		return id;
+	}
+
+}
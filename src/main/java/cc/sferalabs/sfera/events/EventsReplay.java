@@ -0,0 +1,72 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.events;
+
+import java.util.List;
+
+/**
+ * Events posted after a given sequence number, as returned by
+ * {@link Bus#getEventsAfter(long)}, together with the sequence number a
+ * subscription should be resumed from.
+ */
+public class EventsReplay {
+
+	private final List<Event> events;
+	private final long sequence;
+
+	/**
+	 * 
+	 * @param events
+	 *            the events, in the order they were posted
+	 * @param sequence
+	 *            the sequence number up to which all the events are included
+	 */
+	EventsReplay(List<Event> events, long sequence) {
+		this.events = events;
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Returns the replayed events, in the order they were posted. Events still
+	 * being posted when the replay was taken are not included, while the ones
+	 * posted after them are.
+	 * 
+	 * @return the replayed events
+	 */
+	public List<Event> getEvents() {
+		return events;
+	}
+
+	/**
+	 * Returns the sequence number up to which all the posted events are
+	 * included in the replay, i.e. the one to resume from. It can be lower
+	 * than the sequence number of the last replayed event if some events were
+	 * still being posted.
+	 * 
+	 * @return the sequence number to resume from
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+}
@@ -26,7 +26,9 @@
 package cc.sferalabs.sfera.events;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Predicate;
 
 /**
@@ -38,80 +40,153 @@ import java.util.function.Predicate;
  */
 public abstract class EventsUtil {
 
-	private static class EventIdSpecMatchingPredicatesList implements Predicate<Event> {
+	/**
+	 * Predicate compiled from an event ID specification. Exact IDs are matched
+	 * with a hash set lookup of the event ID and wildcard patterns are matched
+	 * in place on the event ID, without allocations. The IDs in the
+	 * specification are not interned as {@link EventId}s, since specifications
+	 * can be supplied by remote clients.
+	 */
+	private static class EventIdSpecMatchingPredicate implements Predicate<Event> {
 
-		private final List<Predicate<Event>> predicatesList;
+		private final boolean matchAll;
+		private final Set<String> ids;
+		private final String[][] patterns;
 
 		/**
 		 * 
-		 * @param specx
+		 * @param spec
 		 * @throws IllegalArgumentException
 		 */
-		private EventIdSpecMatchingPredicatesList(String specx) throws IllegalArgumentException {
-			String[] specs = specx.split(";");
-			this.predicatesList = new ArrayList<>(specs.length);
-			for (String s : specs) {
-				Predicate<Event> predicate;
-				if (s.isEmpty()) {
-					predicate = new Predicate<Event>() {
-						@Override
-						public boolean test(Event e) {
-							return true;
-						}
-					};
-				} else if (s.contains("*")) {
-					String[] parts = s.split("\\*");
-					if (parts.length > 2) {
-						throw new IllegalArgumentException("Invalid syntax");
+		private EventIdSpecMatchingPredicate(String spec) throws IllegalArgumentException {
+			boolean matchAll = false;
+			Set<String> ids = new HashSet<>();
+			List<String[]> patterns = new ArrayList<>();
+			for (String s : spec.split(";")) {
+				if (!s.contains("*")) {
+					if (s.isEmpty()) {
+						matchAll = true;
+					} else {
+						ids.add(s);
 					}
-					if (parts.length == 0) { // case "*"
-						predicate = new Predicate<Event>() {
-							@Override
-							public boolean test(Event t) {
-								return true;
-							}
-						};
+					continue;
+				}
+				for (String glob : expandSegmentsWildcards(s)) {
+					String[] parts = glob.split("\\*+", -1);
+					if (parts.length == 2 && parts[0].isEmpty() && parts[1].isEmpty()) {
+						matchAll = true;
+					} else if (parts.length == 1) {
+						ids.add(glob);
 					} else {
-						predicate = new Predicate<Event>() {
-							@Override
-							public boolean test(Event e) {
-								if (!e.getId().startsWith(parts[0])) {
-									return false;
-								}
-								if (parts.length == 2 && !e.getId().endsWith(parts[1])) {
-									return false;
-								}
-								return true;
-							}
-						};
+						patterns.add(parts);
 					}
-				} else {
-					predicate = new Predicate<Event>() {
-						@Override
-						public boolean test(Event e) {
-							return e.getId().equals(s);
-						}
-					};
 				}
-				predicatesList.add(predicate);
 			}
-
+			this.matchAll = matchAll;
+			this.ids = ids.isEmpty() ? null : ids;
+			this.patterns = patterns.toArray(new String[patterns.size()][]);
 		}
 
 		@Override
-		public boolean test(Event t) {
-			for (Predicate<Event> p : predicatesList) {
-				if (p.test(t)) {
+		public boolean test(Event e) {
+			if (matchAll) {
+				return true;
+			}
+			String id = e.getId();
+			if (ids != null && ids.contains(id)) {
+				return true;
+			}
+			for (String[] parts : patterns) {
+				if (matches(id, parts)) {
 					return true;
 				}
 			}
 			return false;
 		}
+
+		/**
+		 * Matches the specified ID against a pattern split at its wildcards.
+		 * 
+		 * @param id
+		 * @param parts
+		 * @return
+		 */
+		private static boolean matches(String id, String[] parts) {
+			String first = parts[0];
+			String last = parts[parts.length - 1];
+			int end = id.length() - last.length();
+			if (end < first.length() || !id.startsWith(first) || !id.endsWith(last)) {
+				return false;
+			}
+			int from = first.length();
+			for (int i = 1; i < parts.length - 1; i++) {
+				String part = parts[i];
+				int idx = id.indexOf(part, from);
+				if (idx < 0 || idx + part.length() > end) {
+					return false;
+				}
+				from = idx + part.length();
+			}
+			return true;
+		}
+
+		/**
+		 * Replaces the '**' segments with the equivalent '*' patterns: a '**'
+		 * segment matches zero or more segments, so that, for instance,
+		 * 'a.**.b' is equivalent to 'a.b' or 'a.*.b'.
+		 * 
+		 * @param spec
+		 * @return
+		 */
+		private static List<String> expandSegmentsWildcards(String spec) {
+			List<String> globs = new ArrayList<>();
+			int i = spec.indexOf("**");
+			while (i >= 0 && !isSegment(spec, i)) {
+				i = spec.indexOf("**", i + 2);
+			}
+			if (i < 0) {
+				globs.add(spec);
+				return globs;
+			}
+			String before = spec.substring(0, i);
+			String after = spec.substring(i + 2);
+			String withoutSegment;
+			if (before.isEmpty()) {
+				withoutSegment = after.isEmpty() ? "*" : after.substring(1);
+			} else {
+				withoutSegment = before.substring(0, before.length() - 1) + after;
+			}
+			for (String rest : expandSegmentsWildcards(after)) {
+				globs.add(before + "*" + rest);
+			}
+			if (!before.isEmpty() || !after.isEmpty()) {
+				globs.addAll(expandSegmentsWildcards(withoutSegment));
+			}
+			return globs;
+		}
+
+		/**
+		 * 
+		 * @param spec
+		 * @param i
+		 * @return
+		 */
+		private static boolean isSegment(String spec, int i) {
+			int end = i + 2;
+			return (i == 0 || spec.charAt(i - 1) == '.') && (end == spec.length() || spec.charAt(end) == '.');
+		}
 	}
 
 	/**
 	 * Returns a {@link Predicate} that can be used to test if an {@link Event}
 	 * has an ID matching the the given specification.
+	 * <p>
+	 * The specification is a list of patterns separated by ';'. A '*' character
+	 * in a pattern matches any sequence of characters, while a '**' segment (i.e.
+	 * delimited by '.' or by the start/end of the pattern) matches zero or more
+	 * segments, for instance 'a.**.b' matches 'a.b', 'a.x.b' and 'a.x.y.b'. An
+	 * empty pattern matches any ID.
+	 * </p>
 	 * 
 	 * @param spec
 	 *            the event ID specification
@@ -122,7 +197,7 @@ public abstract class EventsUtil {
 	 */
 	public static Predicate<Event> getEventIdSpecMatchingPredicate(String spec)
 			throws IllegalArgumentException {
-		return new EventIdSpecMatchingPredicatesList(spec);
+		return new EventIdSpecMatchingPredicate(spec);
 	}
 
 }
@@ -33,6 +33,7 @@ package cc.sferalabs.sfera.events;
 public abstract class Node {
 
 	private final String id;
+	private final EventId eventId;
 
 	/**
 	 * Constructs a {@code Node} with the specified ID and adds it to the list
@@ -45,6 +46,7 @@ public abstract class Node {
 	 */
 	public Node(String id) throws IllegalArgumentException {
 		this.id = id;
+		this.eventId = id == null ? null : EventId.of(id);
 		Nodes.put(this);
 	}
 
@@ -57,6 +59,15 @@ public abstract class Node {
 		return id;
 	}
 
+	/**
+	 * Returns the interned representation of the node ID
+	 * 
+	 * @return the interned representation of the node ID
+	 */
+	public final EventId getEventId() {
+		return eventId;
+	}
+
 	/**
 	 * Removes the node from the list of existing nodes.
 	 */
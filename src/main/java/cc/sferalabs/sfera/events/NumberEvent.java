@@ -25,6 +25,9 @@ package cc.sferalabs.sfera.events;
 /**
  * Abstract class for events with numeric value.
  * 
+ * @see DoubleEvent
+ * @see LongEvent
+ * 
  * @author Giampiero Baggiani
  *
  * @version 1.0.0
@@ -50,6 +53,21 @@ public abstract class NumberEvent extends BaseEvent {
 		this.value = value;
 	}
 
+	/**
+	 * Constructs a {@code NumberEvent} event with the specified ID and source,
+	 * for subclasses storing the value as a primitive and overriding
+	 * {@link #getValue()}.
+	 * 
+	 * @param source
+	 *            the source node
+	 * @param id
+	 *            the event ID
+	 */
+	protected NumberEvent(Node source, String id) {
+		super(source, id);
+		this.value = null;
+	}
+
 	@Override
 	public Number getValue() {
 		return value;
@@ -0,0 +1,148 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded buffer of the last events posted, each one stored together with its
+ * sequence number. Events are added and read without locking: readers detect
+ * the slots not written yet or already overwritten by comparing the stored
+ * sequence numbers.
+ */
+class ReplayBuffer {
+
+	private final AtomicReferenceArray<Entry> entries;
+
+	/**
+	 * Event with its sequence number
+	 */
+	private static class Entry {
+
+		private final long seq;
+		private final Event event;
+
+		/**
+		 * 
+		 * @param seq
+		 * @param event
+		 */
+		private Entry(long seq, Event event) {
+			this.seq = seq;
+			this.event = event;
+		}
+	}
+
+	/**
+	 * 
+	 * @param capacity
+	 *            the max number of events kept
+	 */
+	ReplayBuffer(int capacity) {
+		this.entries = new AtomicReferenceArray<>(capacity);
+	}
+
+	/**
+	 * Adds the specified event with the specified sequence number, evicting the
+	 * event with the same index, if any.
+	 * 
+	 * @param seq
+	 *            the sequence number of the event
+	 * @param event
+	 *            the event
+	 */
+	void add(long seq, Event event) {
+		entries.set(index(seq), new Entry(seq, event));
+	}
+
+	/**
+	 * Returns the events added after the one with the specified sequence number,
+	 * in the order they were added, up to the specified sequence number. The
+	 * events not added yet are skipped: the sequence number of the returned
+	 * replay is the last one before the first of them.
+	 * 
+	 * @param seq
+	 *            the sequence number
+	 * @param head
+	 *            the sequence number of the last event posted
+	 * @return the events added after the one with the specified sequence number,
+	 *         or {@code null} if some of them are no longer available or
+	 *         {@code seq} is greater than {@code head}
+	 */
+	EventsReplay getEventsAfter(long seq, long head) {
+		int capacity = entries.length();
+		if (seq > head || seq < head - capacity || seq < 0) {
+			return null;
+		}
+		List<Event> list = new ArrayList<>((int) (head - seq));
+		long contiguous = seq;
+		for (long s = seq + 1; s <= head; s++) {
+			Entry e = entries.get(index(s));
+			if (e == null || e.seq < s) {
+				// still being posted, will be delivered to the subscribers
+				continue;
+			}
+			if (e.seq > s) {
+				return null;
+			}
+			list.add(e.event);
+			if (contiguous == s - 1) {
+				contiguous = s;
+			}
+		}
+		return new EventsReplay(list, contiguous);
+	}
+
+	/**
+	 * Looks up the sequence number of the specified event instance, from the
+	 * most recent one.
+	 * 
+	 * @param event
+	 *            the event
+	 * @param head
+	 *            the sequence number of the last event posted
+	 * @return the sequence number of the event, or -1 if not found
+	 */
+	long getSequence(Event event, long head) {
+		long tail = Math.max(0, head - entries.length());
+		for (long s = head; s > tail; s--) {
+			Entry e = entries.get(index(s));
+			if (e != null && e.event == event) {
+				return e.seq;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 
+	 * @param seq
+	 * @return
+	 */
+	private int index(long seq) {
+		return (int) (seq % entries.length());
+	}
+
+}
@@ -0,0 +1,164 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cc.sferalabs.sfera.core.services.TasksManager;
+import cc.sferalabs.sfera.events.Event;
+
+/**
+ * Schedules the executions of a rule's action according to the rule's
+ * {@link ExecutionPolicy}. The queue of the {@code serial} and {@code max}
+ * policies is bounded: executions triggered while it is full are discarded.
+ */
+class ActionDispatcher {
+
+	static final int DEFAULT_QUEUE_SIZE = 1000;
+
+	private final Rule rule;
+	private final ExecutionPolicy policy;
+	private final AtomicInteger running = new AtomicInteger();
+	private final Queue<ActionTask> queue;
+	private final AtomicReference<ActionTask> latest;
+
+	/**
+	 * 
+	 * @param rule
+	 *            the rule
+	 * @param policy
+	 *            the execution policy
+	 */
+	ActionDispatcher(Rule rule, ExecutionPolicy policy) {
+		this(rule, policy, ScriptsEngine.getActionQueueSize());
+	}
+
+	/**
+	 * 
+	 * @param rule
+	 *            the rule
+	 * @param policy
+	 *            the execution policy
+	 * @param queueSize
+	 *            the max number of queued executions
+	 */
+	ActionDispatcher(Rule rule, ExecutionPolicy policy, int queueSize) {
+		this.rule = rule;
+		this.policy = policy;
+		switch (policy.getType()) {
+		case SERIAL:
+		case MAX:
+			queue = new LinkedBlockingQueue<>(queueSize);
+			latest = null;
+			break;
+		case LATEST:
+			queue = null;
+			latest = new AtomicReference<>();
+			break;
+		default:
+			queue = null;
+			latest = null;
+			break;
+		}
+	}
+
+	/**
+	 * Schedules the execution of the action triggered by the specified
+	 * event.
+	 * 
+	 * @param event
+	 *            the trigger event
+	 */
+	void dispatch(Event event) {
+		switch (policy.getType()) {
+		case CONCURRENT:
+			TasksManager.execute(new ActionTask(event, rule, null));
+			break;
+
+		case DROP:
+			if (running.compareAndSet(0, 1)) {
+				TasksManager.execute(new ActionTask(event, rule, this::done));
+			} else {
+				rule.stats.addDropped();
+			}
+			break;
+
+		case LATEST:
+			if (latest.getAndSet(new ActionTask(event, rule, this::done)) != null) {
+				rule.stats.addDropped();
+			}
+			drain();
+			break;
+
+		default:
+			if (!queue.offer(new ActionTask(event, rule, this::done))) {
+				rule.stats.addDropped();
+			}
+			drain();
+			break;
+		}
+	}
+
+	/**
+	 * Called when an execution terminates.
+	 */
+	private void done() {
+		running.decrementAndGet();
+		if (policy.getType() != ExecutionPolicy.Type.DROP) {
+			drain();
+		}
+	}
+
+	/**
+	 * Starts pending executions as long as the max concurrency allows.
+	 */
+	private void drain() {
+		while (true) {
+			int r = running.get();
+			if (r >= policy.getMaxConcurrency() || !hasPending()) {
+				return;
+			}
+			if (!running.compareAndSet(r, r + 1)) {
+				continue;
+			}
+			ActionTask task = queue != null ? queue.poll() : latest.getAndSet(null);
+			if (task == null) {
+				running.decrementAndGet();
+			} else {
+				TasksManager.execute(task);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	private boolean hasPending() {
+		return queue != null ? !queue.isEmpty() : latest.get() != null;
+	}
+
+}
@@ -22,12 +22,9 @@
 
 package cc.sferalabs.sfera.scripts;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
-import javax.script.Bindings;
-import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 
 import org.slf4j.Logger;
@@ -50,6 +47,7 @@ class ActionTask extends Task {
 
 	private final Event triggerEvent;
 	private final Rule rule;
+	private final Runnable onCompletion;
 
 	/**
 	 * 
@@ -59,43 +57,53 @@ class ActionTask extends Task {
 	 *            the rule
 	 */
 	ActionTask(Event triggerEvent, Rule rule) {
+		this(triggerEvent, rule, null);
+	}
+
+	/**
+	 * 
+	 * @param triggerEvent
+	 *            the trigger event
+	 * @param rule
+	 *            the rule
+	 * @param onCompletion
+	 *            callback to run after the execution, or {@code null}
+	 */
+	ActionTask(Event triggerEvent, Rule rule, Runnable onCompletion) {
 		super("script:" + rule.scriptFile + ":" + rule.startLine);
 		this.triggerEvent = triggerEvent;
 		this.rule = rule;
+		this.onCompletion = onCompletion;
 	}
 
 	@Override
 	protected void execute() {
 		try {
-			ScriptEngine engine = rule.action.getEngine();
-			Bindings b = engine.createBindings();
-			for (Bindings imp : rule.imports) {
-				b.putAll(imp);
+			runAction();
+		} finally {
+			if (onCompletion != null) {
+				onCompletion.run();
 			}
-			b.putAll(rule.fileScope);
-			Map<String, Object> preBindings = new HashMap<>(b);
-			b.put("_e", triggerEvent);
-
-			rule.action.eval(b);
+		}
+	}
 
-			for (Entry<String, Object> e : b.entrySet()) {
-				String key = e.getKey();
-				if (preBindings.containsKey(key)) {
-					Object val = e.getValue();
-					Object preVal = preBindings.get(key);
-					if (preVal != val) {
-						if (rule.fileScope.replace(key, val) == null) {
-							for (Bindings imp : rule.imports) {
-								if (imp.replace(key, val) != null) {
-									break;
-								}
-							}
-						}
-					}
-				}
-			}
+	/**
+	 * Executes the action and records its statistics.
+	 */
+	private void runAction() {
+		long start = System.nanoTime();
+		boolean error = false;
+		ActionsWatchdog.Execution execution = ActionsWatchdog.start(rule);
+		String source = ScriptNodes.getSource();
+		ScriptNodes.setSource(rule.source);
+		try {
+			rule.action.call(triggerEvent);
 			logger.debug("Action executed. File '{}' line {}", rule.scriptFile, rule.startLine);
+		} catch (CancellationException e) {
+			error = true;
+			logger.warn("Action cancelled. File '{}' line {}", rule.scriptFile, rule.startLine);
 		} catch (Throwable e) {
+			error = true;
 			int line = rule.startLine;
 			if (e instanceof ScriptException) {
 				if (((ScriptException) e).getLineNumber() >= 0) {
@@ -103,6 +111,16 @@ class ActionTask extends Task {
 				}
 			}
 			logger.error("Error executing action. File '" + rule.scriptFile + "' line " + line, e);
+		} finally {
+			ScriptNodes.setSource(source);
+			ActionsWatchdog.end(execution);
+		}
+		long nanos = System.nanoTime() - start;
+		rule.stats.addExecution(nanos, error);
+		long threshold = ScriptsEngine.getSlowActionThreshold();
+		if (threshold > 0 && nanos > TimeUnit.MILLISECONDS.toNanos(threshold)) {
+			logger.warn("Slow action. File '{}' line {}: {} ms", rule.scriptFile, rule.startLine,
+					TimeUnit.NANOSECONDS.toMillis(nanos));
 		}
 	}
 
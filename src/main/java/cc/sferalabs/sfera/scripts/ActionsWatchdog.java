@@ -0,0 +1,213 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cc.sferalabs.sfera.scripts.engine.ActionCheckpoint;
+
+/**
+ * Watchdog enforcing the execution time and CPU time limits of the script
+ * actions. An action exceeding a limit is cancelled, so that it fails at its
+ * next loop iteration or function call (see {@link ActionCheckpoint}), and
+ * interrupted, so that it fails if waiting in a Java call; a violation is
+ * counted for its rule. An action still running after that, e.g. because it
+ * is looping in a library function, which is not instrumented, or in Java
+ * code ignoring the interruption, counts a new violation, and is cancelled
+ * and interrupted again, every time it exceeds the limit once more. Rules
+ * whose actions exceed the limits repeatedly are disabled.
+ */
+abstract class ActionsWatchdog {
+
+	private static final Logger logger = LoggerFactory.getLogger(ActionsWatchdog.class);
+
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	private static final Set<Execution> executions = ConcurrentHashMap.newKeySet();
+
+	private static volatile boolean enabled = false;
+	private static volatile long timeoutNanos;
+	private static volatile long cpuBudgetNanos;
+	private static volatile int maxViolations;
+	private static ScheduledExecutorService executor;
+
+	/**
+	 * Running execution of an action
+	 */
+	static class Execution {
+
+		private final Rule rule;
+		private final Thread thread;
+		private final ActionCheckpoint.Cancellation cancellation;
+		private long fromNanos;
+		private long fromCpuNanos;
+		private boolean done = false;
+
+		/**
+		 * 
+		 * @param rule
+		 */
+		private Execution(Rule rule) {
+			this.rule = rule;
+			this.thread = Thread.currentThread();
+			this.cancellation = ActionCheckpoint.enter();
+			this.fromNanos = System.nanoTime();
+			this.fromCpuNanos = cpuBudgetNanos > 0 ? threadMXBean.getCurrentThreadCpuTime() : 0;
+		}
+	}
+
+	/**
+	 * Sets the limits enforced by the watchdog.
+	 * 
+	 * @param timeoutMillis
+	 *            max execution time of an action, in milliseconds, or 0 for no
+	 *            limit
+	 * @param cpuBudgetMillis
+	 *            max CPU time of an action, in milliseconds, or 0 for no limit
+	 * @param maxViolations
+	 *            number of violations after which a rule is disabled, or 0 to
+	 *            never disable rules
+	 */
+	static synchronized void configure(long timeoutMillis, long cpuBudgetMillis,
+			int maxViolations) {
+		if (cpuBudgetMillis > 0 && !threadMXBean.isCurrentThreadCpuTimeSupported()) {
+			logger.warn("Thread CPU time not supported: actions CPU budget disabled");
+			cpuBudgetMillis = 0;
+		}
+		ActionsWatchdog.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		ActionsWatchdog.cpuBudgetNanos = TimeUnit.MILLISECONDS.toNanos(cpuBudgetMillis);
+		ActionsWatchdog.maxViolations = maxViolations;
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		enabled = timeoutMillis > 0 || cpuBudgetMillis > 0;
+		if (enabled) {
+			long min = Long.MAX_VALUE;
+			if (timeoutMillis > 0) {
+				min = timeoutMillis;
+			}
+			if (cpuBudgetMillis > 0) {
+				min = Math.min(min, cpuBudgetMillis);
+			}
+			long period = Math.max(10, Math.min(1000, min / 10));
+			ScheduledThreadPoolExecutor ex = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread t = new Thread(r, "scripts-watchdog");
+				t.setDaemon(true);
+				return t;
+			});
+			ex.scheduleWithFixedDelay(ActionsWatchdog::check, period, period,
+					TimeUnit.MILLISECONDS);
+			executor = ex;
+		}
+	}
+
+	/**
+	 * Registers the execution of the specified rule's action on the current
+	 * thread.
+	 * 
+	 * @param rule
+	 *            the rule
+	 * @return the execution handle to be passed to {@link #end(Execution)},
+	 *         or {@code null} if the watchdog is disabled
+	 */
+	static Execution start(Rule rule) {
+		if (!enabled) {
+			return null;
+		}
+		Execution x = new Execution(rule);
+		executions.add(x);
+		return x;
+	}
+
+	/**
+	 * Unregisters the specified execution and clears the interrupted status
+	 * possibly set by the watchdog, so that it is not inherited by the next
+	 * task run by the thread. Must be called by the thread that started the
+	 * execution.
+	 * 
+	 * @param x
+	 *            the execution handle, can be {@code null}
+	 */
+	static void end(Execution x) {
+		if (x == null) {
+			return;
+		}
+		executions.remove(x);
+		ActionCheckpoint.exit();
+		synchronized (x) {
+			// the watchdog only interrupts while holding the lock, so no
+			// interrupt can arrive after this point
+			x.done = true;
+		}
+		Thread.interrupted();
+	}
+
+	/**
+	 * Checks the running executions.
+	 */
+	private static void check() {
+		try {
+			long now = System.nanoTime();
+			for (Execution x : executions) {
+				String violation = null;
+				long cpu = -1;
+				if (cpuBudgetNanos > 0) {
+					cpu = threadMXBean.getThreadCpuTime(x.thread.getId());
+				}
+				if (timeoutNanos > 0 && now - x.fromNanos > timeoutNanos) {
+					violation = "timeout";
+				} else if (cpu >= 0 && cpu - x.fromCpuNanos > cpuBudgetNanos) {
+					violation = "CPU budget";
+				}
+				if (violation != null) {
+					synchronized (x) {
+						if (x.done) {
+							continue;
+						}
+						// the next violation is counted from now
+						x.fromNanos = now;
+						x.fromCpuNanos = cpu;
+						x.rule.stats.addViolation();
+						x.rule.addViolation(maxViolations);
+						x.cancellation.cancel();
+						x.thread.interrupt();
+					}
+					logger.warn("Action exceeded {}, cancelling it. File '{}' line {}", violation,
+							x.rule.scriptFile, x.rule.startLine);
+				}
+			}
+		} catch (Throwable t) {
+			logger.error("Watchdog error", t);
+		}
+	}
+
+}
@@ -0,0 +1,460 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cc.sferalabs.sfera.events.Bus;
+import cc.sferalabs.sfera.events.DoubleEvent;
+import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.EventIdSpecListener;
+import cc.sferalabs.sfera.events.LongEvent;
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.events.ObjectEvent;
+
+/**
+ * Node maintaining the count, sum, average, min and max of the numeric values
+ * of the events matching an event ID specification over a sliding or tumbling
+ * time window, optionally grouped by a segment of the events IDs.
+ * <p>
+ * The aggregates are posted as events of this node ({@code <id>.count},
+ * {@code <id>.sum}, {@code <id>.avg}, {@code <id>.min} and {@code <id>.max},
+ * and {@code <id>.group(<key>).<aggregate>} for the groups) when their value
+ * changes: on each matching event and when values exit a sliding window, or
+ * at the end of each tumbling window.
+ * </p>
+ */
+public class AggregateNode extends Node {
+
+	private final long windowNanos;
+	private final boolean tumbling;
+	private final int groupBy;
+	private final EventIdSpecListener listener;
+	private final Stats total = new Stats();
+	private final Map<String, Stats> groups = new HashMap<>();
+	private final long startNanos = System.nanoTime();
+	private long windows;
+	private TimerWheel.Timeout timeout;
+	private boolean destroyed;
+
+	/**
+	 * Aggregates of the values of a group
+	 */
+	private class Stats {
+
+		private final Deque<Sample> samples = new ArrayDeque<>();
+		private final Deque<Sample> mins = new ArrayDeque<>();
+		private final Deque<Sample> maxs = new ArrayDeque<>();
+		private long count;
+		private double sum;
+		private double min;
+		private double max;
+
+		/**
+		 * 
+		 * @param time
+		 * @param value
+		 */
+		private void add(long time, double value) {
+			if (count == 0) {
+				sum = 0;
+				min = value;
+				max = value;
+			}
+			count++;
+			sum += value;
+			if (tumbling) {
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+				return;
+			}
+			Sample s = new Sample(time, value);
+			samples.addLast(s);
+			while (!mins.isEmpty() && mins.peekLast().value >= value) {
+				mins.pollLast();
+			}
+			mins.addLast(s);
+			while (!maxs.isEmpty() && maxs.peekLast().value <= value) {
+				maxs.pollLast();
+			}
+			maxs.addLast(s);
+		}
+
+		/**
+		 * Removes the samples out of the sliding window.
+		 * 
+		 * @param now
+		 */
+		private void evict(long now) {
+			while (!samples.isEmpty() && now - samples.peekFirst().time >= windowNanos) {
+				Sample s = samples.pollFirst();
+				count--;
+				sum -= s.value;
+				if (mins.peekFirst() == s) {
+					mins.pollFirst();
+				}
+				if (maxs.peekFirst() == s) {
+					maxs.pollFirst();
+				}
+			}
+			if (!mins.isEmpty()) {
+				min = mins.peekFirst().value;
+				max = maxs.peekFirst().value;
+			}
+		}
+
+		/**
+		 * Clears the values of the tumbling window.
+		 */
+		private void reset() {
+			count = 0;
+			sum = 0;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private static class Sample {
+
+		private final long time;
+		private final double value;
+
+		/**
+		 * 
+		 * @param time
+		 * @param value
+		 */
+		private Sample(long time, double value) {
+			this.time = time;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Event with the value of an aggregate
+	 */
+	private static class AggregateEvent extends DoubleEvent {
+
+		/**
+		 * 
+		 * @param source
+		 * @param id
+		 * @param value
+		 */
+		private AggregateEvent(Node source, String id, double value) {
+			super(source, id, value);
+		}
+	}
+
+	/**
+	 * Event with the count of the values in the window
+	 */
+	private static class CountEvent extends LongEvent {
+
+		/**
+		 * 
+		 * @param source
+		 * @param id
+		 * @param value
+		 */
+		private CountEvent(Node source, String id, long value) {
+			super(source, id, value);
+		}
+	}
+
+	/**
+	 * Event of an aggregate undefined for an empty window
+	 */
+	private static class UnknownEvent extends ObjectEvent {
+
+		/**
+		 * 
+		 * @param source
+		 * @param id
+		 */
+		private UnknownEvent(Node source, String id) {
+			super(source, id, null);
+		}
+	}
+
+	/**
+	 * Constructs an AggregateNode over a sliding window.
+	 * 
+	 * @param id
+	 *            the node ID
+	 * @param spec
+	 *            the specification of the IDs of the aggregated events
+	 * @param windowMillis
+	 *            the window duration in milliseconds
+	 * @throws IllegalArgumentException
+	 *             if a node with the same ID already exists or the parameters
+	 *             are not valid
+	 */
+	public AggregateNode(String id, String spec, long windowMillis)
+			throws IllegalArgumentException {
+		this(id, spec, windowMillis, "sliding", 0);
+	}
+
+	/**
+	 * Constructs an AggregateNode.
+	 * 
+	 * @param id
+	 *            the node ID
+	 * @param spec
+	 *            the specification of the IDs of the aggregated events
+	 * @param windowMillis
+	 *            the window duration in milliseconds
+	 * @param window
+	 *            the window type: "sliding" or "tumbling"
+	 * @throws IllegalArgumentException
+	 *             if a node with the same ID already exists or the parameters
+	 *             are not valid
+	 */
+	public AggregateNode(String id, String spec, long windowMillis, String window)
+			throws IllegalArgumentException {
+		this(id, spec, windowMillis, window, 0);
+	}
+
+	/**
+	 * Constructs an AggregateNode.
+	 * 
+	 * @param id
+	 *            the node ID
+	 * @param spec
+	 *            the specification of the IDs of the aggregated events
+	 * @param windowMillis
+	 *            the window duration in milliseconds
+	 * @param window
+	 *            the window type: "sliding" or "tumbling"
+	 * @param groupBy
+	 *            the position, starting from 1, of the segment of the events
+	 *            IDs identifying the group of the values, or 0 for no groups
+	 * @throws IllegalArgumentException
+	 *             if a node with the same ID already exists or the parameters
+	 *             are not valid
+	 */
+	public AggregateNode(String id, String spec, long windowMillis, String window, int groupBy)
+			throws IllegalArgumentException {
+		super(id);
+		try {
+			if (windowMillis <= 0) {
+				throw new IllegalArgumentException("window must be positive");
+			}
+			if (groupBy < 0) {
+				throw new IllegalArgumentException("groupBy must not be negative");
+			}
+			if ("tumbling".equalsIgnoreCase(window)) {
+				this.tumbling = true;
+			} else if ("sliding".equalsIgnoreCase(window)) {
+				this.tumbling = false;
+			} else {
+				throw new IllegalArgumentException("Unknown window type '" + window + "'");
+			}
+			this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+			this.groupBy = groupBy;
+			this.listener = new EventIdSpecListener(spec) {
+
+				@Override
+				protected void handleEvent(Event event) {
+					if (event.getSource() != AggregateNode.this) {
+						add(event);
+					}
+				}
+			};
+		} catch (RuntimeException e) {
+			super.destroy();
+			throw e;
+		}
+		ScriptNodes.add(this);
+		if (tumbling) {
+			synchronized (this) {
+				scheduleTumble();
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param event
+	 */
+	private synchronized void add(Event event) {
+		if (destroyed) {
+			return;
+		}
+		double value;
+		if (event instanceof DoubleEvent) {
+			value = ((DoubleEvent) event).getDoubleValue();
+		} else if (event instanceof LongEvent) {
+			value = ((LongEvent) event).getLongValue();
+		} else if (event.getSimpleValue() instanceof Number) {
+			value = ((Number) event.getSimpleValue()).doubleValue();
+		} else {
+			return;
+		}
+		long now = System.nanoTime();
+		total.add(now, value);
+		String key = getGroup(event);
+		Stats group = null;
+		if (key != null) {
+			group = groups.get(key);
+			if (group == null) {
+				group = new Stats();
+				groups.put(key, group);
+			}
+			group.add(now, value);
+		}
+		if (tumbling) {
+			return;
+		}
+		total.evict(now);
+		post("", total);
+		if (group != null) {
+			group.evict(now);
+			post("group(" + key + ").", group);
+		}
+		if (timeout == null) {
+			scheduleEviction(now);
+		}
+	}
+
+	/**
+	 * 
+	 * @param event
+	 * @return the group of the event, or {@code null}
+	 */
+	private String getGroup(Event event) {
+		if (groupBy == 0) {
+			return null;
+		}
+		String[] segments = event.getId().split("\\.");
+		return segments.length >= groupBy ? segments[groupBy - 1] : null;
+	}
+
+	/**
+	 * Schedules the eviction of the oldest sample of the sliding window.
+	 * 
+	 * @param now
+	 */
+	private void scheduleEviction(long now) {
+		Sample oldest = total.samples.peekFirst();
+		if (oldest == null) {
+			timeout = null;
+			return;
+		}
+		long delay = TimeUnit.NANOSECONDS.toMillis(oldest.time + windowNanos - now);
+		timeout = TimerWheel.INSTANCE.schedule(delay, this::evict);
+	}
+
+	/**
+	 * 
+	 */
+	private synchronized void evict() {
+		if (destroyed) {
+			return;
+		}
+		long now = System.nanoTime();
+		total.evict(now);
+		post("", total);
+		for (Iterator<Map.Entry<String, Stats>> it = groups.entrySet().iterator(); it
+				.hasNext();) {
+			Map.Entry<String, Stats> group = it.next();
+			group.getValue().evict(now);
+			post("group(" + group.getKey() + ").", group.getValue());
+			if (group.getValue().count == 0) {
+				it.remove();
+			}
+		}
+		scheduleEviction(now);
+	}
+
+	/**
+	 * Schedules the end of the current tumbling window.
+	 */
+	private void scheduleTumble() {
+		windows++;
+		long delay = TimeUnit.NANOSECONDS
+				.toMillis(startNanos + windows * windowNanos - System.nanoTime());
+		timeout = TimerWheel.INSTANCE.schedule(delay, this::tumble);
+	}
+
+	/**
+	 * 
+	 */
+	private synchronized void tumble() {
+		if (destroyed) {
+			return;
+		}
+		post("", total);
+		total.reset();
+		for (Iterator<Map.Entry<String, Stats>> it = groups.entrySet().iterator(); it
+				.hasNext();) {
+			Map.Entry<String, Stats> group = it.next();
+			post("group(" + group.getKey() + ").", group.getValue());
+			if (group.getValue().count == 0) {
+				it.remove();
+			}
+			group.getValue().reset();
+		}
+		scheduleTumble();
+	}
+
+	/**
+	 * Posts the aggregates of the specified group, if changed.
+	 * 
+	 * @param prefix
+	 * @param stats
+	 */
+	private void post(String prefix, Stats stats) {
+		Bus.postIfChanged(new CountEvent(this, prefix + "count", stats.count));
+		Bus.postIfChanged(new AggregateEvent(this, prefix + "sum", stats.count == 0 ? 0 : stats.sum));
+		if (stats.count == 0) {
+			Bus.postIfChanged(new UnknownEvent(this, prefix + "avg"));
+			Bus.postIfChanged(new UnknownEvent(this, prefix + "min"));
+			Bus.postIfChanged(new UnknownEvent(this, prefix + "max"));
+		} else {
+			Bus.postIfChanged(new AggregateEvent(this, prefix + "avg", stats.sum / stats.count));
+			Bus.postIfChanged(new AggregateEvent(this, prefix + "min", stats.min));
+			Bus.postIfChanged(new AggregateEvent(this, prefix + "max", stats.max));
+		}
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if (destroyed) {
+			return;
+		}
+		destroyed = true;
+		listener.destroy();
+		if (timeout != null) {
+			timeout.cancel();
+		}
+		super.destroy();
+	}
+
+}
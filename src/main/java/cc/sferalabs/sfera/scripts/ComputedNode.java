@@ -0,0 +1,421 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import cc.sferalabs.sfera.events.Bus;
+import cc.sferalabs.sfera.events.DoubleEvent;
+import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.EventId;
+import cc.sferalabs.sfera.events.EventIdSpecListener;
+import cc.sferalabs.sfera.events.LongEvent;
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.events.Nodes;
+
+/**
+ * Node whose value is computed from the current values of the nodes matching
+ * an event ID specification, e.g. {@code house.power = sum(meters.*.power)}.
+ * <p>
+ * The inputs are maintained incrementally as their events are posted, while
+ * the value is recomputed only when some input changed, after a short delay
+ * coalescing the changes of the inputs, and it is posted as an event with the
+ * same ID of the node only when it changes. The inputs whose source node has
+ * been destroyed are discarded when the value is recomputed and, in any case,
+ * periodically.
+ * </p>
+ * <p>
+ * The inputs are initialized from the current events of the {@link Bus}, after
+ * registering for the live ones, ignoring the current events of the inputs
+ * already updated by a live event.
+ * </p>
+ */
+public class ComputedNode extends Node {
+
+	private static final Pattern DEFINITION = Pattern
+			.compile("\\s*([^=\\s]+)\\s*=\\s*(\\w+)\\s*\\((.+)\\)\\s*");
+	private static final long COALESCING_DELAY = 50;
+	private static final long PRUNING_INTERVAL = 10000;
+
+	/**
+	 * Functions computing the value of the node
+	 */
+	public enum Function {
+		SUM, AVG, MIN, MAX, COUNT
+	}
+
+	private final Function function;
+	private final InputsListener listener;
+	private final Map<String, Input> inputs = new HashMap<>();
+	private Set<String> updated = new HashSet<>();
+	private boolean dirty;
+	private boolean destroyed;
+	private TimerWheel.Timeout timeout;
+	private TimerWheel.Timeout pruning;
+
+	/**
+	 * Value of an input and source of its event
+	 */
+	private static class Input {
+
+		private final Object source;
+		private final double value;
+
+		/**
+		 * 
+		 * @param source
+		 * @param value
+		 */
+		private Input(Object source, double value) {
+			this.source = source;
+			this.value = value;
+		}
+
+		/**
+		 * @return whether the source of the input has been destroyed
+		 */
+		private boolean isOrphan() {
+			if (source instanceof Node) {
+				Node node = (Node) source;
+				return Nodes.get(node.getId()) != node;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Listener updating the inputs
+	 */
+	private class InputsListener extends EventIdSpecListener {
+
+		/**
+		 * 
+		 * @param spec
+		 */
+		private InputsListener(String spec) {
+			super(spec);
+		}
+
+		@Override
+		protected void handleEvent(Event event) {
+			if (event.getSource() != ComputedNode.this) {
+				setInput(event, false);
+			}
+		}
+
+		/**
+		 * Initializes the input of the specified current event, if matching.
+		 * 
+		 * @param event
+		 */
+		private void seed(Event event) {
+			if (event.getSource() != ComputedNode.this && matches(event)) {
+				setInput(event, true);
+			}
+		}
+	}
+
+	/**
+	 * Event with the value of a computed node
+	 */
+	private static class ComputedEvent implements Event {
+
+		private final ComputedNode source;
+		private final long timestamp;
+		private final Object value;
+
+		/**
+		 * 
+		 * @param source
+		 * @param value
+		 */
+		private ComputedEvent(ComputedNode source, Object value) {
+			this.timestamp = System.currentTimeMillis();
+			this.source = source;
+			this.value = value;
+		}
+
+		@Override
+		public String getId() {
+			return source.getId();
+		}
+
+		@Override
+		public EventId getEventId() {
+			return source.getEventId();
+		}
+
+		@Override
+		public String getSubId() {
+			String id = source.getId();
+			return id.substring(id.lastIndexOf('.') + 1);
+		}
+
+		@Override
+		public ComputedNode getSource() {
+			return source;
+		}
+
+		@Override
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		@Override
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public Object getSimpleValue() {
+			return value;
+		}
+
+		@Override
+		public boolean isLoacal() {
+			return false;
+		}
+	}
+
+	/**
+	 * Constructs a ComputedNode.
+	 * 
+	 * @param id
+	 *            the node ID, which is also the ID of its events
+	 * @param function
+	 *            the function computing the value
+	 * @param spec
+	 *            the specification of the IDs of the input nodes
+	 * @throws IllegalArgumentException
+	 *             if a node with the same ID already exists or the
+	 *             specification is not valid
+	 */
+	public ComputedNode(String id, Function function, String spec)
+			throws IllegalArgumentException {
+		super(id);
+		this.function = function;
+		try {
+			this.listener = new InputsListener(spec);
+		} catch (RuntimeException e) {
+			super.destroy();
+			throw e;
+		}
+		ScriptNodes.add(this);
+		for (Event e : Bus.getCurrentEvents()) {
+			listener.seed(e);
+		}
+		synchronized (this) {
+			updated = null;
+		}
+		schedulePruning();
+	}
+
+	/**
+	 * Creates a ComputedNode from the specified definition, in the form
+	 * {@code <id> = <function>(<spec>)}, where function is one of {@code sum},
+	 * {@code avg}, {@code min}, {@code max} and {@code count}.
+	 * 
+	 * @param definition
+	 *            the definition
+	 * @return the created node
+	 * @throws IllegalArgumentException
+	 *             if the definition is not valid or a node with the same ID
+	 *             already exists
+	 */
+	public static ComputedNode define(String definition) throws IllegalArgumentException {
+		Matcher m = DEFINITION.matcher(definition);
+		if (!m.matches()) {
+			throw new IllegalArgumentException("Invalid definition '" + definition + "'");
+		}
+		Function function;
+		try {
+			function = Function.valueOf(m.group(2).toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown function '" + m.group(2) + "'");
+		}
+		return new ComputedNode(m.group(1), function, m.group(3).trim());
+	}
+
+	/**
+	 * Updates the value of the input with the ID of the specified event.
+	 * 
+	 * @param event
+	 * @param current
+	 *            whether the event is a current event of the {@link Bus}
+	 *            rather than a live one
+	 */
+	private synchronized void setInput(Event event, boolean current) {
+		if (destroyed) {
+			return;
+		}
+		if (updated != null) {
+			if (current) {
+				if (updated.contains(event.getId())) {
+					return;
+				}
+			} else {
+				updated.add(event.getId());
+			}
+		}
+		Double value;
+		if (event instanceof DoubleEvent) {
+			value = ((DoubleEvent) event).getDoubleValue();
+		} else if (event instanceof LongEvent) {
+			value = (double) ((LongEvent) event).getLongValue();
+		} else if (event.getSimpleValue() instanceof Number) {
+			value = ((Number) event.getSimpleValue()).doubleValue();
+		} else {
+			value = null;
+		}
+		Input previous = value == null ? inputs.remove(event.getId())
+				: inputs.put(event.getId(), new Input(event.getSource(), value));
+		if (previous == null ? value == null : Double.valueOf(previous.value).equals(value)) {
+			return;
+		}
+		if (!dirty) {
+			dirty = true;
+			timeout = TimerWheel.INSTANCE.schedule(COALESCING_DELAY, this::update);
+		}
+	}
+
+	/**
+	 * Removes the inputs whose source node has been destroyed.
+	 * 
+	 * @return {@code true} if any input was removed
+	 */
+	private boolean removeOrphans() {
+		boolean removed = false;
+		Iterator<Input> it = inputs.values().iterator();
+		while (it.hasNext()) {
+			Input in = it.next();
+			if (in.isOrphan()) {
+				it.remove();
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Schedules the next periodic removal of the orphan inputs.
+	 */
+	private synchronized void schedulePruning() {
+		if (!destroyed) {
+			pruning = TimerWheel.INSTANCE.schedule(PRUNING_INTERVAL, this::prune);
+		}
+	}
+
+	/**
+	 * Removes the orphan inputs, posting the updated value if needed, and
+	 * schedules the next pruning.
+	 */
+	private void prune() {
+		synchronized (this) {
+			if (destroyed) {
+				return;
+			}
+			if (removeOrphans()) {
+				dirty = true;
+				update();
+			}
+		}
+		schedulePruning();
+	}
+
+	/**
+	 * Recomputes and posts the value, if any input changed.
+	 */
+	private synchronized void update() {
+		if (!dirty || destroyed) {
+			return;
+		}
+		dirty = false;
+		if (timeout != null) {
+			timeout.cancel();
+			timeout = null;
+		}
+		removeOrphans();
+		Bus.postIfChanged(new ComputedEvent(this, compute()));
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	private Object compute() {
+		switch (function) {
+		case COUNT:
+			return (long) inputs.size();
+		case SUM:
+			return sum();
+		case AVG:
+			return inputs.isEmpty() ? null : sum() / inputs.size();
+		default:
+			if (inputs.isEmpty()) {
+				return null;
+			}
+			double result = function == Function.MIN ? Double.POSITIVE_INFINITY
+					: Double.NEGATIVE_INFINITY;
+			for (Input in : inputs.values()) {
+				result = function == Function.MIN ? Math.min(result, in.value)
+						: Math.max(result, in.value);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * 
+	 * @return the sum of the inputs
+	 */
+	private double sum() {
+		double sum = 0;
+		for (Input in : inputs.values()) {
+			sum += in.value;
+		}
+		return sum;
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if (destroyed) {
+			return;
+		}
+		destroyed = true;
+		listener.destroy();
+		if (timeout != null) {
+			timeout.cancel();
+		}
+		if (pruning != null) {
+			pruning.cancel();
+		}
+		super.destroy();
+	}
+
+}
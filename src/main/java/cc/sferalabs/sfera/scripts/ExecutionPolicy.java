@@ -0,0 +1,141 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Policy defining how the executions of a rule's action triggered while
+ * previous executions are still running are handled.
+ */
+public class ExecutionPolicy {
+
+	private static final Pattern MAX = Pattern.compile("max\\s*\\(\\s*(\\d+)\\s*\\)");
+
+	/**
+	 * Policy types
+	 */
+	public enum Type {
+		/**
+		 * Executions run concurrently without limits
+		 */
+		CONCURRENT,
+		/**
+		 * Executions are queued and run one at a time, in order
+		 */
+		SERIAL,
+		/**
+		 * Executions triggered while another one is running are discarded
+		 */
+		DROP,
+		/**
+		 * Executions run one at a time; while one is running only the last
+		 * triggered execution is kept, the others are discarded
+		 */
+		LATEST,
+		/**
+		 * Executions are queued and run with a maximum concurrency
+		 */
+		MAX
+	}
+
+	/**
+	 * Default policy, running all the executions concurrently
+	 */
+	public static final ExecutionPolicy CONCURRENT = new ExecutionPolicy(Type.CONCURRENT,
+			Integer.MAX_VALUE);
+
+	private final Type type;
+	private final int maxConcurrency;
+
+	/**
+	 * 
+	 * @param type
+	 * @param maxConcurrency
+	 */
+	private ExecutionPolicy(Type type, int maxConcurrency) {
+		this.type = type;
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	/**
+	 * Returns the policy corresponding to the specified textual
+	 * representation: {@code concurrent}, {@code serial}, {@code drop},
+	 * {@code latest} or {@code max(<n>)}.
+	 * 
+	 * @param policy
+	 *            the textual representation of the policy
+	 * @return the corresponding policy
+	 * @throws IllegalArgumentException
+	 *             if {@code policy} is not a valid policy
+	 */
+	public static ExecutionPolicy of(String policy) throws IllegalArgumentException {
+		String p = policy.trim().toLowerCase();
+		switch (p) {
+		case "concurrent":
+			return CONCURRENT;
+		case "serial":
+			return new ExecutionPolicy(Type.SERIAL, 1);
+		case "drop":
+			return new ExecutionPolicy(Type.DROP, 1);
+		case "latest":
+			return new ExecutionPolicy(Type.LATEST, 1);
+		default:
+			Matcher m = MAX.matcher(p);
+			if (m.matches()) {
+				try {
+					int max = Integer.parseInt(m.group(1));
+					if (max > 0) {
+						return new ExecutionPolicy(Type.MAX, max);
+					}
+				} catch (NumberFormatException e) {
+				}
+			}
+			throw new IllegalArgumentException("Invalid execution policy: '" + policy + "'");
+		}
+	}
+
+	/**
+	 * @return the type of this policy
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the max number of concurrent executions
+	 */
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	@Override
+	public String toString() {
+		if (type == Type.MAX) {
+			return "max(" + maxConcurrency + ")";
+		}
+		return type.name().toLowerCase();
+	}
+
+}
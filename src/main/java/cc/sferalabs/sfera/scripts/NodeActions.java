@@ -0,0 +1,364 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.script.ScriptException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import cc.sferalabs.sfera.core.Configuration;
+import cc.sferalabs.sfera.core.SystemNode;
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.events.Nodes;
+import cc.sferalabs.sfera.scripts.engine.CompiledExpression;
+import cc.sferalabs.sfera.scripts.parser.Parser;
+import cc.sferalabs.sfera.scripts.parser.ScriptErrorListener;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TerminalNodeContext;
+
+/**
+ * Utility class for the execution of node actions. Validated and compiled
+ * actions are kept in a LRU cache, whose size is set by the
+ * {@code scripts_commands_cache_size} configuration parameter. The literal
+ * parameters of the actions (numbers, booleans and strings without escape
+ * sequences) are replaced by variables, so that actions differing only by
+ * their parameters values share the same cache entry; literals whose value
+ * could differ from the one passed by the script engine are left in place.
+ * Simple method calls with literal parameters, e.g. {@code lamp.set(true)},
+ * are invoked directly on the node, without going through the script engine.
+ */
+abstract class NodeActions {
+
+	private static final String PARAM_PREFIX = "$p";
+	private static final Pattern METHOD_CALL = Pattern.compile(
+			"\\s*\\.\\s*(\\w+)\\s*\\(\\s*(\\$p\\d+\\s*(,\\s*\\$p\\d+\\s*)*)?\\)\\s*");
+	private static final int DEFAULT_CACHE_SIZE = 256;
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeActions.class);
+
+	private static Cache<String, NodeAction> cache;
+
+	/**
+	 * Validated and compiled node action
+	 */
+	private static class NodeAction {
+
+		private final String nodeId;
+		private final String method;
+		private final CompiledExpression expression;
+
+		/**
+		 * 
+		 * @param nodeId
+		 * @param method
+		 *            the method to invoke directly, or {@code null}
+		 * @param expression
+		 */
+		private NodeAction(String nodeId, String method, CompiledExpression expression) {
+			this.nodeId = nodeId;
+			this.method = method;
+			this.expression = expression;
+		}
+	}
+
+	/**
+	 * Node action with its literal parameters replaced by variables
+	 */
+	static class Template {
+
+		final String text;
+		final List<Object> params;
+
+		/**
+		 * 
+		 * @param text
+		 * @param params
+		 */
+		private Template(String text, List<Object> params) {
+			this.text = text;
+			this.params = params;
+		}
+	}
+
+	/**
+	 * Executes the specified node action.
+	 * 
+	 * @param nodeAction
+	 *            the action
+	 * @param bindings
+	 *            the binding to add to the local scope
+	 * @return the value returned by the script
+	 * @throws ScriptException
+	 *             if an error occurs executing the action script
+	 * @throws IllegalArgumentException
+	 *             if {@code nodeAction} have syntax errors
+	 */
+	static Object eval(String nodeAction, Map<String, Object> bindings)
+			throws ScriptException, IllegalArgumentException {
+		Template template = toTemplate(nodeAction);
+		Cache<String, NodeAction> cache = getCache();
+		NodeAction action = cache.getIfPresent(template.text);
+		if (action == null) {
+			action = compile(nodeAction, template.text);
+			cache.put(template.text, action);
+		}
+		Node node = Nodes.get(action.nodeId);
+		if (node == null) {
+			throw new IllegalArgumentException("Node '" + action.nodeId + "' not found");
+		}
+		if (action.method != null) {
+			Object ret = NodeMethods.invoke(node, action.method, template.params);
+			if (ret != NodeMethods.NOT_INVOKED) {
+				return ret;
+			}
+		}
+		Map<String, Object> b = bindings;
+		if (!template.params.isEmpty()) {
+			b = bindings == null ? new HashMap<>() : new HashMap<>(bindings);
+			for (int i = 0; i < template.params.size(); i++) {
+				b.put(PARAM_PREFIX + i, template.params.get(i));
+			}
+		}
+		return action.expression.eval(b);
+	}
+
+	/**
+	 * Removes all the cached actions.
+	 */
+	static synchronized void clear() {
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	private static synchronized Cache<String, NodeAction> getCache() {
+		if (cache == null) {
+			Configuration config = SystemNode.getConfiguration();
+			int size = config == null ? DEFAULT_CACHE_SIZE
+					: config.get("scripts_commands_cache_size", DEFAULT_CACHE_SIZE);
+			cache = CacheBuilder.newBuilder().maximumSize(size).build();
+		}
+		return cache;
+	}
+
+	/**
+	 * Validates the specified node action and compiles its template.
+	 * 
+	 * @param nodeAction
+	 * @param template
+	 * @return
+	 * @throws ScriptException
+	 * @throws IllegalArgumentException
+	 */
+	private static NodeAction compile(String nodeAction, String template)
+			throws ScriptException, IllegalArgumentException {
+		logger.debug("Compiling node action '{}'", template);
+		ScriptErrorListener errorListener = new ScriptErrorListener();
+		SferaScriptGrammarParser parser = Parser.getParser(nodeAction, errorListener);
+		TerminalNodeContext commandContext = parser.terminalNode();
+		List<Object> errors = errorListener.getErrors();
+		if (!errors.isEmpty()) {
+			throw new IllegalArgumentException("Invalid node action syntax: " + errors.get(0));
+		}
+		String nodeId = commandContext.NodeId().getText();
+		if (!template.endsWith(")")) {
+			template += "()";
+		}
+		String method = null;
+		if (commandContext.subNode().size() == 1) {
+			Matcher m = METHOD_CALL.matcher(template);
+			if (m.region(template.indexOf(nodeId) + nodeId.length(), template.length()).matches()) {
+				method = m.group(1);
+			}
+		}
+		return new NodeAction(nodeId, method,
+				ScriptsEngine.getProvider().compileExpression(template));
+	}
+
+	/**
+	 * Replaces the literal parameters of the specified node action with
+	 * variables.
+	 * 
+	 * @param nodeAction
+	 * @return
+	 */
+	static Template toTemplate(String nodeAction) {
+		if (nodeAction.contains(PARAM_PREFIX)) {
+			return new Template(nodeAction, Collections.emptyList());
+		}
+		StringBuilder text = new StringBuilder(nodeAction.length());
+		List<Object> params = null;
+		int length = nodeAction.length();
+		int depth = 0;
+		for (int i = 0; i < length; i++) {
+			char c = nodeAction.charAt(i);
+			if (depth > 0 && isParameterStart(text)) {
+				int end = i;
+				Object param = null;
+				if (c == '"' || c == '\'') {
+					end = nodeAction.indexOf(c, i + 1);
+					if (end < 0 || nodeAction.substring(i, end).indexOf('\\') >= 0) {
+						return new Template(nodeAction, Collections.emptyList());
+					}
+					param = nodeAction.substring(i + 1, end);
+					end++;
+				} else if (isDigit(c) || ((c == '-' || c == '+') && i + 1 < length
+						&& isDigit(nodeAction.charAt(i + 1)))) {
+					end = skipDigits(nodeAction, i + 1);
+					boolean decimal = end + 1 < length && nodeAction.charAt(end) == '.'
+							&& isDigit(nodeAction.charAt(end + 1));
+					if (decimal) {
+						end = skipDigits(nodeAction, end + 1);
+					}
+					if (end < length && (isIdentifierPart(nodeAction.charAt(end))
+							|| nodeAction.charAt(end) == '.')) {
+						return new Template(nodeAction, Collections.emptyList());
+					}
+					param = toNumber(nodeAction.substring(i, end), decimal);
+				} else if (nodeAction.startsWith("true", i) || nodeAction.startsWith("false", i)) {
+					end = i + (c == 't' ? 4 : 5);
+					if (end >= length || !isIdentifierPart(nodeAction.charAt(end))) {
+						param = c == 't';
+					}
+				}
+				if (param != null) {
+					if (params == null) {
+						params = new ArrayList<>();
+					}
+					text.append(PARAM_PREFIX).append(params.size());
+					params.add(param);
+					i = end - 1;
+					continue;
+				}
+			}
+			if (c == '(' || c == '[') {
+				depth++;
+			} else if (c == ')' || c == ']') {
+				depth--;
+			}
+			text.append(c);
+		}
+
+		if (params == null) {
+			return new Template(nodeAction, Collections.emptyList());
+		}
+		return new Template(text.toString(), params);
+	}
+
+	/**
+	 * 
+	 * @param text
+	 * @return whether the last non-whitespace character of {@code text}
+	 *         starts a parameter
+	 */
+	private static boolean isParameterStart(StringBuilder text) {
+		for (int i = text.length() - 1; i >= 0; i--) {
+			char c = text.charAt(i);
+			if (!Character.isWhitespace(c)) {
+				return c == '(' || c == ',' || c == '[';
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 
+	 * @param s
+	 * @param from
+	 * @return
+	 */
+	private static int skipDigits(String s, int from) {
+		int i = from;
+		while (i < s.length() && isDigit(s.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * 
+	 * @param c
+	 * @return
+	 */
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * 
+	 * @param c
+	 * @return
+	 */
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+	}
+
+	/**
+	 * Converts the specified number literal to the value passed by the script
+	 * engine to Java methods: an {@code Integer} for integer literals in the
+	 * {@code int} range, a {@code Double} otherwise. The sign is applied to
+	 * the parsed literal, as the unary operator it is for the engine.
+	 * 
+	 * @param literal
+	 * @param decimal
+	 * @return the value, or {@code null} if the literal has to be evaluated
+	 *         by the engine: octal literals, and integral decimal literals,
+	 *         passed as integers or doubles depending on the engine version
+	 */
+	private static Object toNumber(String literal, boolean decimal) {
+		int start = literal.charAt(0) == '-' || literal.charAt(0) == '+' ? 1 : 0;
+		if (literal.charAt(start) == '0' && start + 1 < literal.length()
+				&& isDigit(literal.charAt(start + 1))) {
+			return null;
+		}
+		double value = Double.parseDouble(literal);
+		if (decimal) {
+			return value == Math.rint(value) ? null : value;
+		}
+		if (Math.abs(value) > Integer.MAX_VALUE || (value == 0 && start == 1
+				&& literal.charAt(0) == '-')) {
+			return value;
+		}
+		return (int) value;
+	}
+
+}
@@ -0,0 +1,209 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.script.ScriptException;
+
+import cc.sferalabs.sfera.events.Node;
+
+/**
+ * Utility class for the direct invocation of node methods, bypassing the
+ * script engine. Methods are resolved by name and arguments types, and the
+ * resulting {@link MethodHandle}s are cached per node class.
+ */
+abstract class NodeMethods {
+
+	/**
+	 * Value returned by {@link #invoke(Node, String, List)} when no single
+	 * method matching the arguments can be invoked directly
+	 */
+	static final Object NOT_INVOKED = new Object();
+
+	private static final ClassValue<Map<String, Optional<MethodHandle>>> HANDLES = new ClassValue<Map<String, Optional<MethodHandle>>>() {
+
+		@Override
+		protected Map<String, Optional<MethodHandle>> computeValue(Class<?> nodeClass) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	/**
+	 * Invokes the specified method on the specified node. The method is
+	 * invoked only if the node class has exactly one public method with the
+	 * specified name and accepting the specified arguments without narrowing
+	 * conversions.
+	 * 
+	 * @param node
+	 *            the node
+	 * @param method
+	 *            the method name
+	 * @param args
+	 *            the arguments
+	 * @return the value returned by the method or {@link #NOT_INVOKED} if the
+	 *         method cannot be invoked directly
+	 * @throws ScriptException
+	 *             if the invoked method throws a checked exception
+	 */
+	static Object invoke(Node node, String method, List<Object> args) throws ScriptException {
+		Class<?> nodeClass = node.getClass();
+		StringBuilder key = new StringBuilder(method);
+		for (Object arg : args) {
+			key.append(',').append(arg.getClass().getName());
+		}
+		Optional<MethodHandle> handle = HANDLES.get(nodeClass).computeIfAbsent(key.toString(),
+				k -> Optional.ofNullable(findHandle(nodeClass, method, args)));
+		if (!handle.isPresent()) {
+			return NOT_INVOKED;
+		}
+		List<Object> arguments = new ArrayList<>(args.size() + 1);
+		arguments.add(node);
+		arguments.addAll(args);
+		try {
+			return handle.get().invokeWithArguments(arguments);
+		} catch (Error | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ScriptException(e);
+		} catch (Throwable t) {
+			throw new ScriptException(new Exception(t));
+		}
+	}
+
+	/**
+	 * 
+	 * @param nodeClass
+	 * @param name
+	 * @param args
+	 * @return
+	 */
+	private static MethodHandle findHandle(Class<?> nodeClass, String name, List<Object> args) {
+		Method found = null;
+		for (Method m : nodeClass.getMethods()) {
+			if (m.getName().equals(name) && isApplicable(m, args)) {
+				if (found != null) {
+					// overloaded: let the script engine choose
+					return null;
+				}
+				found = m;
+			}
+		}
+		if (found == null || Modifier.isStatic(found.getModifiers())) {
+			return null;
+		}
+		Method accessible = getAccessibleMethod(nodeClass, found);
+		if (accessible == null) {
+			return null;
+		}
+		try {
+			return MethodHandles.publicLookup().unreflect(accessible);
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 
+	 * @param m
+	 * @param args
+	 * @return
+	 */
+	private static boolean isApplicable(Method m, List<Object> args) {
+		if (m.isVarArgs() || m.getParameterCount() != args.size()) {
+			return false;
+		}
+		Class<?>[] types = m.getParameterTypes();
+		for (int i = 0; i < types.length; i++) {
+			if (!isApplicable(types[i], args.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 
+	 * @param type
+	 * @param arg
+	 * @return
+	 */
+	private static boolean isApplicable(Class<?> type, Object arg) {
+		if (!type.isPrimitive()) {
+			return type.isInstance(arg);
+		}
+		if (arg instanceof Integer) {
+			return type == int.class || type == long.class || type == float.class
+					|| type == double.class;
+		}
+		if (arg instanceof Double) {
+			return type == double.class;
+		}
+		if (arg instanceof Boolean) {
+			return type == boolean.class;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the specified method, or the method it overrides, declared in a
+	 * public class or interface.
+	 * 
+	 * @param nodeClass
+	 * @param m
+	 * @return
+	 */
+	private static Method getAccessibleMethod(Class<?> nodeClass, Method m) {
+		if (Modifier.isPublic(m.getDeclaringClass().getModifiers())) {
+			return m;
+		}
+		for (Class<?> c = nodeClass; c != null; c = c.getSuperclass()) {
+			List<Class<?>> types = new ArrayList<>();
+			types.add(c);
+			for (Class<?> i : c.getInterfaces()) {
+				types.add(i);
+			}
+			for (Class<?> t : types) {
+				if (Modifier.isPublic(t.getModifiers())) {
+					try {
+						return t.getMethod(m.getName(), m.getParameterTypes());
+					} catch (NoSuchMethodException e) {
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+}
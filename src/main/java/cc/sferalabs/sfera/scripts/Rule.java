@@ -24,18 +24,17 @@ package cc.sferalabs.sfera.scripts;
 
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.script.Bindings;
-import javax.script.Compilable;
-import javax.script.CompiledScript;
-import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import cc.sferalabs.sfera.core.services.TasksManager;
 import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.scripts.engine.CompiledAction;
+import cc.sferalabs.sfera.scripts.engine.FileScope;
+import cc.sferalabs.sfera.scripts.parser.ConditionTerm;
 import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TriggerContext;
 
 /**
@@ -51,11 +50,15 @@ public class Rule {
 	private static final Logger logger = LoggerFactory.getLogger(Rule.class);
 
 	final TriggerCondition condition;
-	final CompiledScript action;
+	final CompiledAction action;
 	final Path scriptFile;
+	final String source;
 	final int startLine;
-	final Bindings fileScope;
-	final List<Bindings> imports;
+	final RuleStats stats = new RuleStats();
+	private final ExecutionPolicy policy;
+	private final ActionDispatcher dispatcher;
+	private final AtomicInteger violations = new AtomicInteger();
+	private volatile boolean disabled = false;
 
 	/**
 	 * Constructs a Rule.
@@ -66,23 +69,69 @@ public class Rule {
 	 *            the action
 	 * @param scriptFile
 	 *            path of the script file
-	 * @param engine
-	 *            the script engine
-	 * @param fileScope
-	 *            the file-scope bindings
-	 * @param imports
-	 *            the imported bindings
+	 * @param scope
+	 *            the scope of the script file
 	 * @throws ScriptException
 	 *             if compilation of the action fails
 	 */
-	public Rule(TriggerContext condition, String action, Path scriptFile, ScriptEngine engine,
-			Bindings fileScope, List<Bindings> imports) throws ScriptException {
-		this.condition = new TriggerCondition(condition);
-		this.action = ((Compilable) engine).compile(action);
+	public Rule(TriggerContext condition, String action, Path scriptFile, FileScope scope)
+			throws ScriptException {
+		this(ConditionTerm.of(condition), action, scriptFile, scope);
+	}
+
+	/**
+	 * Constructs a Rule.
+	 * 
+	 * @param condition
+	 *            the trigger condition term
+	 * @param action
+	 *            the action
+	 * @param scriptFile
+	 *            path of the script file
+	 * @param scope
+	 *            the scope of the script file
+	 * @throws ScriptException
+	 *             if compilation of the action fails
+	 */
+	public Rule(ConditionTerm condition, String action, Path scriptFile, FileScope scope)
+			throws ScriptException {
+		this(condition, action, scriptFile, scope, ExecutionPolicy.CONCURRENT);
+	}
+
+	/**
+	 * Constructs a Rule.
+	 * 
+	 * @param condition
+	 *            the trigger condition term
+	 * @param action
+	 *            the action
+	 * @param scriptFile
+	 *            path of the script file
+	 * @param scope
+	 *            the scope of the script file
+	 * @param policy
+	 *            the execution policy of the action
+	 * @throws ScriptException
+	 *             if compilation of the condition or of the action fails
+	 */
+	public Rule(ConditionTerm condition, String action, Path scriptFile, FileScope scope,
+			ExecutionPolicy policy) throws ScriptException {
+		try {
+			this.condition = new TriggerCondition(condition);
+		} catch (IllegalArgumentException e) {
+			throw new ScriptException(e.getMessage());
+		}
+		for (TemporalOperator op : this.condition.getOperators()) {
+			if (op instanceof TemporalOperator.For) {
+				((TemporalOperator.For) op).setRule(this);
+			}
+		}
+		this.action = scope.compile(action);
 		this.scriptFile = scriptFile;
-		this.startLine = condition.getStart().getLine();
-		this.fileScope = fileScope;
-		this.imports = imports;
+		this.source = scriptFile.toUri().toString();
+		this.startLine = condition.getLine();
+		this.policy = policy;
+		this.dispatcher = new ActionDispatcher(this, policy);
 	}
 
 	/**
@@ -100,13 +149,85 @@ public class Rule {
 	}
 
 	/**
-	 * Executes this rule's action using the specified event as trigger.
+	 * @return the execution policy of this rule
+	 */
+	public ExecutionPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return the execution statistics of this rule
+	 */
+	public RuleStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Executes this rule's action using the specified event as trigger,
+	 * according to this rule's execution policy.
 	 * 
 	 * @param event
 	 *            the trigger event
 	 */
 	public void executeAction(Event event) {
-		TasksManager.execute(new ActionTask(event, this));
+		if (disabled) {
+			return;
+		}
+		dispatcher.dispatch(event);
+	}
+
+	/**
+	 * @return whether this rule has been disabled for repeatedly exceeding
+	 *         the execution limits of its action
+	 */
+	public boolean isDisabled() {
+		return disabled;
+	}
+
+	/**
+	 * Re-enables this rule, resetting its count of violations of the
+	 * execution limits.
+	 */
+	public void enable() {
+		violations.set(0);
+		disabled = false;
+		logger.info("Rule enabled. File '{}' line {}", scriptFile, startLine);
+	}
+
+	/**
+	 * Records a violation of the execution limits by this rule's action,
+	 * disabling this rule if the specified max number of violations is
+	 * reached.
+	 * 
+	 * @param maxViolations
+	 *            the max number of violations, or 0 for no limit
+	 */
+	void addViolation(int maxViolations) {
+		if (maxViolations > 0 && violations.incrementAndGet() >= maxViolations && !disabled) {
+			disabled = true;
+			logger.error("Rule disabled after {} violations of the execution limits. File '{}' line {}",
+					maxViolations, scriptFile, startLine);
+		}
+	}
+
+	/**
+	 * @return the temporal operators of this rule's condition
+	 */
+	List<TemporalOperator> getTemporalOperators() {
+		return condition.getOperators();
+	}
+
+	/**
+	 * Evaluates this rule's condition using the specified event as trigger
+	 * and, if satisfied, executes the action.
+	 * 
+	 * @param event
+	 *            the trigger event
+	 */
+	void trigger(Event event) {
+		if (evalCondition(event)) {
+			executeAction(event);
+		}
 	}
 
 	/**
@@ -117,11 +238,13 @@ public class Rule {
 	 * @return the result of the evaluation
 	 */
 	public boolean evalCondition(Event event) {
+		boolean matched = false;
 		try {
-			return condition.eval(event);
+			matched = condition.eval(event);
 		} catch (Exception e) {
 			logger.error("Error evaluating trigger condition. File: " + scriptFile, e);
-			return false;
 		}
+		stats.addEvaluation(matched);
+		return matched;
 	}
 }
@@ -0,0 +1,214 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects execution statistics of a script rule. Execution times are
+ * recorded in a histogram with power-of-two buckets, so percentiles are
+ * approximated by the upper bound of the bucket they fall in.
+ */
+public class RuleStats {
+
+	private static final int BUCKETS = 32;
+
+	private final LongAdder evaluations = new LongAdder();
+	private final LongAdder matches = new LongAdder();
+	private final LongAdder executions = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder violations = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Records an evaluation of the rule's trigger condition.
+	 * 
+	 * @param matched
+	 *            the result of the evaluation
+	 */
+	void addEvaluation(boolean matched) {
+		evaluations.increment();
+		if (matched) {
+			matches.increment();
+		}
+	}
+
+	/**
+	 * Records an execution of the rule's action.
+	 * 
+	 * @param nanos
+	 *            the execution time, in nanoseconds
+	 * @param error
+	 *            whether the execution terminated with an error
+	 */
+	void addExecution(long nanos, boolean error) {
+		executions.increment();
+		if (error) {
+			errors.increment();
+		}
+		this.nanos.add(nanos);
+		maxNanos.accumulate(nanos);
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		histogram.incrementAndGet(bucket);
+	}
+
+	/**
+	 * Records an execution of the rule's action discarded by the rule's
+	 * execution policy.
+	 */
+	void addDropped() {
+		dropped.increment();
+	}
+
+	/**
+	 * Records an execution of the rule's action exceeding the time or CPU
+	 * limits.
+	 */
+	void addViolation() {
+		violations.increment();
+	}
+
+	/**
+	 * Resets all the statistics.
+	 */
+	public void reset() {
+		evaluations.reset();
+		matches.reset();
+		executions.reset();
+		errors.reset();
+		dropped.reset();
+		violations.reset();
+		nanos.reset();
+		maxNanos.reset();
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram.set(i, 0);
+		}
+	}
+
+	/**
+	 * @return the number of evaluations of the trigger condition
+	 */
+	public long getEvaluations() {
+		return evaluations.sum();
+	}
+
+	/**
+	 * @return the number of evaluations of the trigger condition resulting in
+	 *         {@code true}
+	 */
+	public long getMatches() {
+		return matches.sum();
+	}
+
+	/**
+	 * @return the number of executions of the action
+	 */
+	public long getExecutions() {
+		return executions.sum();
+	}
+
+	/**
+	 * @return the number of executions of the action terminated with an error
+	 */
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	/**
+	 * @return the number of executions of the action discarded by the
+	 *         execution policy of the rule
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return the number of executions of the action exceeding the time or
+	 *         CPU limits
+	 */
+	public long getViolations() {
+		return violations.sum();
+	}
+
+	/**
+	 * @return the total execution time of the action, in milliseconds
+	 */
+	public double getTotalMillis() {
+		return nanos.sum() / 1e6;
+	}
+
+	/**
+	 * @return the maximum execution time of the action, in milliseconds
+	 */
+	public double getMaxMillis() {
+		return maxNanos.get() / 1e6;
+	}
+
+	/**
+	 * Returns an approximation of the specified percentile of the execution
+	 * times of the action.
+	 * 
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return the execution time in milliseconds below which the specified
+	 *         percentage of the executions fall, or 0 if the action has not
+	 *         been executed yet
+	 */
+	public double getPercentileMillis(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = histogram.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts[i];
+			if (count >= rank) {
+				return Math.min((1L << i) / 1e3, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"evaluations: %d, matches: %d, executions: %d, errors: %d, dropped: %d, violations: %d, total: %.1f ms, p50: %.3f ms, p99: %.3f ms, max: %.3f ms",
+				getEvaluations(), getMatches(), getExecutions(), getErrors(), getDropped(), getViolations(),
+				getTotalMillis(),
+				getPercentileMillis(50), getPercentileMillis(99), getMaxMillis());
+	}
+
+}
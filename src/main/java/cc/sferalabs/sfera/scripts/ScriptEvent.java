@@ -26,6 +26,7 @@
 package cc.sferalabs.sfera.scripts;
 
 import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.EventId;
 
 /**
  * Class for events generated by script nodes.
@@ -38,7 +39,7 @@ import cc.sferalabs.sfera.events.Event;
 public class ScriptEvent implements Event {
 
 	private final Object source;
-	private final String id;
+	private final EventId id;
 	private final String subId;
 	private final long timestamp;
 	private final Object value;
@@ -58,13 +59,18 @@ public class ScriptEvent implements Event {
 	ScriptEvent(Object source, String sourceId, String id, Object value) {
 		this.timestamp = System.currentTimeMillis();
 		this.source = source;
-		this.id = sourceId + "." + id;
+		this.id = EventId.of(sourceId).getChild(id);
 		this.subId = id;
 		this.value = value;
 	}
 
 	@Override
 	public String getId() {
+		return id.toString();
+	}
+
+	@Override
+	public EventId getEventId() {
 		return id;
 	}
 
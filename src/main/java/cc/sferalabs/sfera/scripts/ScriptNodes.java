@@ -26,9 +26,12 @@
 package cc.sferalabs.sfera.scripts;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import cc.sferalabs.sfera.events.Bus;
+import cc.sferalabs.sfera.events.Node;
 
 /**
  * 
@@ -39,7 +42,34 @@ import cc.sferalabs.sfera.events.Bus;
  */
 public abstract class ScriptNodes {
 
-	private static List<ScriptNodeWrapper> nodes = new ArrayList<>();
+	private static final Map<String, List<Node>> nodes = new HashMap<>();
+	private static final ThreadLocal<String> currentSource = new ThreadLocal<>();
+
+	/**
+	 * Sets the source file being evaluated by the current thread, or whose
+	 * rule action is being executed by it. Nodes added by the current thread
+	 * will be associated with the specified source, so that they can be
+	 * destroyed with {@link #clear(String)} when the source is reloaded.
+	 * Nodes added with no source set are only destroyed by {@link #clear()}.
+	 * 
+	 * @param source
+	 *            the source file key, or {@code null} to unset it
+	 */
+	static void setSource(String source) {
+		if (source == null) {
+			currentSource.remove();
+		} else {
+			currentSource.set(source);
+		}
+	}
+
+	/**
+	 * @return the source file set for the current thread, or {@code null} if
+	 *         none is set
+	 */
+	static String getSource() {
+		return currentSource.get();
+	}
 
 	/**
 	 * Adds the specified script node to the collection of available nodes,
@@ -56,19 +86,55 @@ public abstract class ScriptNodes {
 	public synchronized static void put(String id, Object node) {
 		ScriptNodeWrapper wrap = new ScriptNodeWrapper(id, node);
 		ScriptsEngine.putObjectInGlobalScope(id, node);
-		nodes.add(wrap);
+		add(wrap);
+	}
+
+	/**
+	 * Adds the specified node, created by a script, to the collection of
+	 * available nodes, so that it is destroyed when its source file is
+	 * reloaded.
+	 * 
+	 * @param node
+	 *            the node to be added
+	 */
+	synchronized static void add(Node node) {
+		String source = currentSource.get();
+		List<Node> sourceNodes = nodes.get(source);
+		if (sourceNodes == null) {
+			sourceNodes = new ArrayList<>();
+			nodes.put(source, sourceNodes);
+		}
+		sourceNodes.add(node);
 	}
 
 	/**
 	 * Destroys all the added nodes and clears the list.
 	 */
 	public synchronized static void clear() {
-		for (ScriptNodeWrapper wrap : nodes) {
-			wrap.destroy();
+		for (List<Node> sourceNodes : nodes.values()) {
+			for (Node node : sourceNodes) {
+				node.destroy();
+			}
 		}
 		nodes.clear();
 	}
 
+	/**
+	 * Destroys the nodes added while evaluating the specified source file and
+	 * removes them from the list.
+	 * 
+	 * @param source
+	 *            the source file key
+	 */
+	synchronized static void clear(String source) {
+		List<Node> sourceNodes = nodes.remove(source);
+		if (sourceNodes != null) {
+			for (Node node : sourceNodes) {
+				node.destroy();
+			}
+		}
+	}
+
 	/**
 	 * Posts a {@link ScriptEvent} to the Bus.
 	 * <p>
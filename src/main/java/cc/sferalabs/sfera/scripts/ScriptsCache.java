@@ -0,0 +1,183 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cc.sferalabs.sfera.core.Configuration;
+import cc.sferalabs.sfera.core.SystemNode;
+import cc.sferalabs.sfera.scripts.parser.ParsedScript;
+
+/**
+ * On-disk cache of the parsed script files, keyed by the digest of their
+ * content together with the Sfera version and the format version of the
+ * cached data, and of the classes generated by the Nashorn engine, using its
+ * persistent code cache. The cache is enabled by the {@code scripts_cache}
+ * configuration parameter.
+ */
+abstract class ScriptsCache {
+
+	private static final Path PARSED_SCRIPTS_DIR = Paths.get("data/scripts/cache/parsed/");
+	private static final String CODE_CACHE_DIR = "data/scripts/cache/code/";
+	private static final String NASHORN_CODE_CACHE_PROPERTY = "nashorn.persistent.code.cache";
+	private static final String[] NASHORN_CODE_CACHE_OPTIONS = { "--persistent-code-cache" };
+	/**
+	 * Version of the format of the cached parsed scripts, to be incremented on
+	 * any change to {@link ParsedScript} or to how it is built
+	 */
+	private static final int FORMAT_VERSION = 1;
+	private static final String FILE_NAME_PREFIX = FORMAT_VERSION + "-"
+			+ (SystemNode.getVersion() == null ? "dev" : SystemNode.getVersion()) + "-";
+
+	private static final Logger logger = LoggerFactory.getLogger(ScriptsCache.class);
+
+	/**
+	 * @return whether the cache is enabled
+	 */
+	static boolean isEnabled() {
+		// the runtime engine is created while the system node is being
+		// initialized
+		Configuration config = SystemNode.getInstance() == null ? null
+				: SystemNode.getConfiguration();
+		return config == null || config.get("scripts_cache", true);
+	}
+
+	/**
+	 * Returns the options to pass to the Nashorn engine to enable the
+	 * persistent code cache, setting its directory if not already set by the
+	 * {@code nashorn.persistent.code.cache} system property.
+	 * 
+	 * @return the Nashorn options
+	 */
+	static String[] getNashornOptions() {
+		if (System.getProperty(NASHORN_CODE_CACHE_PROPERTY) == null) {
+			System.setProperty(NASHORN_CODE_CACHE_PROPERTY, CODE_CACHE_DIR);
+		}
+		return NASHORN_CODE_CACHE_OPTIONS.clone();
+	}
+
+	/**
+	 * Returns the cached parsed script with the specified content digest.
+	 * 
+	 * @param digest
+	 *            the digest of the script file content
+	 * @return the cached parsed script, or {@code null} if not found or
+	 *         unreadable
+	 */
+	static ParsedScript get(byte[] digest) {
+		Path file = PARSED_SCRIPTS_DIR.resolve(toFileName(digest));
+		try (InputStream in = Files.newInputStream(file);
+				ObjectInputStream ois = new ObjectInputStream(in)) {
+			return (ParsedScript) ois.readObject();
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (Exception e) {
+			logger.debug("Error reading cached script " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Caches the specified parsed script.
+	 * 
+	 * @param digest
+	 *            the digest of the script file content
+	 * @param script
+	 *            the parsed script
+	 */
+	static void put(byte[] digest, ParsedScript script) {
+		String name = toFileName(digest);
+		Path file = PARSED_SCRIPTS_DIR.resolve(name);
+		Path tmp = PARSED_SCRIPTS_DIR.resolve(name + "." + Thread.currentThread().getId());
+		try {
+			Files.createDirectories(PARSED_SCRIPTS_DIR);
+			try (OutputStream out = Files.newOutputStream(tmp);
+					ObjectOutputStream oos = new ObjectOutputStream(out)) {
+				oos.writeObject(script);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			logger.warn("Error caching parsed script", e);
+			try {
+				Files.deleteIfExists(tmp);
+			} catch (IOException ioe) {
+			}
+		}
+	}
+
+	/**
+	 * Removes from the cache the parsed scripts whose digest is not in the
+	 * specified set.
+	 * 
+	 * @param digests
+	 *            the digests, as returned by {@link #toFileName(byte[])}, of
+	 *            the scripts to keep
+	 */
+	static void retain(Set<String> digests) {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(PARSED_SCRIPTS_DIR)) {
+			for (Path file : stream) {
+				if (!digests.contains(file.getFileName().toString())) {
+					Files.deleteIfExists(file);
+				}
+			}
+		} catch (NoSuchFileException e) {
+		} catch (Exception e) {
+			logger.warn("Error cleaning scripts cache", e);
+		}
+	}
+
+	/**
+	 * Returns the name of the cache file of the script with the specified
+	 * content digest. The name includes the cache format and Sfera versions,
+	 * so that entries written by other versions are never read, and are
+	 * removed by {@link #retain(Set)}.
+	 * 
+	 * @param digest
+	 *            the digest of the script file content
+	 * @return the cache file name
+	 */
+	static String toFileName(byte[] digest) {
+		return FILE_NAME_PREFIX + DatatypeConverter.printHexBinary(digest);
+	}
+
+}
@@ -25,6 +25,10 @@
  */
 package cc.sferalabs.sfera.scripts;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
 import javax.script.ScriptException;
 
 import cc.sferalabs.sfera.console.ConsoleCommandHandler;
@@ -68,21 +72,83 @@ public class ScriptsConsoleCommandHandler implements ConsoleCommandHandler {
 					return "Error evaluating script: " + e;
 				}
 			} else {
-				String[] file_line = script.split(" ");
-				String file = file_line[0].trim();
-				int line = Integer.parseInt(file_line[1].trim());
-				for (Rule r : ScriptsEngine.getRules()) {
-					if (r.getScriptFile().toString().equals(ScriptsLoader.SCRIPTS_DIR + "/" + file)
-							&& r.getStartLine() == line) {
-						r.executeAction(null);
-						return null;
+				Rule r = findRule(script);
+				if (r == null) {
+					return "Error: no rule found";
+				}
+				r.executeAction(null);
+				return null;
+			}
+		} else if (cmd.trim().equals("disabled")) {
+			StringBuilder sb = new StringBuilder();
+			for (Rule r : ScriptsEngine.getRules()) {
+				if (r.isDisabled()) {
+					if (sb.length() > 0) {
+						sb.append("\n");
 					}
+					sb.append(r.getScriptFile()).append(':').append(r.getStartLine());
 				}
+			}
+			return sb.length() > 0 ? sb.toString() : "No disabled rules";
+		} else if (cmd.startsWith("enable ")) {
+			Rule r = findRule(cmd.substring(7).trim());
+			if (r == null) {
 				return "Error: no rule found";
 			}
+			r.enable();
+			return null;
+		} else if (cmd.trim().equals("stats reset")) {
+			for (Rule r : ScriptsEngine.getRules()) {
+				r.getStats().reset();
+			}
+			return null;
+		} else if (cmd.trim().startsWith("stats")) {
+			int max = 20;
+			String arg = cmd.trim().substring(5).trim();
+			if (!arg.isEmpty()) {
+				try {
+					max = Integer.parseInt(arg);
+				} catch (NumberFormatException e) {
+					return "Invalid number: " + arg;
+				}
+			}
+			List<Rule> rules = new ArrayList<>(ScriptsEngine.getRules());
+			rules.sort(Comparator
+					.comparingDouble((Rule r) -> r.getStats().getTotalMillis()).reversed());
+			StringBuilder sb = new StringBuilder();
+			for (Rule r : rules.subList(0, Math.min(max, rules.size()))) {
+				if (sb.length() > 0) {
+					sb.append("\n");
+				}
+				sb.append(r.getScriptFile()).append(':').append(r.getStartLine()).append(" [")
+						.append(r.getPolicy()).append("] - ")
+						.append(r.getStats());
+			}
+			return sb.toString();
 		} else {
 			return "Unkown command";
 		}
 	}
 
+	/**
+	 * 
+	 * @param fileLine
+	 *            file (relative to the scripts directory) and line number
+	 *            separated by a space
+	 * @return the rule defined in the specified file at the specified line
+	 *         or {@code null} if not found
+	 */
+	private Rule findRule(String fileLine) {
+		String[] file_line = fileLine.split(" ");
+		String file = file_line[0].trim();
+		int line = Integer.parseInt(file_line[1].trim());
+		for (Rule r : ScriptsEngine.getRules()) {
+			if (r.getScriptFile().toString().equals(ScriptsLoader.SCRIPTS_DIR + "/" + file)
+					&& r.getStartLine() == line) {
+				return r;
+			}
+		}
+		return null;
+	}
+
 }
@@ -26,6 +26,9 @@ import java.io.Reader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EventListener;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -34,6 +37,7 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.script.Bindings;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
@@ -43,17 +47,26 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.eventbus.Subscribe;
 
+import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
+
 import cc.sferalabs.sfera.console.Console;
+import cc.sferalabs.sfera.core.SystemNode;
 import cc.sferalabs.sfera.core.events.PluginsEvent;
 import cc.sferalabs.sfera.core.services.AutoStartService;
+import cc.sferalabs.sfera.core.services.TasksManager;
+import cc.sferalabs.sfera.data.Database;
 import cc.sferalabs.sfera.events.Bus;
 import cc.sferalabs.sfera.events.Event;
-import cc.sferalabs.sfera.events.Node;
-import cc.sferalabs.sfera.events.Nodes;
-import cc.sferalabs.sfera.scripts.parser.Parser;
-import cc.sferalabs.sfera.scripts.parser.ScriptErrorListener;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TerminalNodeContext;
+import cc.sferalabs.sfera.events.EventId;
+import cc.sferalabs.sfera.scripts.engine.NashornEngineProvider;
+import cc.sferalabs.sfera.scripts.engine.ScriptEngineProvider;
+import cc.sferalabs.sfera.scripts.primitives.Counter;
+import cc.sferalabs.sfera.scripts.primitives.Debouncer;
+import cc.sferalabs.sfera.scripts.primitives.Ewma;
+import cc.sferalabs.sfera.scripts.primitives.Hysteresis;
+import cc.sferalabs.sfera.scripts.primitives.MovingWindow;
+import cc.sferalabs.sfera.scripts.primitives.RateLimiter;
+import cc.sferalabs.sfera.time.Scheduler;
 import cc.sferalabs.sfera.util.files.FilesWatcher;
 
 /**
@@ -67,15 +80,58 @@ import cc.sferalabs.sfera.util.files.FilesWatcher;
 public class ScriptsEngine implements AutoStartService, EventListener {
 
 	private static final ScriptEngineManager scriptEngineManager = new ScriptEngineManager();
+	private static final NashornScriptEngineFactory nashornFactory = new NashornScriptEngineFactory();
 	private static final ScriptEngine runtimeEngine = getNewNashornEngine();
 
 	private static final Logger logger = LoggerFactory.getLogger(ScriptsEngine.class);
 
-	private static Map<String, Set<Rule>> triggersRulesMap;
-	private static Map<Path, List<Object>> errors;
+	private static volatile Map<EventId, Set<Rule>> triggersRulesMap = Collections.emptyMap();
+	private static volatile Map<Path, List<Object>> errors = Collections.emptyMap();
+	private static volatile Map<EventId, List<TemporalOperator>> temporalOperators = Collections
+			.emptyMap();
+
+	private static final Class<?>[] PRIMITIVES = { AggregateNode.class, ComputedNode.class,
+			Counter.class, Debouncer.class, Ewma.class, Hysteresis.class, MovingWindow.class,
+			RateLimiter.class };
+	private static final Set<Class<?>> globalTypes = new HashSet<>();
+	private static ScriptEngineProvider provider;
+	private static volatile long slowActionThreshold;
+	private static volatile int actionQueueSize = ActionDispatcher.DEFAULT_QUEUE_SIZE;
+	private static volatile ScriptsEngine instance;
+
+	private final Object loadLock = new Object();
+	private ScriptsLoader loader;
+
+	@Override
+	public Collection<Class<? extends AutoStartService>> getDependencies() {
+		return Arrays.asList(Scheduler.class, Database.class);
+	}
 
 	@Override
 	public void init() throws Exception {
+		String engine = SystemNode.getConfiguration().get("scripts_engine",
+				NashornEngineProvider.NAME);
+		synchronized (ScriptsEngine.class) {
+			if (provider == null || !provider.getName().equals(engine)) {
+				setProvider(ScriptEngineProvider.of(engine, scriptEngineManager));
+			}
+		}
+		logger.info("Script engine: {}", provider.getName());
+		for (Class<?> primitive : PRIMITIVES) {
+			try {
+				putTypeInGlobalScope(primitive);
+			} catch (ScriptException e) {
+				logger.error("Error adding " + primitive.getSimpleName() + " to global scope", e);
+			}
+		}
+		int threshold = SystemNode.getConfiguration().get("scripts_slow_action_threshold", 1000);
+		slowActionThreshold = threshold;
+		actionQueueSize = SystemNode.getConfiguration().get("scripts_action_queue_size",
+				ActionDispatcher.DEFAULT_QUEUE_SIZE);
+		int timeout = SystemNode.getConfiguration().get("scripts_action_timeout", 0);
+		int cpuBudget = SystemNode.getConfiguration().get("scripts_action_cpu_budget", 0);
+		int maxViolations = SystemNode.getConfiguration().get("scripts_action_max_violations", 3);
+		ActionsWatchdog.configure(timeout, cpuBudget, maxViolations);
 		loadScripts();
 		try {
 			FilesWatcher.register(Paths.get(ScriptsLoader.SCRIPTS_DIR), "Scripts loader",
@@ -83,26 +139,93 @@ public class ScriptsEngine implements AutoStartService, EventListener {
 		} catch (Exception e) {
 			logger.error("Error registering script files watcher", e);
 		}
+		instance = this;
 		Bus.register(this);
 		Console.addHandler(ScriptsConsoleCommandHandler.INSTANCE);
 	}
 
+	/**
+	 * Loads the modified script files and swaps their rules into the
+	 * triggers-rules map. Events keep being processed by the rules of the
+	 * current map while loading.
+	 */
+	private void loadScripts() {
+		loadScripts(false);
+	}
+
+	/**
+	 * 
+	 * @param full
+	 *            if {@code true} all the nodes are destroyed and all the
+	 *            files reloaded
+	 */
+	private void loadScripts(boolean full) {
+		synchronized (loadLock) {
+			if (full || loader == null) {
+				ScriptNodes.clear();
+				loader = new ScriptsLoader();
+			}
+			loader.load();
+			triggersRulesMap = loader.getTriggersRulesMap();
+			errors = loader.getErrors();
+			updateTemporalOperators();
+		}
+	}
+
+	/**
+	 * Rebuilds the map of the temporal operators of the loaded rules, starting
+	 * the operators of the new rules and closing the ones of the removed
+	 * rules.
+	 */
+	private static void updateTemporalOperators() {
+		Map<EventId, List<TemporalOperator>> old = temporalOperators;
+		Set<TemporalOperator> current = new HashSet<>();
+		Map<EventId, List<TemporalOperator>> map = new HashMap<>();
+		for (Rule rule : getRules()) {
+			for (TemporalOperator op : rule.getTemporalOperators()) {
+				current.add(op);
+				map.computeIfAbsent(op.node, k -> new ArrayList<>()).add(op);
+			}
+		}
+		Set<TemporalOperator> previous = new HashSet<>();
+		for (List<TemporalOperator> ops : old.values()) {
+			previous.addAll(ops);
+		}
+		for (TemporalOperator op : previous) {
+			if (!current.contains(op)) {
+				op.close();
+			}
+		}
+		temporalOperators = map;
+		for (TemporalOperator op : current) {
+			if (!previous.contains(op)) {
+				op.start();
+			}
+		}
+	}
+
 	/**
 	 * 
+	 * @return the execution time in milliseconds above which an action is
+	 *         logged as slow, or 0 if disabled
 	 */
-	private synchronized void loadScripts() {
-		triggersRulesMap = new HashMap<>();
-		errors = new HashMap<>();
-		ScriptNodes.clear();
-		ScriptsLoader loader = new ScriptsLoader(triggersRulesMap, errors);
-		loader.load();
+	static long getSlowActionThreshold() {
+		return slowActionThreshold;
+	}
+
+	/**
+	 * 
+	 * @return the max number of queued executions of the action of a rule
+	 */
+	static int getActionQueueSize() {
+		return actionQueueSize;
 	}
 
 	/**
 	 * 
 	 * @return the set of rules
 	 */
-	static synchronized Set<Rule> getRules() {
+	public static synchronized Set<Rule> getRules() {
 		Set<Rule> rules = new HashSet<>();
 		for (Set<Rule> vals : triggersRulesMap.values()) {
 			rules.addAll(vals);
@@ -119,13 +242,14 @@ public class ScriptsEngine implements AutoStartService, EventListener {
 	@Subscribe
 	public void handlePluginsReload(PluginsEvent event) {
 		if (event == PluginsEvent.RELOAD) {
-			loadScripts();
+			loadScripts(true);
 		}
 	}
 
 	@Override
 	public void quit() throws Exception {
 		Bus.unregister(this);
+		instance = null;
 	}
 
 	/**
@@ -145,13 +269,20 @@ public class ScriptsEngine implements AutoStartService, EventListener {
 	}
 
 	/**
-	 * Returns a new Nashorn {@code ScriptEngine}
+	 * Returns a new Nashorn {@code ScriptEngine}. If the scripts cache is
+	 * enabled the engine stores the generated classes in the persistent code
+	 * cache.
 	 * 
 	 * @return a new Nashorn {@code ScriptEngine}
 	 * @see ScriptEngineManager
 	 */
 	public static ScriptEngine getNewNashornEngine() {
-		return scriptEngineManager.getEngineByName("nashorn");
+		if (!ScriptsCache.isEnabled()) {
+			return scriptEngineManager.getEngineByName("nashorn");
+		}
+		ScriptEngine engine = nashornFactory.getScriptEngine(ScriptsCache.getNashornOptions());
+		engine.setBindings(scriptEngineManager.getBindings(), ScriptContext.GLOBAL_SCOPE);
+		return engine;
 	}
 
 	/**
@@ -163,13 +294,20 @@ public class ScriptsEngine implements AutoStartService, EventListener {
 	 */
 	@Subscribe
 	public synchronized void executeActionsTriggeredBy(Event event) {
+		List<TemporalOperator> operators = temporalOperators.get(event.getEventId());
+		if (operators != null) {
+			for (TemporalOperator op : operators) {
+				try {
+					op.update(event);
+				} catch (Exception e) {
+					logger.error("Error updating temporal operator on: " + event.getId(), e);
+				}
+			}
+		}
 		try {
+			Map<EventId, Set<Rule>> triggersRulesMap = ScriptsEngine.triggersRulesMap;
 			Set<Rule> toExecute = new HashSet<Rule>();
-			String id = event.getId();
-
-			List<String> idParts = getParts(id);
-
-			for (String idPart : idParts) {
+			for (EventId idPart : event.getEventId().getHierarchy()) {
 				Set<Rule> triggeredRules = triggersRulesMap.get(idPart);
 				if (triggeredRules != null) {
 					for (Rule rule : triggeredRules) {
@@ -189,39 +327,37 @@ public class ScriptsEngine implements AutoStartService, EventListener {
 	}
 
 	/**
+	 * Triggers the specified rule with the specified event on a task of the
+	 * {@link TasksManager}, so that, like for the events coming from the Bus,
+	 * the condition is evaluated under the engine lock and not on the caller
+	 * thread. Used by the temporal operators when a deadline elapses.
 	 * 
-	 * @param id
-	 * @return
+	 * @param rule
+	 *            the rule
+	 * @param event
+	 *            the trigger event
 	 */
-	private static List<String> getParts(String id) {
-		List<String> parts = new ArrayList<String>();
-		int dotIdx = id.length();
-		do {
-			String idPart = id.substring(0, dotIdx);
-			parts.add(idPart);
-			dotIdx = lastIndexOf(id, dotIdx - 1, '.', '(');
-		} while (dotIdx > 0);
-
-		return parts;
+	static void postTrigger(Rule rule, Event event) {
+		TasksManager.execute("script-deadline", () -> {
+			ScriptsEngine engine = instance;
+			if (engine != null) {
+				engine.executeTrigger(rule, event);
+			}
+		});
 	}
 
 	/**
 	 * 
-	 * @param string
-	 * @param fromIndex
-	 * @param chs
-	 * @return
+	 * @param rule
+	 * @param event
 	 */
-	private static int lastIndexOf(String string, int fromIndex, char... chs) {
-		int i = Math.min(fromIndex, string.length() - 1);
-		for (; i >= 0; i--) {
-			for (char ch : chs) {
-				if (string.charAt(i) == ch) {
-					return i;
-				}
-			}
+	private synchronized void executeTrigger(Rule rule, Event event) {
+		try {
+			rule.trigger(event);
+		} catch (Exception e) {
+			logger.error("Error executing action triggered by deadline of event: " + event.getId(),
+					e);
 		}
-		return -1;
 	}
 
 	/**
@@ -261,25 +397,41 @@ public class ScriptsEngine implements AutoStartService, EventListener {
 	 * @see Class#getSimpleName
 	 */
 	public synchronized static void putTypeInGlobalScope(Class<?> clazz) throws ScriptException {
-		Object type = getJavaType(clazz);
+		Object type = getProvider().getJavaType(clazz);
 		putObjectInGlobalScope(clazz.getSimpleName(), type);
+		globalTypes.add(clazz);
 	}
 
 	/**
-	 * Returns the Java type corresponding to the specified class.
+	 * Returns the provider of the script engine used to load and run the
+	 * scripts, set by the {@code scripts_engine} configuration parameter.
 	 * 
-	 * @param clazz
-	 *            the class
-	 * @return the Java type
-	 * @throws ScriptException
-	 *             if an error occurs
+	 * @return the script engine provider
+	 */
+	public synchronized static ScriptEngineProvider getProvider() {
+		if (provider == null) {
+			provider = new NashornEngineProvider();
+		}
+		return provider;
+	}
+
+	/**
+	 * Sets the script engine provider, replacing the Java types in the global
+	 * scope with the ones of the new provider.
+	 * 
+	 * @param provider
+	 *            the script engine provider
 	 */
-	static Object getJavaType(Class<?> clazz) throws ScriptException {
-		ScriptEngine engine = getNewNashornEngine();
-		String script = "var _javaType = Java.type('" + clazz.getName() + "');";
-		Bindings bindings = engine.createBindings();
-		engine.eval(script, bindings);
-		return bindings.get("_javaType");
+	private synchronized static void setProvider(ScriptEngineProvider provider) {
+		ScriptsEngine.provider = provider;
+		NodeActions.clear();
+		for (Class<?> clazz : globalTypes) {
+			try {
+				putObjectInGlobalScope(clazz.getSimpleName(), provider.getJavaType(clazz));
+			} catch (ScriptException e) {
+				logger.error("Error adding type " + clazz.getName() + " to global scope", e);
+			}
+		}
 	}
 
 	/**
@@ -297,22 +449,8 @@ public class ScriptsEngine implements AutoStartService, EventListener {
 	 */
 	public static Object evalNodeAction(String nodeAction, Map<String, Object> bindings)
 			throws ScriptException, IllegalArgumentException {
-		ScriptErrorListener errorListener = new ScriptErrorListener();
-		SferaScriptGrammarParser parser = Parser.getParser(nodeAction, errorListener);
-		TerminalNodeContext commandContext = parser.terminalNode();
-		List<Object> errors = errorListener.getErrors();
-		if (!errors.isEmpty()) {
-			throw new IllegalArgumentException("Invalid node action syntax: " + errors.get(0));
-		}
-		String nodeId = commandContext.NodeId().getText();
-		Node node = Nodes.get(nodeId);
-		if (node == null) {
-			throw new IllegalArgumentException("Node '" + nodeId + "' not found");
-		}
-		if (!nodeAction.endsWith(")")) {
-			nodeAction += "()";
-		}
-		return eval(nodeAction, bindings);
+		logger.debug("Executing node action '{}'", nodeAction);
+		return NodeActions.eval(nodeAction, bindings);
 	}
 
 	/**
@@ -328,12 +466,8 @@ public class ScriptsEngine implements AutoStartService, EventListener {
 	 *             if an error accurs
 	 */
 	public static Object eval(String script, Map<String, Object> bindings) throws ScriptException {
-		Bindings b = runtimeEngine.createBindings();
-		if (bindings != null) {
-			b.putAll(bindings);
-		}
 		logger.debug("Executing script '{}'", script);
-		return runtimeEngine.eval(script, b);
+		return getProvider().eval(script, bindings);
 	}
 
 }
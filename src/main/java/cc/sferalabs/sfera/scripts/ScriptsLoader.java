@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
@@ -39,27 +40,39 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EventListener;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
-import javax.script.Bindings;
-import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cc.sferalabs.sfera.core.BootProfiler;
+import cc.sferalabs.sfera.core.Configuration;
 import cc.sferalabs.sfera.core.Plugin;
 import cc.sferalabs.sfera.core.Plugins;
+import cc.sferalabs.sfera.core.SystemNode;
+import cc.sferalabs.sfera.core.services.Task;
+import cc.sferalabs.sfera.core.services.TasksManager;
+import cc.sferalabs.sfera.events.EventId;
+import cc.sferalabs.sfera.scripts.engine.FileScope;
+import cc.sferalabs.sfera.scripts.parser.ParsedScript;
 import cc.sferalabs.sfera.scripts.parser.Parser;
 import cc.sferalabs.sfera.scripts.parser.ScriptErrorListener;
 import cc.sferalabs.sfera.scripts.parser.ScriptGrammarListener;
@@ -67,6 +80,10 @@ import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser;
 import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.ParseContext;
 
 /**
+ * Loads script and library files. A loader keeps the state of the loaded
+ * files so that subsequent calls to {@link #load()} only re-evaluate the
+ * modified libraries and recompile the modified script files and the ones
+ * importing modified libraries.
  *
  * @author Giampiero Baggiani
  *
@@ -78,52 +95,82 @@ public class ScriptsLoader implements EventListener {
 	public static final String SCRIPTS_DIR = "scripts";
 	private static final String SCRIPT_FILES_EXTENSION = ".ev";
 	private static final String LIBRARY_FILES_EXTENSION = ".js";
+	private static final String SFERA_LIBRARY = "sfera.js";
 
 	private static final Logger logger = LoggerFactory.getLogger(ScriptsLoader.class);
 
-	private Map<String, Set<Rule>> triggersRulesMap;
-	private Map<Path, List<Object>> errors;
-	private Map<String, Bindings> libraries = new HashMap<>();
+	private final Map<String, Object> libraries = new HashMap<>();
+	private final Map<String, SourceFile> libraryFiles = new HashMap<>();
+	private final Map<String, SourceFile> scriptFiles = new HashMap<>();
+	private Map<EventId, Set<Rule>> triggersRulesMap = Collections.emptyMap();
+	private Map<Path, List<Object>> errors = Collections.emptyMap();
 
 	/**
-	 * Constructs a ScriptsLoader.
-	 * 
-	 * @param triggersRulesMap
-	 *            the triggers-rules map to fill
-	 * @param errors
-	 *            the errors list to fill
-	 */
-	ScriptsLoader(Map<String, Set<Rule>> triggersRulesMap, Map<Path, List<Object>> errors) {
-		this.triggersRulesMap = triggersRulesMap;
-		this.errors = errors;
-	}
-
-	/**
-	 * Loads the script files
+	 * Loads the script files.
+	 * <p>
+	 * The first call loads all the files. Subsequent calls re-evaluate only
+	 * the libraries that have been modified, added or removed and recompile
+	 * only the script files that have been modified or added or that import
+	 * any of such libraries. Nodes created by removed or recompiled files are
+	 * destroyed, while rules and nodes of the other files are kept.
+	 * </p>
 	 */
 	synchronized void load() {
 		logger.info("Loading scripts...");
 		try {
-			loadSferaLib();
-			loadFiles(LIBRARY_FILES_EXTENSION, libFile -> addToLibraries(libFile));
-			loadFiles(SCRIPT_FILES_EXTENSION, scriptFile -> parseScriptFile(scriptFile));
+			if (!libraries.containsKey(SFERA_LIBRARY)) {
+				loadSferaLib();
+			}
+			Set<String> changedLibraries = loadLibraries();
+			int compiled = loadScriptFiles(changedLibraries);
+			if (ScriptsCache.isEnabled()) {
+				Set<String> digests = new HashSet<>();
+				for (SourceFile sf : scriptFiles.values()) {
+					if (sf.digest != null) {
+						digests.add(ScriptsCache.toFileName(sf.digest));
+					}
+				}
+				ScriptsCache.retain(digests);
+			}
+			logger.debug("Libraries changed: {} - Script files compiled: {}/{}",
+					changedLibraries.size(), compiled, scriptFiles.size());
 		} catch (Exception e) {
 			logger.error("Error loading script files", e);
 		}
+		rebuildIndex();
 		logger.info("Scripts loaded");
 	}
 
+	/**
+	 * Returns the triggers-rules map of all the loaded script files. The
+	 * returned map is replaced, not modified, by subsequent loads.
+	 * 
+	 * @return the triggers-rules map
+	 */
+	synchronized Map<EventId, Set<Rule>> getTriggersRulesMap() {
+		return triggersRulesMap;
+	}
+
+	/**
+	 * Returns the errors of the loaded files.
+	 * 
+	 * @return the errors of the loaded files
+	 */
+	synchronized Map<Path, List<Object>> getErrors() {
+		return errors;
+	}
+
 	/**
 	 * 
 	 * @throws ScriptException
 	 * @throws IOException
 	 */
 	private void loadSferaLib() throws ScriptException, IOException {
-		try (InputStream in = getClass().getResourceAsStream("sfera.js");
+		try (InputStream in = getClass().getResourceAsStream(SFERA_LIBRARY);
 				BufferedReader br = new BufferedReader(
 						new InputStreamReader(in, StandardCharsets.UTF_8))) {
 			logger.debug("Loading Sfera library");
-			addToLibraries("sfera.js", br);
+			addToLibraries(SFERA_LIBRARY, br);
 		}
 	}
 
@@ -133,7 +180,7 @@ public class ScriptsLoader implements EventListener {
 	 * @param action
 	 * @throws IOException
 	 */
-	private void loadFiles(String filesExtension, Consumer<Path> action) throws IOException {
+	private void loadFiles(String filesExtension, Consumer<List<Path>> action) throws IOException {
 		loadFilesIn(FileSystems.getDefault(), filesExtension, action);
 		for (Plugin plugin : Plugins.getAll().values()) {
 			try (FileSystem pluginFs = FileSystems.newFileSystem(plugin.getPath(), null)) {
@@ -143,24 +190,84 @@ public class ScriptsLoader implements EventListener {
 	}
 
 	/**
+	 * Reads all the library files and evaluates the ones that have been
+	 * modified or added since the last load.
 	 * 
-	 * @param libFile
+	 * @return the paths of the libraries that have been modified, added or
+	 *         removed
+	 * @throws IOException
 	 */
-	private void addToLibraries(Path libFile) {
-		try (BufferedReader br = Files.newBufferedReader(libFile, StandardCharsets.UTF_8)) {
-			String path = null;
-			int count = libFile.getNameCount();
-			for (int i = 0; i < count; i++) {
-				if (libFile.getName(i).toString().equals(SCRIPTS_DIR)) {
-					path = libFile.subpath(i + 1, count).toString();
-					break;
+	private Set<String> loadLibraries() throws IOException {
+		Map<String, SourceFile> found = new LinkedHashMap<>();
+		loadFiles(LIBRARY_FILES_EXTENSION, libFiles -> {
+			for (Path libFile : libFiles) {
+				String path = getLibraryPath(libFile);
+				if (path != null) {
+					if (found.put(path, readSourceFile(path, libFile)) != null) {
+						logger.warn("Library '{}' is overwriting another file", path);
+					}
 				}
 			}
-			if (path != null) {
-				addToLibraries(path, br);
+		});
+
+		Set<String> changed = new HashSet<>();
+		for (SourceFile lib : found.values()) {
+			SourceFile prev = libraryFiles.get(lib.key);
+			if (prev == null || !Arrays.equals(prev.digest, lib.digest)) {
+				changed.add(lib.key);
+				libraryFiles.put(lib.key, lib);
+				addToLibraries(lib);
+			}
+		}
+		Iterator<String> it = libraryFiles.keySet().iterator();
+		while (it.hasNext()) {
+			String path = it.next();
+			if (!found.containsKey(path)) {
+				it.remove();
+				libraries.remove(path);
+				ScriptNodes.clear(path);
+				changed.add(path);
 			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * 
+	 * @param libFile
+	 * @return
+	 */
+	private String getLibraryPath(Path libFile) {
+		int count = libFile.getNameCount();
+		for (int i = 0; i < count; i++) {
+			if (libFile.getName(i).toString().equals(SCRIPTS_DIR)) {
+				return libFile.subpath(i + 1, count).toString();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 
+	 * @param lib
+	 */
+	private void addToLibraries(SourceFile lib) {
+		libraries.remove(lib.key);
+		ScriptNodes.clear(lib.key);
+		if (lib.content == null) {
+			return;
+		}
+		ScriptNodes.setSource(lib.key);
+		BootProfiler.Phase p = BootProfiler.start("script/" + lib.path);
+		try {
+			addToLibraries(lib.key, new StringReader(lib.getText()));
 		} catch (Exception e) {
-			addError(libFile, e);
+			addError(lib, e);
+		} finally {
+			p.end();
+			ScriptNodes.setSource(null);
+			lib.content = null;
 		}
 	}
 
@@ -171,11 +278,68 @@ public class ScriptsLoader implements EventListener {
 	 * @throws ScriptException
 	 */
 	private void addToLibraries(String path, Reader reader) throws ScriptException {
-		Bindings bs = ScriptsEngine.getBindings(reader);
-		Bindings prev = libraries.put(path, bs);
-		if (prev != null) {
-			logger.warn("Library '{}' is overwriting another file", path);
+		libraries.put(path, ScriptsEngine.getProvider().evalLibrary(reader));
+	}
+
+	/**
+	 * Reads all the script files and compiles the ones that have been
+	 * modified or added since the last load or that import any of the
+	 * specified libraries.
+	 * 
+	 * @param changedLibraries
+	 *            the paths of the changed libraries
+	 * @return the number of compiled files
+	 * @throws IOException
+	 */
+	private int loadScriptFiles(Set<String> changedLibraries) throws IOException {
+		List<SourceFile> toCompile = new ArrayList<>();
+		Set<String> found = new HashSet<>();
+		loadFiles(SCRIPT_FILES_EXTENSION, files -> {
+			for (Path file : files) {
+				String key = file.toUri().toString();
+				found.add(key);
+				SourceFile sf = readSourceFile(key, file);
+				SourceFile prev = scriptFiles.get(key);
+				if (prev == null || !Arrays.equals(prev.digest, sf.digest)
+						|| !Collections.disjoint(prev.imports, changedLibraries)) {
+					toCompile.add(sf);
+				}
+			}
+		});
+
+		Iterator<String> it = scriptFiles.keySet().iterator();
+		while (it.hasNext()) {
+			String key = it.next();
+			if (!found.contains(key)) {
+				it.remove();
+				ScriptNodes.clear(key);
+				logger.debug("Script file '{}' removed", key);
+			}
+		}
+
+		parseScriptFiles(toCompile);
+		for (SourceFile sf : toCompile) {
+			scriptFiles.put(sf.key, sf);
+		}
+
+		return toCompile.size();
+	}
+
+	/**
+	 * 
+	 * @param key
+	 * @param file
+	 * @return
+	 */
+	private SourceFile readSourceFile(String key, Path file) {
+		SourceFile sf = new SourceFile(key, file);
+		try {
+			sf.content = Files.readAllBytes(file);
+			sf.digest = MessageDigest.getInstance("MD5").digest(sf.content);
+		} catch (IOException | NoSuchAlgorithmException e) {
+			addError(sf, e);
 		}
+		return sf;
 	}
 
 	/**
@@ -186,7 +350,8 @@ public class ScriptsLoader implements EventListener {
 	 * @throws IOException
 	 */
 	private void loadFilesIn(final FileSystem fileSystem, String filesExtension,
-			Consumer<Path> action) throws IOException {
+			Consumer<List<Path>> action) throws IOException {
+		List<Path> files = new ArrayList<>();
 		try {
 			Files.walkFileTree(fileSystem.getPath(SCRIPTS_DIR), new SimpleFileVisitor<Path>() {
 
@@ -203,7 +368,7 @@ public class ScriptsLoader implements EventListener {
 								logger.debug("Loading file '{}' from '{}'", file, fileSystem);
 							}
 						}
-						action.accept(file);
+						files.add(file);
 					}
 
 					return FileVisitResult.CONTINUE;
@@ -211,27 +376,87 @@ public class ScriptsLoader implements EventListener {
 			});
 		} catch (NoSuchFileException nsfe) {
 		}
+		action.accept(files);
 	}
 
 	/**
+	 * Parses the specified script files. Files are parsed and their actions
+	 * compiled in parallel by a number of workers set by the
+	 * {@code scripts_load_threads} configuration parameter.
 	 * 
-	 * @param scriptFile
+	 * @param scriptFiles
 	 */
-	private void parseScriptFile(Path scriptFile) {
-		try (BufferedReader br = Files.newBufferedReader(scriptFile, StandardCharsets.UTF_8)) {
-			ScriptErrorListener errorListener = new ScriptErrorListener();
-			SferaScriptGrammarParser parser = Parser.getParser(br, errorListener);
-			ParseContext tree = parser.parse();
+	private void parseScriptFiles(List<SourceFile> scriptFiles) {
+		Configuration config = SystemNode.getConfiguration();
+		int threads = config == null ? Runtime.getRuntime().availableProcessors()
+				: config.get("scripts_load_threads", Runtime.getRuntime().availableProcessors());
+		threads = Math.min(threads, scriptFiles.size());
+		if (threads <= 1) {
+			scriptFiles.forEach(this::parseScriptFile);
+			return;
+		}
 
-			List<Object> ers = errorListener.getErrors();
-			if (!ers.isEmpty()) {
-				for (Object e : ers) {
-					addError(scriptFile, e);
+		ClassLoader cl = Thread.currentThread().getContextClassLoader();
+		Iterator<SourceFile> it = scriptFiles.iterator();
+		CompletableFuture<?>[] workers = new CompletableFuture<?>[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = CompletableFuture.runAsync(Task.create("Scripts loader " + i, () -> {
+				Thread thread = Thread.currentThread();
+				ClassLoader prevCl = thread.getContextClassLoader();
+				thread.setContextClassLoader(cl);
+				try {
+					while (true) {
+						SourceFile scriptFile;
+						synchronized (it) {
+							if (!it.hasNext()) {
+								break;
+							}
+							scriptFile = it.next();
+						}
+						parseScriptFile(scriptFile);
+					}
+				} finally {
+					thread.setContextClassLoader(prevCl);
 				}
-				return;
+			}), TasksManager.getTasksExecutorService());
+		}
+		CompletableFuture.allOf(workers).join();
+	}
+
+	/**
+	 * 
+	 * @param sf
+	 */
+	private void parseScriptFile(SourceFile sf) {
+		ScriptNodes.clear(sf.key);
+		if (sf.content == null) {
+			return;
+		}
+		Path scriptFile = sf.path;
+		ScriptNodes.setSource(sf.key);
+		BootProfiler.Phase p = BootProfiler.start("script/" + scriptFile);
+		try {
+			boolean cache = ScriptsCache.isEnabled();
+			ParsedScript parsed = cache ? ScriptsCache.get(sf.digest) : null;
+			ParseContext tree = null;
+			if (parsed == null) {
+				ScriptErrorListener errorListener = new ScriptErrorListener();
+				SferaScriptGrammarParser parser = Parser.getParser(new StringReader(sf.getText()),
+						errorListener);
+				tree = parser.parse();
+
+				List<Object> ers = errorListener.getErrors();
+				if (!ers.isEmpty()) {
+					for (Object e : ers) {
+						addError(sf, e);
+					}
+					return;
+				}
+			} else {
+				logger.debug("Script file '{}' loaded from cache", scriptFile);
 			}
 
-			ScriptEngine scriptEngine = ScriptsEngine.getNewNashornEngine();
+			FileScope scope = ScriptsEngine.getProvider().newFileScope();
 
 			StringBuilder loggerName = new StringBuilder();
 			Iterator<Path> it = scriptFile.iterator();
@@ -239,23 +464,57 @@ public class ScriptsLoader implements EventListener {
 				loggerName.append(it.next());
 				loggerName.append('.');
 			}
-			scriptEngine.put("log", LoggerFactory.getLogger(loggerName.substring(0,
+			scope.put("log", LoggerFactory.getLogger(loggerName.substring(0,
 					loggerName.length() - SCRIPT_FILES_EXTENSION.length() - 1)));
 
 			ScriptGrammarListener scriptListener = new ScriptGrammarListener(scriptFile, libraries,
-					scriptEngine);
-			ParseTreeWalker.DEFAULT.walk(scriptListener, tree);
+					scope);
+			if (tree != null) {
+				ParseTreeWalker.DEFAULT.walk(scriptListener, tree);
+				if (cache) {
+					ScriptsCache.put(sf.digest, scriptListener.getParsedScript());
+				}
+			} else {
+				scriptListener.load(parsed);
+			}
+			sf.imports = scriptListener.getImportedLibraries();
 
-			ers = scriptListener.getErrors();
+			List<Object> ers = scriptListener.getErrors();
 			if (!ers.isEmpty()) {
 				for (Object e : ers) {
-					addError(scriptFile, e);
+					addError(sf, e);
 				}
 				return;
 			}
 
-			for (Entry<String, Set<Rule>> entry : scriptListener.getTriggerRulesMap().entrySet()) {
-				String trigger = entry.getKey();
+			sf.triggersRulesMap = scriptListener.getTriggerRulesMap();
+		} catch (Exception e) {
+			addError(sf, e);
+		} finally {
+			p.end();
+			ScriptNodes.setSource(null);
+			sf.content = null;
+		}
+	}
+
+	/**
+	 * Rebuilds the triggers-rules map and the errors map from the state of
+	 * the loaded files.
+	 */
+	private void rebuildIndex() {
+		Map<EventId, Set<Rule>> triggersRulesMap = new HashMap<>();
+		Map<Path, List<Object>> errors = new HashMap<>();
+		for (SourceFile lib : libraryFiles.values()) {
+			if (!lib.errors.isEmpty()) {
+				errors.put(lib.path, lib.errors);
+			}
+		}
+		for (SourceFile sf : scriptFiles.values()) {
+			if (!sf.errors.isEmpty()) {
+				errors.put(sf.path, sf.errors);
+			}
+			for (Entry<EventId, Set<Rule>> entry : sf.triggersRulesMap.entrySet()) {
+				EventId trigger = entry.getKey();
 				Set<Rule> rules = triggersRulesMap.get(trigger);
 				if (rules == null) {
 					rules = new HashSet<Rule>();
@@ -263,27 +522,54 @@ public class ScriptsLoader implements EventListener {
 				}
 				rules.addAll(entry.getValue());
 			}
-		} catch (Exception e) {
-			addError(scriptFile, e);
 		}
+		this.triggersRulesMap = triggersRulesMap;
+		this.errors = errors;
 	}
 
 	/**
 	 * 
-	 * @param file
-	 * @param message
+	 * @param sf
+	 * @param error
 	 */
-	private void addError(Path file, Object error) {
-		logger.error("Error in script file '{}': {}", file, error);
+	private void addError(SourceFile sf, Object error) {
+		logger.error("Error in script file '{}': {}", sf.path, error);
 		if (error instanceof Throwable) {
 			logger.debug("Script error", (Throwable) error);
 		}
-		List<Object> fileErrors = errors.get(file);
-		if (fileErrors == null) {
-			fileErrors = new ArrayList<>();
-			errors.put(file, fileErrors);
+		sf.errors.add(error);
+	}
+
+	/**
+	 * State of a loaded script or library file.
+	 */
+	private static class SourceFile {
+
+		private final String key;
+		private final Path path;
+		private final List<Object> errors = new ArrayList<>();
+		private byte[] content;
+		private byte[] digest;
+		private Set<String> imports = Collections.emptySet();
+		private Map<EventId, Set<Rule>> triggersRulesMap = Collections.emptyMap();
+
+		/**
+		 * 
+		 * @param key
+		 * @param path
+		 */
+		private SourceFile(String key, Path path) {
+			this.key = key;
+			this.path = path;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		private String getText() {
+			return new String(content, StandardCharsets.UTF_8);
 		}
-		fileErrors.add(error);
 	}
 
 }
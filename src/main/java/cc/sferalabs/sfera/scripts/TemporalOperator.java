@@ -0,0 +1,407 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cc.sferalabs.sfera.events.Bus;
+import cc.sferalabs.sfera.events.DoubleEvent;
+import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.EventId;
+import cc.sferalabs.sfera.events.LongEvent;
+
+/**
+ * State machine of a temporal operator of a trigger condition, updated by the
+ * script engine with the events of the node the operator is applied to
+ * before the evaluation of the triggered conditions.
+ */
+abstract class TemporalOperator {
+
+	private static final Logger logger = LoggerFactory.getLogger(TemporalOperator.class);
+
+	/**
+	 * Condition on the events of the node the operator is applied to
+	 */
+	interface Predicate {
+
+		/**
+		 * @param event
+		 *            the event
+		 * @return whether the event satisfies the condition
+		 * @throws Exception
+		 *             if an error occurs
+		 */
+		boolean test(Event event) throws Exception;
+	}
+
+	final EventId node;
+
+	/**
+	 * 
+	 * @param node
+	 *            the node the operator is applied to
+	 */
+	TemporalOperator(EventId node) {
+		this.node = node;
+	}
+
+	/**
+	 * Initializes the state from the current state of the node.
+	 */
+	void start() {
+		Event e = Bus.getEvent(node.toString());
+		if (e != null) {
+			try {
+				update(e);
+			} catch (Exception ex) {
+				logger.warn("Error initializing temporal operator on " + node, ex);
+			}
+		}
+	}
+
+	/**
+	 * Releases the resources of the operator.
+	 */
+	void close() {
+	}
+
+	/**
+	 * Updates the state with the specified event of the node.
+	 * 
+	 * @param event
+	 *            the event
+	 * @throws Exception
+	 *             if an error occurs
+	 */
+	abstract void update(Event event) throws Exception;
+
+	/**
+	 * {@code node.for(ms)}: satisfied when the predicate has held for the
+	 * specified time, or, without predicate, when the node value has not
+	 * changed for the specified time. When the time elapses, the rule is
+	 * triggered through the script engine, not on the timer wheel thread.
+	 */
+	static class For extends TemporalOperator {
+
+		private final Predicate predicate;
+		private final long millis;
+		private Rule rule;
+		private TimerWheel.Timeout timeout;
+		private boolean satisfied;
+		private boolean hasValue;
+		private Object value;
+
+		/**
+		 * 
+		 * @param node
+		 * @param predicate
+		 *            the predicate, or {@code null}
+		 * @param millis
+		 */
+		For(EventId node, Predicate predicate, long millis) {
+			super(node);
+			this.predicate = predicate;
+			this.millis = millis;
+		}
+
+		/**
+		 * 
+		 * @param rule
+		 *            the rule to trigger
+		 */
+		void setRule(Rule rule) {
+			this.rule = rule;
+		}
+
+		@Override
+		synchronized void update(Event event) throws Exception {
+			boolean holds;
+			if (predicate == null) {
+				Object v = event.getSimpleValue();
+				holds = hasValue && Objects.equals(v, value);
+				hasValue = true;
+				value = v;
+			} else {
+				holds = predicate.test(event);
+			}
+			if (holds) {
+				if (timeout == null && !satisfied) {
+					arm(event);
+				}
+			} else {
+				disarm();
+				satisfied = false;
+				if (predicate == null) {
+					arm(event);
+				}
+			}
+		}
+
+		/**
+		 * 
+		 * @param event
+		 */
+		private void arm(Event event) {
+			long delay = event.getTimestamp() + millis - System.currentTimeMillis();
+			TimerWheel.Timeout[] t = new TimerWheel.Timeout[1];
+			t[0] = TimerWheel.INSTANCE.schedule(delay, () -> elapsed(t[0], event));
+			timeout = t[0];
+		}
+
+		/**
+		 * 
+		 */
+		private void disarm() {
+			if (timeout != null) {
+				timeout.cancel();
+				timeout = null;
+			}
+		}
+
+		/**
+		 * 
+		 * @param t
+		 * @param event
+		 */
+		private void elapsed(TimerWheel.Timeout t, Event event) {
+			Rule r;
+			synchronized (this) {
+				if (timeout != t) {
+					return;
+				}
+				timeout = null;
+				satisfied = true;
+				r = rule;
+			}
+			if (r != null) {
+				ScriptsEngine.postTrigger(r, event);
+			}
+		}
+
+		/**
+		 * @return whether the operator is satisfied
+		 */
+		synchronized boolean isSatisfied() {
+			return satisfied;
+		}
+
+		@Override
+		synchronized void close() {
+			disarm();
+			rule = null;
+		}
+	}
+
+	/**
+	 * {@code node.within(ms)}: satisfied if an event satisfying the
+	 * predicate, or any event without predicate, occurred in the specified
+	 * time.
+	 */
+	static class Within extends TemporalOperator {
+
+		private final Predicate predicate;
+		private final long nanos;
+		private volatile long last;
+		private volatile boolean occurred;
+
+		/**
+		 * 
+		 * @param node
+		 * @param predicate
+		 *            the predicate, or {@code null}
+		 * @param millis
+		 */
+		Within(EventId node, Predicate predicate, long millis) {
+			super(node);
+			this.predicate = predicate;
+			this.nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+		}
+
+		@Override
+		void start() {
+			// events occurred before the rule was loaded are not considered
+		}
+
+		@Override
+		void update(Event event) throws Exception {
+			if (predicate == null || predicate.test(event)) {
+				last = System.nanoTime();
+				occurred = true;
+			}
+		}
+
+		/**
+		 * @return whether the operator is satisfied
+		 */
+		boolean isSatisfied() {
+			return occurred && System.nanoTime() - last <= nanos;
+		}
+	}
+
+	/**
+	 * {@code node.changed()}: satisfied by the events changing the node
+	 * value.
+	 */
+	static class Changed extends TemporalOperator {
+
+		private boolean hasValue;
+		private Object value;
+		private volatile Event changedBy;
+
+		/**
+		 * 
+		 * @param node
+		 */
+		Changed(EventId node) {
+			super(node);
+		}
+
+		@Override
+		void start() {
+			Event e = Bus.getEvent(node.toString());
+			if (e != null) {
+				hasValue = true;
+				value = e.getSimpleValue();
+			}
+		}
+
+		@Override
+		synchronized void update(Event event) {
+			Object v = event.getSimpleValue();
+			changedBy = hasValue && Objects.equals(v, value) ? null : event;
+			hasValue = true;
+			value = v;
+		}
+
+		/**
+		 * @param event
+		 *            the trigger event
+		 * @return whether the specified event changed the node value
+		 */
+		boolean isChangedBy(Event event) {
+			return event == changedBy;
+		}
+	}
+
+	/**
+	 * {@code node.rate(ms)}: rate of change per second of the numeric node
+	 * value in the specified time. At most {@link #MAX_SAMPLES} samples are
+	 * kept: for faster nodes the rate is computed on the most recent ones.
+	 */
+	static class Rate extends TemporalOperator {
+
+		static final int MAX_SAMPLES = 1000;
+
+		private final long nanos;
+		private final Deque<Sample> samples = new ArrayDeque<>();
+
+		/**
+		 * 
+		 */
+		private static class Sample {
+
+			private final long time;
+			private final double value;
+
+			/**
+			 * 
+			 * @param time
+			 * @param value
+			 */
+			private Sample(long time, double value) {
+				this.time = time;
+				this.value = value;
+			}
+		}
+
+		/**
+		 * 
+		 * @param node
+		 * @param millis
+		 */
+		Rate(EventId node, long millis) {
+			super(node);
+			this.nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+		}
+
+		@Override
+		void start() {
+			// events occurred before the rule was loaded are not considered
+		}
+
+		@Override
+		synchronized void update(Event event) {
+			double value;
+			if (event instanceof DoubleEvent) {
+				value = ((DoubleEvent) event).getDoubleValue();
+			} else if (event instanceof LongEvent) {
+				value = ((LongEvent) event).getLongValue();
+			} else if (event.getSimpleValue() instanceof Number) {
+				value = ((Number) event.getSimpleValue()).doubleValue();
+			} else {
+				return;
+			}
+			long now = System.nanoTime();
+			if (samples.size() >= MAX_SAMPLES) {
+				samples.pollFirst();
+			}
+			samples.addLast(new Sample(now, value));
+			evict(now);
+		}
+
+		/**
+		 * @return the rate of change per second, or {@code NaN} if less than
+		 *         two samples are available in the time window
+		 */
+		synchronized double getRate() {
+			evict(System.nanoTime());
+			if (samples.size() < 2) {
+				return Double.NaN;
+			}
+			Sample first = samples.peekFirst();
+			Sample last = samples.peekLast();
+			double seconds = (last.time - first.time) / 1e9;
+			if (seconds <= 0) {
+				return Double.NaN;
+			}
+			return (last.value - first.value) / seconds;
+		}
+
+		/**
+		 * 
+		 * @param now
+		 */
+		private void evict(long now) {
+			while (!samples.isEmpty() && now - samples.peekFirst().time > nanos) {
+				samples.pollFirst();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel running the timeouts of the temporal trigger operators,
+ * of the aggregate and computed nodes and of the scripts primitives.
+ * Scheduling and cancelling a timeout take constant time, regardless of the
+ * number of pending timeouts, at the price of a resolution limited to the
+ * tick duration. Timeouts are run on the wheel thread, so they must be
+ * short.
+ */
+public class TimerWheel {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+	private static final long TICK_MILLIS = 10;
+	private static final int WHEEL_SIZE = 512;
+
+	/**
+	 * Shared instance
+	 */
+	public static final TimerWheel INSTANCE = new TimerWheel();
+
+	private final List<List<Timeout>> wheel = new ArrayList<>(WHEEL_SIZE);
+	private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+	private Thread thread;
+	private long tick;
+	private long startNanos;
+
+	/**
+	 * Scheduled task
+	 */
+	public static class Timeout {
+
+		private final Runnable task;
+		private final long deadlineTick;
+		private volatile boolean cancelled;
+
+		/**
+		 * 
+		 * @param task
+		 * @param deadlineTick
+		 */
+		private Timeout(Runnable task, long deadlineTick) {
+			this.task = task;
+			this.deadlineTick = deadlineTick;
+		}
+
+		/**
+		 * Cancels this timeout.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private TimerWheel() {
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			wheel.add(new ArrayList<>());
+		}
+	}
+
+	/**
+	 * Schedules the specified task to be run after the specified delay.
+	 * 
+	 * @param delayMillis
+	 *            the delay in milliseconds
+	 * @param task
+	 *            the task
+	 * @return the timeout, which can be used to cancel the task
+	 */
+	public Timeout schedule(long delayMillis, Runnable task) {
+		start();
+		long elapsedTicks = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+				/ TICK_MILLIS;
+		long ticks = (Math.max(0, delayMillis) + TICK_MILLIS - 1) / TICK_MILLIS;
+		Timeout timeout = new Timeout(task, elapsedTicks + Math.max(1, ticks));
+		added.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Starts the wheel thread, if not started yet.
+	 */
+	private synchronized void start() {
+		if (thread == null) {
+			startNanos = System.nanoTime();
+			thread = new Thread(this::run, "scripts-timer-wheel");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private void run() {
+		while (true) {
+			long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos((tick + 1) * TICK_MILLIS);
+			long sleep = deadline - System.nanoTime();
+			if (sleep > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleep);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+			tick++;
+			Timeout t;
+			while ((t = added.poll()) != null) {
+				if (!t.cancelled) {
+					long deadlineTick = Math.max(t.deadlineTick, tick);
+					wheel.get((int) (deadlineTick % WHEEL_SIZE)).add(t);
+				}
+			}
+			Iterator<Timeout> it = wheel.get((int) (tick % WHEEL_SIZE)).iterator();
+			while (it.hasNext()) {
+				t = it.next();
+				if (t.cancelled) {
+					it.remove();
+				} else if (t.deadlineTick <= tick) {
+					it.remove();
+					try {
+						t.task.run();
+					} catch (Throwable e) {
+						logger.error("Error executing timeout", e);
+					}
+				}
+			}
+		}
+	}
+
+}
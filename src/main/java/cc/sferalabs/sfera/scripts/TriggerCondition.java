@@ -22,26 +22,21 @@
 
 package cc.sferalabs.sfera.scripts;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import cc.sferalabs.sfera.events.Bus;
+import cc.sferalabs.sfera.events.DoubleEvent;
 import cc.sferalabs.sfera.events.Event;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.AndExpressionContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.AtomExpressionContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.BooleanComparisonContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.EventContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.NotExpressionContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.NumberComparisonContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.OrExpressionContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.StableEventContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.StringComparisonContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TerminalNodeContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TransientEventContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TriggerContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.UnknownComparisonContext;
+import cc.sferalabs.sfera.events.EventId;
+import cc.sferalabs.sfera.events.LongEvent;
+import cc.sferalabs.sfera.scripts.parser.ConditionTerm;
+import cc.sferalabs.sfera.scripts.parser.ConditionTerm.Operator;
 
 /**
- * Class representing a script trigger condition
+ * Class representing a script trigger condition. The condition term is
+ * compiled, at construction, into a tree of expressions with the event IDs
+ * interned.
  * 
  * @author Giampiero Baggiani
  *
@@ -50,16 +45,41 @@ import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.UnknownC
  */
 class TriggerCondition {
 
-	private final TriggerContext condition;
+	/**
+	 * Compiled condition expression
+	 */
+	private interface Expression {
+
+		/**
+		 * @param event
+		 *            the trigger event
+		 * @return the result of the evaluation
+		 * @throws Exception
+		 *             if an error occurs
+		 */
+		boolean eval(Event event) throws Exception;
+	}
+
+	private final List<TemporalOperator> operators = new ArrayList<>();
+	private final Expression expression;
 
 	/**
 	 * Construct a TriggerCondition.
 	 * 
 	 * @param condition
-	 *            the trigger condition context
+	 *            the trigger condition term
+	 * @throws IllegalArgumentException
+	 *             if a temporal operator is used incorrectly
 	 */
-	TriggerCondition(TriggerContext condition) {
-		this.condition = condition;
+	TriggerCondition(ConditionTerm condition) throws IllegalArgumentException {
+		this.expression = compile(condition);
+	}
+
+	/**
+	 * @return the state machines of the temporal operators of this condition
+	 */
+	List<TemporalOperator> getOperators() {
+		return operators;
 	}
 
 	/**
@@ -72,147 +92,192 @@ class TriggerCondition {
 	 *             if an error occurs
 	 */
 	public boolean eval(Event event) throws Exception {
-		return eval(condition.orExpression(), event);
+		return expression.eval(event);
 	}
 
 	/**
 	 * 
-	 * @param ctx
-	 * @param event
+	 * @param term
 	 * @return
-	 * @throws Exception
 	 */
-	private boolean eval(OrExpressionContext ctx, Event event) throws Exception {
-		List<AndExpressionContext> ands = ctx.andExpression();
-
-		boolean res = eval(ands.get(0), event);
-		for (int i = 1; i < ands.size(); i++) {
-			res = res || eval(ands.get(i), event);
+	private Expression compile(ConditionTerm term) {
+		if (term.isAmbiguous()) {
+			throw temporalError(term,
+					"invalid time parameter, must be a positive number of milliseconds");
+		}
+		switch (term.getType()) {
+		case OR:
+			return compileOr(term);
+		case AND:
+			return compileAnd(term);
+		case NOT:
+			Expression expr = compile(term.getTerms()[0]);
+			return event -> !expr.eval(event);
+		case TRANSIENT:
+			if (term.getTemporal() != null) {
+				return compileTemporal(term, null);
+			}
+			EventId condition = EventId.of(term.getNode());
+			return event -> event.getEventId().isOrDescendsFrom(condition);
+		default:
+			if (term.getTemporal() != null) {
+				return compileTemporal(term,
+						compileComparison(term, EventId.of(term.getTemporalNode())));
+			}
+			return compileComparison(term, EventId.of(term.getNode()));
 		}
-
-		return res;
 	}
 
 	/**
 	 * 
-	 * @param ctx
-	 * @param event
+	 * @param term
+	 * @param id
 	 * @return
-	 * @throws Exception
 	 */
-	private boolean eval(AndExpressionContext ctx, Event event) throws Exception {
-		List<NotExpressionContext> nots = ctx.notExpression();
-
-		boolean res = eval(nots.get(0), event);
-		for (int i = 1; i < nots.size(); i++) {
-			res = res && eval(nots.get(i), event);
+	private static Expression compileComparison(ConditionTerm term, EventId id) {
+		switch (term.getType()) {
+		case STRING:
+			return compileString(term, id);
+		case NUMBER:
+			return compileNumber(term, id);
+		case BOOLEAN:
+			return compileBoolean(term, id);
+		default: // UNKNOWN
+			return compileUnknown(term, id);
 		}
-
-		return res;
 	}
 
 	/**
+	 * Creates the state machine of the temporal operator of the specified
+	 * term and returns the expression evaluating its state.
 	 * 
-	 * @param ctx
-	 * @param event
+	 * @param term
+	 *            the term
+	 * @param comparison
+	 *            the comparison applied to the node of the operator, or
+	 *            {@code null} for transient terms
 	 * @return
-	 * @throws Exception
+	 * @throws IllegalArgumentException
 	 */
-	private boolean eval(NotExpressionContext ctx, Event event) throws Exception {
-		if (ctx.NOT() != null) {
-			return !eval(ctx.atomExpression(), event);
-		} else {
-			return eval(ctx.atomExpression(), event);
+	private Expression compileTemporal(ConditionTerm term, Expression comparison)
+			throws IllegalArgumentException {
+		EventId node = EventId.of(term.getTemporalNode());
+		TemporalOperator.Predicate predicate = comparison == null ? null : comparison::eval;
+		switch (term.getTemporal()) {
+		case FOR:
+			TemporalOperator.For forOp = new TemporalOperator.For(node, predicate,
+					term.getTemporalMillis());
+			operators.add(forOp);
+			return event -> forOp.isSatisfied();
+
+		case WITHIN:
+			TemporalOperator.Within within = new TemporalOperator.Within(node, predicate,
+					term.getTemporalMillis());
+			operators.add(within);
+			return event -> within.isSatisfied();
+
+		case CHANGED:
+			if (comparison != null) {
+				throw temporalError(term, "changed() cannot be compared");
+			}
+			TemporalOperator.Changed changed = new TemporalOperator.Changed(node);
+			operators.add(changed);
+			return changed::isChangedBy;
+
+		default: // RATE
+			if (term.getType() != ConditionTerm.Type.NUMBER) {
+				throw temporalError(term, "rate() must be compared with a number");
+			}
+			TemporalOperator.Rate rate = new TemporalOperator.Rate(node, term.getTemporalMillis());
+			operators.add(rate);
+			Operator op = term.getOperator();
+			double literal = (Double) term.getLiteral();
+			return event -> {
+				double r = rate.getRate();
+				return !Double.isNaN(r) && op.test(r, literal);
+			};
 		}
 	}
 
 	/**
 	 * 
-	 * @param ctx
-	 * @param event
+	 * @param term
+	 * @param message
 	 * @return
-	 * @throws Exception
 	 */
-	private boolean eval(AtomExpressionContext ctx, Event event) throws Exception {
-		if (ctx.event() != null) {
-			return eval(ctx.event(), event);
-		} else {
-			return eval(ctx.orExpression(), event);
-		}
+	private static IllegalArgumentException temporalError(ConditionTerm term, String message) {
+		return new IllegalArgumentException(term.getNode() + ": " + message);
 	}
 
 	/**
 	 * 
-	 * @param ctx
-	 * @param event
+	 * @param term
 	 * @return
-	 * @throws Exception
 	 */
-	private boolean eval(EventContext ctx, Event event) throws Exception {
-		if (ctx.stableEvent() != null) {
-			return eval(ctx.stableEvent(), event);
-		} else {
-			return eval(ctx.transientEvent(), event);
+	private Expression[] compileTerms(ConditionTerm term) {
+		ConditionTerm[] terms = term.getTerms();
+		Expression[] exprs = new Expression[terms.length];
+		for (int i = 0; i < exprs.length; i++) {
+			exprs[i] = compile(terms[i]);
 		}
+		return exprs;
 	}
 
 	/**
 	 * 
-	 * @param ctx
-	 * @param event
+	 * @param term
 	 * @return
 	 */
-	private boolean eval(TransientEventContext ctx, Event event) {
-		String eventId = event.getId();
-		String condition = ctx.getText();
-		if (eventId.startsWith(condition)) {
-			if (eventId.length() == condition.length()) { // equal
-				return true;
+	private Expression compileOr(ConditionTerm term) {
+		Expression[] exprs = compileTerms(term);
+		return event -> {
+			for (Expression expr : exprs) {
+				if (expr.eval(event)) {
+					return true;
+				}
 			}
+			return false;
+		};
+	}
 
-			if (eventId.charAt(condition.length()) == '.' || eventId.charAt(condition.length()) == '(') {
-				/*
-				 * meaning: eventId.startsWith(condition + ".") ||
-				 * eventId.startsWith(condition + "(")
-				 */
-				return true;
+	/**
+	 * 
+	 * @param term
+	 * @return
+	 */
+	private Expression compileAnd(ConditionTerm term) {
+		Expression[] exprs = compileTerms(term);
+		return event -> {
+			for (Expression expr : exprs) {
+				if (!expr.eval(event)) {
+					return false;
+				}
 			}
-		}
-
-		return false;
+			return true;
+		};
 	}
 
 	/**
 	 * 
-	 * @param ctx
+	 * @param id
 	 * @param event
 	 * @return
-	 * @throws Exception
 	 */
-	private boolean eval(StableEventContext ctx, Event event) throws Exception {
-		if (ctx.stringComparison() != null) {
-			return eval(ctx.stringComparison(), event);
-		} else if (ctx.numberComparison() != null) {
-			return eval(ctx.numberComparison(), event);
-		} else if (ctx.booleanComparison() != null) {
-			return eval(ctx.booleanComparison(), event);
-		} else { // 'unknown' comparison
-			return eval(ctx.unknownComparison(), event);
+	private static Event getEvent(EventId id, Event event) {
+		if (id == event.getEventId()) {
+			return event;
 		}
+		return Bus.getEvent(id.toString());
 	}
 
 	/**
 	 * 
-	 * @param ctx
+	 * @param id
 	 * @param event
 	 * @return
 	 */
-	private Object getEventValue(TerminalNodeContext ctx, Event event) {
-		String id = ctx.getText();
-		if (id.equals(event.getId())) {
-			return event.getSimpleValue();
-		}
-		Event e = Bus.getEvent(id);
+	private static Object getEventValue(EventId id, Event event) {
+		Event e = getEvent(id, event);
 		if (e == null) {
 			return null;
 		}
@@ -221,122 +286,94 @@ class TriggerCondition {
 
 	/**
 	 * 
-	 * @param ctx
-	 * @param event
+	 * @param term
+	 * @param type
 	 * @return
-	 * @throws Exception
 	 */
-	private boolean eval(StringComparisonContext ctx, Event event) throws Exception {
-		Object value = getEventValue(ctx.terminalNode(), event);
-
-		if (value == null) {
-			return false;
-		}
-
-		if (!(value instanceof String)) {
-			int line = ctx.getStart().getLine();
-			throw new Exception("line " + line + ": Type error: " + ctx.terminalNode().getText() + " not a String");
-		}
-
-		String literal = ctx.StringLiteral().getText();
-		literal = literal.substring(1, literal.length() - 1);
-
-		String stringValue = (String) value;
-
-		if (ctx.ET() != null) {
-			return stringValue.equals(literal);
-		} else if (ctx.NE() != null) {
-			return !stringValue.equals(literal);
-		} else if (ctx.GT() != null) {
-			return stringValue.compareTo(literal) > 0;
-		} else if (ctx.LT() != null) {
-			return stringValue.compareTo(literal) < 0;
-		} else if (ctx.GE() != null) {
-			return stringValue.compareTo(literal) >= 0;
-		} else { // LE
-			return stringValue.compareTo(literal) <= 0;
-		}
+	private static Exception typeError(ConditionTerm term, String type) {
+		return new Exception("line " + term.getLine() + ": Type error: " + term.getNode()
+				+ " not a " + type);
 	}
 
 	/**
 	 * 
-	 * @param ctx
-	 * @param event
+	 * @param term
+	 * @param id
 	 * @return
-	 * @throws Exception
 	 */
-	private boolean eval(NumberComparisonContext ctx, Event event) throws Exception {
-		Object value = getEventValue(ctx.terminalNode(), event);
-
-		if (value == null) {
-			return false;
-		}
-
-		if (!(value instanceof Number)) {
-			int line = ctx.getStart().getLine();
-			throw new Exception("line " + line + ": Type error: " + ctx.terminalNode().getText() + " not a number");
-		}
-
-		double literal = Double.parseDouble(ctx.NumberLiteral().getText());
-		double doubleValue = ((Number) value).doubleValue();
-
-		if (ctx.ET() != null) {
-			return doubleValue == literal;
-		} else if (ctx.NE() != null) {
-			return doubleValue != literal;
-		} else if (ctx.GT() != null) {
-			return doubleValue > literal;
-		} else if (ctx.LT() != null) {
-			return doubleValue < literal;
-		} else if (ctx.GE() != null) {
-			return doubleValue >= literal;
-		} else { // LE
-			return doubleValue <= literal;
-		}
+	private static Expression compileString(ConditionTerm term, EventId id) {
+		Operator op = term.getOperator();
+		String literal = (String) term.getLiteral();
+		return event -> {
+			Object value = getEventValue(id, event);
+			if (value == null) {
+				return false;
+			}
+			if (!(value instanceof String)) {
+				throw typeError(term, "String");
+			}
+			return op.test(((String) value).compareTo(literal));
+		};
 	}
 
 	/**
 	 * 
-	 * @param ctx
-	 * @param event
+	 * @param term
+	 * @param id
 	 * @return
-	 * @throws Exception
 	 */
-	private boolean eval(BooleanComparisonContext ctx, Event event) throws Exception {
-		Object value = getEventValue(ctx.terminalNode(), event);
-
-		if (value == null) {
-			return false;
-		}
-
-		if (!(value instanceof Boolean)) {
-			int line = ctx.getStart().getLine();
-			throw new Exception("line " + line + ": Type error: " + ctx.terminalNode().getText() + " not a boolean");
-		}
-
-		boolean literal = Boolean.parseBoolean(ctx.BooleanLiteral().getText());
-		boolean booleanValue = (boolean) value;
-
-		if (ctx.ET() != null) {
-			return booleanValue == literal;
-		} else { // NE
-			return booleanValue != literal;
-		}
+	private static Expression compileNumber(ConditionTerm term, EventId id) {
+		Operator op = term.getOperator();
+		double literal = (Double) term.getLiteral();
+		return event -> {
+			Event e = getEvent(id, event);
+			if (e instanceof DoubleEvent) {
+				return op.test(((DoubleEvent) e).getDoubleValue(), literal);
+			}
+			if (e instanceof LongEvent) {
+				return op.test(((LongEvent) e).getLongValue(), literal);
+			}
+			Object value = e == null ? null : e.getSimpleValue();
+			if (value == null) {
+				return false;
+			}
+			if (!(value instanceof Number)) {
+				throw typeError(term, "number");
+			}
+			return op.test(((Number) value).doubleValue(), literal);
+		};
 	}
 
 	/**
 	 * 
-	 * @param ctx
+	 * @param term
+	 * @param id
 	 * @return
 	 */
-	private boolean eval(UnknownComparisonContext ctx, Event event) {
-		Object value = getEventValue(ctx.terminalNode(), event);
+	private static Expression compileBoolean(ConditionTerm term, EventId id) {
+		boolean equal = term.getOperator() == Operator.ET;
+		boolean literal = (Boolean) term.getLiteral();
+		return event -> {
+			Object value = getEventValue(id, event);
+			if (value == null) {
+				return false;
+			}
+			if (!(value instanceof Boolean)) {
+				throw typeError(term, "boolean");
+			}
+			return ((boolean) value == literal) == equal;
+		};
+	}
 
-		if (ctx.ET() != null) {
-			return value == null;
-		} else { // NE
-			return value != null;
-		}
+	/**
+	 * 
+	 * @param term
+	 * @param id
+	 * @return
+	 */
+	private static Expression compileUnknown(ConditionTerm term, EventId id) {
+		boolean equal = term.getOperator() == Operator.ET;
+		return event -> (getEventValue(id, event) == null) == equal;
 	}
 
 }
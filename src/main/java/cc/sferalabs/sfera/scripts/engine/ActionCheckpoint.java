@@ -0,0 +1,114 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts.engine;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Checkpoint of the executions of the script actions. The script engine
+ * providers instrument the actions so that they call {@link #check()} at
+ * every loop iteration and function call, see {@link ActionInstrumenter}.
+ * <p>
+ * An execution started with {@link #enter()} can thus be stopped, even when
+ * it runs an endless loop, by cancelling it: its next checkpoint, and every
+ * following one, throws a {@link CancellationException}.
+ * </p>
+ */
+public final class ActionCheckpoint {
+
+	/**
+	 * Name of the variable holding the checkpoint in the scope of the actions
+	 */
+	static final String VARIABLE = "_checkpoint";
+
+	/**
+	 * Checkpoint bound to {@link #VARIABLE}
+	 */
+	static final ActionCheckpoint INSTANCE = new ActionCheckpoint();
+
+	private static final ThreadLocal<Cancellation> current = new ThreadLocal<>();
+
+	/**
+	 * Cancellation of the execution of an action
+	 */
+	public static final class Cancellation {
+
+		private volatile boolean cancelled = false;
+
+		/**
+		 * 
+		 */
+		private Cancellation() {
+		}
+
+		/**
+		 * Cancels the execution, which fails at its next checkpoint.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private ActionCheckpoint() {
+	}
+
+	/**
+	 * Starts a cancellable execution on the current thread.
+	 * 
+	 * @return the cancellation of the execution
+	 */
+	public static Cancellation enter() {
+		Cancellation c = new Cancellation();
+		current.set(c);
+		return c;
+	}
+
+	/**
+	 * Ends the cancellable execution on the current thread.
+	 */
+	public static void exit() {
+		current.remove();
+	}
+
+	/**
+	 * Called by the instrumented actions.
+	 * 
+	 * @return {@code true}
+	 * @throws CancellationException
+	 *             if the execution on the current thread has been cancelled
+	 */
+	public boolean check() throws CancellationException {
+		Cancellation c = current.get();
+		if (c != null && c.cancelled) {
+			throw new CancellationException("Action cancelled");
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,429 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Instruments the source of the actions so that they call the
+ * {@link ActionCheckpoint} at every loop iteration and function call:
+ * <ul>
+ * <li>the condition of {@code while} and {@code for} loops becomes
+ * {@code _checkpoint.check() && (<condition>)}, which also covers
+ * {@code do-while} loops and the loops whose body is a single statement;</li>
+ * <li>{@code _checkpoint.check();} is added at the beginning of the body of
+ * {@code for-in} and {@code for-of} loops, if it is a block, and of
+ * {@code function}s.</li>
+ * </ul>
+ * No line breaks are added, so that line numbers are preserved. Sources with
+ * unbalanced brackets are returned unchanged and left to the script engine
+ * to report.
+ */
+abstract class ActionInstrumenter {
+
+	private static final String CHECK = ActionCheckpoint.VARIABLE + ".check()";
+	private static final Set<String> REGEX_PRECEDING_WORDS = new HashSet<>(
+			Arrays.asList("return", "typeof", "instanceof", "in", "of", "new", "delete", "void",
+					"throw", "case", "do", "else", "yield"));
+
+	/**
+	 * Token types
+	 */
+	private enum Type {
+		WORD, PUNCTUATOR, LITERAL
+	}
+
+	/**
+	 * Source token
+	 */
+	private static class Token {
+
+		private final Type type;
+		private final int start;
+		private final int end;
+		private final String text;
+		private int match = -1;
+
+		/**
+		 * 
+		 * @param source
+		 * @param type
+		 * @param start
+		 * @param end
+		 */
+		private Token(String source, Type type, int start, int end) {
+			this.type = type;
+			this.start = start;
+			this.end = end;
+			this.text = source.substring(start, end);
+		}
+
+		/**
+		 * 
+		 * @param type
+		 * @param text
+		 * @return
+		 */
+		private boolean is(Type type, String text) {
+			return this.type == type && this.text.equals(text);
+		}
+	}
+
+	/**
+	 * Returns the instrumented source of the specified action.
+	 * 
+	 * @param source
+	 *            the source of the action
+	 * @return the instrumented source
+	 */
+	static String instrument(String source) {
+		List<Token> tokens = tokenize(source);
+		if (tokens == null || !matchBrackets(tokens)) {
+			return source;
+		}
+		TreeMap<Integer, String> insertions = new TreeMap<>();
+		for (int i = 0; i < tokens.size(); i++) {
+			Token t = tokens.get(i);
+			if (t.type != Type.WORD || (i > 0 && tokens.get(i - 1).is(Type.PUNCTUATOR, "."))) {
+				continue;
+			}
+			switch (t.text) {
+			case "while":
+				Token open = get(tokens, i + 1);
+				if (open != null && open.is(Type.PUNCTUATOR, "(") && open.match > i + 2) {
+					wrapCondition(tokens, i + 1, open.match, insertions);
+				}
+				break;
+
+			case "for":
+				int o = i + 1;
+				if (get(tokens, o) != null && get(tokens, o).type == Type.WORD) {
+					// 'for each' or 'for await'
+					o++;
+				}
+				open = get(tokens, o);
+				if (open != null && open.is(Type.PUNCTUATOR, "(")) {
+					instrumentFor(tokens, o, insertions);
+				}
+				break;
+
+			case "function":
+				int p = i + 1;
+				if (get(tokens, p) != null && get(tokens, p).is(Type.PUNCTUATOR, "*")) {
+					p++;
+				}
+				if (get(tokens, p) != null && get(tokens, p).type == Type.WORD) {
+					p++;
+				}
+				open = get(tokens, p);
+				if (open != null && open.is(Type.PUNCTUATOR, "(")) {
+					addToBlock(tokens, open.match + 1, insertions);
+				}
+				break;
+
+			default:
+				break;
+			}
+		}
+		if (insertions.isEmpty()) {
+			return source;
+		}
+		StringBuilder sb = new StringBuilder(source.length() + insertions.size() * 24);
+		int from = 0;
+		for (Integer at : insertions.keySet()) {
+			sb.append(source, from, at).append(insertions.get(at));
+			from = at;
+		}
+		return sb.append(source, from, source.length()).toString();
+	}
+
+	/**
+	 * 
+	 * @param tokens
+	 * @param open
+	 *            the index of the opening parenthesis of the loop header
+	 * @param insertions
+	 */
+	private static void instrumentFor(List<Token> tokens, int open,
+			TreeMap<Integer, String> insertions) {
+		int close = tokens.get(open).match;
+		List<Integer> semicolons = new ArrayList<>();
+		for (int j = open + 1; j < close; j++) {
+			Token t = tokens.get(j);
+			if (t.match > j) {
+				j = t.match;
+			} else if (t.is(Type.PUNCTUATOR, ";")) {
+				semicolons.add(j);
+			}
+		}
+		if (semicolons.size() == 2) {
+			int first = semicolons.get(0);
+			int second = semicolons.get(1);
+			if (second == first + 1) {
+				insert(insertions, tokens.get(first).end, " " + CHECK + " ");
+			} else {
+				wrapCondition(tokens, first, second, insertions);
+			}
+		} else {
+			addToBlock(tokens, close + 1, insertions);
+		}
+	}
+
+	/**
+	 * Wraps the condition between the specified tokens, excluded.
+	 * 
+	 * @param tokens
+	 * @param before
+	 * @param after
+	 * @param insertions
+	 */
+	private static void wrapCondition(List<Token> tokens, int before, int after,
+			TreeMap<Integer, String> insertions) {
+		insert(insertions, tokens.get(before).end, CHECK + " && (");
+		insert(insertions, tokens.get(after).start, ")");
+	}
+
+	/**
+	 * Adds the check at the beginning of the block starting at the specified
+	 * token, if it is an opening brace.
+	 * 
+	 * @param tokens
+	 * @param brace
+	 * @param insertions
+	 */
+	private static void addToBlock(List<Token> tokens, int brace,
+			TreeMap<Integer, String> insertions) {
+		Token t = get(tokens, brace);
+		if (t != null && t.is(Type.PUNCTUATOR, "{")) {
+			insert(insertions, t.end, CHECK + ";");
+		}
+	}
+
+	/**
+	 * 
+	 * @param insertions
+	 * @param at
+	 * @param text
+	 */
+	private static void insert(TreeMap<Integer, String> insertions, int at, String text) {
+		String prev = insertions.get(at);
+		insertions.put(at, prev == null ? text : prev + text);
+	}
+
+	/**
+	 * 
+	 * @param tokens
+	 * @param i
+	 * @return
+	 */
+	private static Token get(List<Token> tokens, int i) {
+		return i < tokens.size() ? tokens.get(i) : null;
+	}
+
+	/**
+	 * Sets the index of the matching bracket of each bracket token.
+	 * 
+	 * @param tokens
+	 * @return {@code false} if the brackets are unbalanced
+	 */
+	private static boolean matchBrackets(List<Token> tokens) {
+		Deque<Integer> open = new ArrayDeque<>();
+		for (int i = 0; i < tokens.size(); i++) {
+			Token t = tokens.get(i);
+			if (t.type != Type.PUNCTUATOR) {
+				continue;
+			}
+			String closing;
+			switch (t.text) {
+			case "(":
+			case "[":
+			case "{":
+				open.push(i);
+				continue;
+			case ")":
+				closing = "(";
+				break;
+			case "]":
+				closing = "[";
+				break;
+			case "}":
+				closing = "{";
+				break;
+			default:
+				continue;
+			}
+			if (open.isEmpty() || !tokens.get(open.peek()).text.equals(closing)) {
+				return false;
+			}
+			int o = open.pop();
+			tokens.get(o).match = i;
+			t.match = o;
+		}
+		return open.isEmpty();
+	}
+
+	/**
+	 * Splits the specified source into words, single-character punctuators
+	 * and literals, skipping white spaces and comments.
+	 * 
+	 * @param s
+	 * @return the tokens, or {@code null} if a literal or comment is not
+	 *         terminated
+	 */
+	private static List<Token> tokenize(String s) {
+		List<Token> tokens = new ArrayList<>();
+		int n = s.length();
+		int i = 0;
+		while (i < n) {
+			char c = s.charAt(i);
+			int start = i;
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+			char next = i + 1 < n ? s.charAt(i + 1) : 0;
+			if (c == '/' && next == '/') {
+				while (i < n && s.charAt(i) != '\n' && s.charAt(i) != '\r') {
+					i++;
+				}
+				continue;
+			}
+			if (c == '/' && next == '*') {
+				int end = s.indexOf("*/", i + 2);
+				if (end < 0) {
+					return null;
+				}
+				i = end + 2;
+				continue;
+			}
+			if (c == '"' || c == '\'' || c == '`') {
+				i = skipQuoted(s, i + 1, c);
+			} else if (c == '/' && isRegexAllowed(tokens)) {
+				i = skipRegex(s, i + 1);
+			} else if (Character.isJavaIdentifierStart(c)) {
+				while (i < n && Character.isJavaIdentifierPart(s.charAt(i))) {
+					i++;
+				}
+				tokens.add(new Token(s, Type.WORD, start, i));
+				continue;
+			} else if (Character.isDigit(c) || (c == '.' && Character.isDigit(next))) {
+				while (i < n && (Character.isLetterOrDigit(s.charAt(i)) || s.charAt(i) == '.')) {
+					i++;
+				}
+			} else {
+				tokens.add(new Token(s, Type.PUNCTUATOR, start, i + 1));
+				i++;
+				continue;
+			}
+			if (i < 0) {
+				return null;
+			}
+			tokens.add(new Token(s, Type.LITERAL, start, i));
+		}
+		return tokens;
+	}
+
+	/**
+	 * 
+	 * @param s
+	 * @param i
+	 *            the index following the opening quote
+	 * @param quote
+	 * @return the index following the closing quote, or -1 if not found
+	 */
+	private static int skipQuoted(String s, int i, char quote) {
+		while (i < s.length()) {
+			char c = s.charAt(i++);
+			if (c == '\\') {
+				i++;
+			} else if (c == quote) {
+				return i;
+			} else if (quote != '`' && (c == '\n' || c == '\r')) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 
+	 * @param s
+	 * @param i
+	 *            the index following the opening slash
+	 * @return the index following the flags of the regular expression, or -1
+	 *         if not terminated
+	 */
+	private static int skipRegex(String s, int i) {
+		boolean inClass = false;
+		while (i < s.length()) {
+			char c = s.charAt(i++);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				inClass = true;
+			} else if (c == ']') {
+				inClass = false;
+			} else if (c == '/' && !inClass) {
+				while (i < s.length() && Character.isJavaIdentifierPart(s.charAt(i))) {
+					i++;
+				}
+				return i;
+			} else if (c == '\n' || c == '\r') {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 
+	 * @param tokens
+	 * @return whether a slash following the specified tokens starts a regular
+	 *         expression rather than being a division
+	 */
+	private static boolean isRegexAllowed(List<Token> tokens) {
+		if (tokens.isEmpty()) {
+			return true;
+		}
+		Token last = tokens.get(tokens.size() - 1);
+		switch (last.type) {
+		case WORD:
+			return REGEX_PRECEDING_WORDS.contains(last.text);
+		case LITERAL:
+			return false;
+		default:
+			return !last.text.equals(")") && !last.text.equals("]");
+		}
+	}
+
+}
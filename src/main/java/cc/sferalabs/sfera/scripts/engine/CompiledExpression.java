@@ -0,0 +1,51 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts.engine;
+
+import java.util.Map;
+
+import javax.script.ScriptException;
+
+/**
+ * Expression compiled by a {@link ScriptEngineProvider}, which can be
+ * evaluated multiple times, also concurrently, with different bindings.
+ */
+@FunctionalInterface
+public interface CompiledExpression {
+
+	/**
+	 * Evaluates this expression in a scope taken from a pool of reusable
+	 * scopes. The bindings are removed from the scope after the evaluation.
+	 * 
+	 * @param bindings
+	 *            the bindings to add to the scope (can be {@code null})
+	 * @return the value returned by the expression
+	 * @throws ScriptException
+	 *             if an error occurs
+	 */
+	Object eval(Map<String, Object> bindings) throws ScriptException;
+
+}
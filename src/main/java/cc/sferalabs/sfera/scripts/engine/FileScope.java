@@ -0,0 +1,82 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts.engine;
+
+import javax.script.ScriptException;
+
+/**
+ * Scope of a script file, containing the file variables and the bindings of
+ * the imported libraries.
+ */
+public interface FileScope {
+
+	/**
+	 * Sets the specified variable in this scope.
+	 * 
+	 * @param key
+	 *            the variable name
+	 * @param value
+	 *            the variable value
+	 */
+	void put(String key, Object value);
+
+	/**
+	 * Imports the specified library in this scope.
+	 * 
+	 * @param library
+	 *            the library, as returned by
+	 *            {@link ScriptEngineProvider#evalLibrary(java.io.Reader)}
+	 * @throws ScriptException
+	 *             if an error occurs
+	 */
+	void importLibrary(Object library) throws ScriptException;
+
+	/**
+	 * Evaluates the specified script in this scope.
+	 * 
+	 * @param script
+	 *            the script
+	 * @throws ScriptException
+	 *             if an error occurs
+	 */
+	void eval(String script) throws ScriptException;
+
+	/**
+	 * Compiles the specified action in this scope. Variables declared in the
+	 * action are local to it, while the other ones are resolved in this
+	 * scope; whether undeclared variables assigned by the action are defined
+	 * in this scope depends on the provider. The trigger event is bound to the
+	 * {@code _e} variable.
+	 * 
+	 * @param action
+	 *            the action script
+	 * @return the compiled action
+	 * @throws ScriptException
+	 *             if an error occurs
+	 */
+	CompiledAction compile(String action) throws ScriptException;
+
+}
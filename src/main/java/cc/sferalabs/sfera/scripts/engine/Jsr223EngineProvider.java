@@ -0,0 +1,240 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.script.Bindings;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import com.google.common.io.CharStreams;
+
+/**
+ * Provider for any JSR-223 script engine supporting {@link Invocable}, e.g.
+ * GraalJS ({@code graal.js}) when available in the class path.
+ * <p>
+ * Since engine contexts are not assumed to share objects, libraries are
+ * evaluated in the scope of each file importing them and their variables are
+ * therefore not shared among files. The actions of a file are executed one at
+ * a time. Java types are exposed to the scripts as {@link Class} objects.
+ * </p>
+ * <p>
+ * Actions are instrumented to call the {@link ActionCheckpoint}.
+ * </p>
+ */
+public class Jsr223EngineProvider implements ScriptEngineProvider {
+
+	private final String name;
+	private final ScriptEngineManager manager;
+	private final BlockingQueue<ExpressionEngine> expressionEngines = new ArrayBlockingQueue<>(
+			Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Constructs a Jsr223EngineProvider.
+	 * 
+	 * @param name
+	 *            the script engine name
+	 * @param manager
+	 *            the script engine manager used to create the engines
+	 */
+	public Jsr223EngineProvider(String name, ScriptEngineManager manager) {
+		this.name = name;
+		this.manager = manager;
+	}
+
+	/**
+	 * 
+	 * @return
+	 * @throws ScriptException
+	 */
+	private ScriptEngine newEngine() throws ScriptException {
+		ScriptEngine engine = manager.getEngineByName(name);
+		if (engine == null) {
+			throw new ScriptException("Script engine '" + name + "' not found");
+		}
+		return engine;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public Object evalLibrary(Reader source) throws ScriptException {
+		try {
+			return CharStreams.toString(source);
+		} catch (IOException e) {
+			throw new ScriptException(e);
+		}
+	}
+
+	@Override
+	public FileScope newFileScope() throws ScriptException {
+		ScriptEngine engine = newEngine();
+		if (!(engine instanceof Invocable)) {
+			throw new ScriptException("Script engine '" + name + "' not invocable");
+		}
+		return new Jsr223FileScope(engine);
+	}
+
+	@Override
+	public Object eval(String script, Map<String, Object> bindings) throws ScriptException {
+		ScriptEngine engine = newEngine();
+		if (bindings != null) {
+			for (Entry<String, Object> e : bindings.entrySet()) {
+				engine.put(e.getKey(), e.getValue());
+			}
+		}
+		return engine.eval(script);
+	}
+
+	@Override
+	public CompiledExpression compileExpression(String expression) throws ScriptException {
+		// engines are not assumed to share compiled scripts, the expression
+		// is evaluated in pooled engines relying on their source caching
+		return bindings -> {
+			ExpressionEngine e = expressionEngines.poll();
+			if (e == null) {
+				e = new ExpressionEngine(newEngine());
+			}
+			try {
+				if (bindings != null) {
+					e.scope.putAll(bindings);
+				}
+				return e.engine.eval(expression);
+			} finally {
+				if (e.clear()) {
+					expressionEngines.offer(e);
+				}
+			}
+		};
+	}
+
+	@Override
+	public Object getJavaType(Class<?> clazz) throws ScriptException {
+		return clazz;
+	}
+
+	/**
+	 * Pooled engine evaluating expressions. The variables set by an
+	 * evaluation are removed when it ends.
+	 */
+	private static class ExpressionEngine {
+
+		private final ScriptEngine engine;
+		private final Bindings scope;
+		private final Set<String> keys;
+
+		/**
+		 * 
+		 * @param engine
+		 */
+		private ExpressionEngine(ScriptEngine engine) {
+			this.engine = engine;
+			this.scope = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+			this.keys = new HashSet<>(scope.keySet());
+		}
+
+		/**
+		 * 
+		 * @return {@code false} if some variables could not be removed
+		 */
+		private boolean clear() {
+			boolean cleared = true;
+			for (String key : new ArrayList<>(scope.keySet())) {
+				if (!keys.contains(key)) {
+					scope.remove(key);
+					cleared &= !scope.containsKey(key);
+				}
+			}
+			return cleared;
+		}
+	}
+
+	/**
+	 * File scope backed by a dedicated engine. Actions are compiled into
+	 * global functions invoked through {@link Invocable}.
+	 */
+	private static class Jsr223FileScope implements FileScope {
+
+		private final ScriptEngine engine;
+		private int actions;
+
+		/**
+		 * 
+		 * @param engine
+		 */
+		private Jsr223FileScope(ScriptEngine engine) {
+			this.engine = engine;
+			engine.put(ActionCheckpoint.VARIABLE, ActionCheckpoint.INSTANCE);
+		}
+
+		@Override
+		public synchronized void put(String key, Object value) {
+			engine.put(key, value);
+		}
+
+		@Override
+		public synchronized void importLibrary(Object library) throws ScriptException {
+			engine.eval((String) library);
+		}
+
+		@Override
+		public synchronized void eval(String script) throws ScriptException {
+			engine.eval(script);
+		}
+
+		@Override
+		public synchronized CompiledAction compile(String action) throws ScriptException {
+			String function = "_action" + actions++;
+			engine.eval("function " + function + "(_e) {" + ActionInstrumenter.instrument(action)
+					+ "\n}");
+			return event -> {
+				synchronized (this) {
+					try {
+						((Invocable) engine).invokeFunction(function, event);
+					} catch (NoSuchMethodException e) {
+						throw new ScriptException(e);
+					}
+				}
+			};
+		}
+	}
+
+}
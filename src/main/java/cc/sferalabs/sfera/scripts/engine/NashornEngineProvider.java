@@ -0,0 +1,292 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts.engine;
+
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import jdk.nashorn.api.scripting.JSObject;
+import jdk.nashorn.api.scripting.NashornException;
+
+import cc.sferalabs.sfera.core.Configuration;
+import cc.sferalabs.sfera.core.SystemNode;
+import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.scripts.ScriptsEngine;
+
+/**
+ * Default script engine provider, based on Nashorn. Libraries are evaluated
+ * once and their variables are shared among all the files importing them.
+ * <p>
+ * By default each execution of an action runs in its own global scope, on
+ * which the file and library variables are bound, so that variables created
+ * by an action are discarded when it ends. If the
+ * {@code scripts_shared_scope} configuration parameter is set to
+ * {@code true}, actions are instead compiled into functions of the file
+ * global scope, where undeclared variables assigned by an action are
+ * defined; in this case the actions of a file are executed one at a time.
+ * </p>
+ * <p>
+ * Actions are instrumented to call the {@link ActionCheckpoint}.
+ * </p>
+ */
+public class NashornEngineProvider implements ScriptEngineProvider {
+
+	public static final String NAME = "nashorn";
+
+	private final ScriptEngine runtimeEngine = ScriptsEngine.getNewNashornEngine();
+	private final BlockingQueue<Bindings> expressionScopes = new ArrayBlockingQueue<>(
+			Runtime.getRuntime().availableProcessors());
+	private final boolean sharedScope;
+
+	/**
+	 * Constructs a NashornEngineProvider.
+	 */
+	public NashornEngineProvider() {
+		Configuration config = SystemNode.getInstance() == null ? null
+				: SystemNode.getConfiguration();
+		this.sharedScope = config != null && config.get("scripts_shared_scope", false);
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Object evalLibrary(Reader source) throws ScriptException {
+		return ScriptsEngine.getBindings(source);
+	}
+
+	@Override
+	public FileScope newFileScope() throws ScriptException {
+		return new NashornFileScope(ScriptsEngine.getNewNashornEngine(), sharedScope);
+	}
+
+	@Override
+	public Object eval(String script, Map<String, Object> bindings) throws ScriptException {
+		Bindings b = runtimeEngine.createBindings();
+		if (bindings != null) {
+			b.putAll(bindings);
+		}
+		return runtimeEngine.eval(script, b);
+	}
+
+	@Override
+	public CompiledExpression compileExpression(String expression) throws ScriptException {
+		CompiledScript compiled = ((Compilable) runtimeEngine).compile(expression);
+		return bindings -> {
+			Bindings b = expressionScopes.poll();
+			if (b == null) {
+				b = runtimeEngine.createBindings();
+			}
+			try {
+				if (bindings != null) {
+					b.putAll(bindings);
+				}
+				return compiled.eval(b);
+			} finally {
+				// the variables defined by the expression are removed as well;
+				// a scope with undeletable ones is not reused
+				for (String key : b.keySet()) {
+					b.remove(key);
+				}
+				if (b.isEmpty()) {
+					expressionScopes.offer(b);
+				}
+			}
+		};
+	}
+
+	@Override
+	public Object getJavaType(Class<?> clazz) throws ScriptException {
+		ScriptEngine engine = ScriptsEngine.getNewNashornEngine();
+		String script = "var _javaType = Java.type('" + clazz.getName() + "');";
+		Bindings bindings = engine.createBindings();
+		engine.eval(script, bindings);
+		return bindings.get("_javaType");
+	}
+
+	/**
+	 * Nashorn file scope. The properties of the imported libraries are bound
+	 * on the file global scope so that they are read and written in place.
+	 * Actions are compiled into functions evaluated in pooled global scopes,
+	 * on which the properties of the file global scope are bound in turn, or,
+	 * if the scope is shared, in the file global scope itself.
+	 */
+	private static class NashornFileScope implements FileScope {
+
+		private final ScriptEngine engine;
+		private final Bindings scope;
+		private final boolean shared;
+		private final BlockingQueue<ActionScope> actionScopes = new ArrayBlockingQueue<>(
+				Runtime.getRuntime().availableProcessors());
+
+		/**
+		 * 
+		 * @param engine
+		 * @param shared
+		 */
+		private NashornFileScope(ScriptEngine engine, boolean shared) {
+			this.engine = engine;
+			this.scope = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+			this.shared = shared;
+			scope.put(ActionCheckpoint.VARIABLE, ActionCheckpoint.INSTANCE);
+		}
+
+		@Override
+		public void put(String key, Object value) {
+			scope.put(key, value);
+		}
+
+		@Override
+		public void importLibrary(Object library) throws ScriptException {
+			bindProperties(scope, library);
+		}
+
+		@Override
+		public void eval(String script) throws ScriptException {
+			engine.eval(script);
+		}
+
+		@Override
+		public CompiledAction compile(String action) throws ScriptException {
+			String function = "(function(_e) {" + ActionInstrumenter.instrument(action) + "\n})";
+			if (shared) {
+				JSObject f = (JSObject) engine.eval(function);
+				return event -> {
+					synchronized (this) {
+						call(f, event);
+					}
+				};
+			}
+			CompiledScript compiled = ((Compilable) engine).compile(function);
+			return event -> {
+				ActionScope as = actionScopes.poll();
+				if (as == null) {
+					as = new ActionScope();
+				}
+				try {
+					call(as.getFunction(compiled), event);
+				} finally {
+					if (as.clear()) {
+						actionScopes.offer(as);
+					}
+				}
+			};
+		}
+
+		/**
+		 * 
+		 * @param function
+		 * @param event
+		 * @throws ScriptException
+		 */
+		private static void call(JSObject function, Event event) throws ScriptException {
+			try {
+				function.call(null, event);
+			} catch (NashornException e) {
+				ScriptException se = new ScriptException(e.getMessage(), e.getFileName(),
+						e.getLineNumber(), e.getColumnNumber());
+				se.initCause(e);
+				throw se;
+			}
+		}
+
+		/**
+		 * 
+		 * @param target
+		 * @param source
+		 */
+		private static void bindProperties(Bindings target, Object source) {
+			JSObject object = (JSObject) target.get("Object");
+			JSObject bindProperties = (JSObject) object.getMember("bindProperties");
+			bindProperties.call(object, target, source);
+		}
+
+		/**
+		 * Global scope of the executions of the actions, bound to the file
+		 * global scope. The variables created by an execution are removed
+		 * when it ends.
+		 */
+		private class ActionScope {
+
+			private final Bindings bindings = engine.createBindings();
+			private final Map<CompiledScript, JSObject> functions = new IdentityHashMap<>();
+			private final Set<String> keys;
+
+			/**
+			 * 
+			 */
+			private ActionScope() {
+				bindProperties(bindings, scope);
+				keys = new HashSet<>(bindings.keySet());
+			}
+
+			/**
+			 * 
+			 * @param compiled
+			 * @return
+			 * @throws ScriptException
+			 */
+			private JSObject getFunction(CompiledScript compiled) throws ScriptException {
+				JSObject function = functions.get(compiled);
+				if (function == null) {
+					function = (JSObject) compiled.eval(bindings);
+					functions.put(compiled, function);
+				}
+				return function;
+			}
+
+			/**
+			 * 
+			 * @return {@code false} if some variables could not be removed
+			 */
+			private boolean clear() {
+				boolean cleared = true;
+				for (String key : bindings.keySet()) {
+					if (!keys.contains(key)) {
+						bindings.remove(key);
+						cleared &= !bindings.containsKey(key);
+					}
+				}
+				return cleared;
+			}
+		}
+	}
+
+}
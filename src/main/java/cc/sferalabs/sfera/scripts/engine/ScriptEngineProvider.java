@@ -0,0 +1,131 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts.engine;
+
+import java.io.Reader;
+import java.util.Map;
+
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Interface to be implemented by script engine backends. A provider loads
+ * libraries, creates the scopes of script files and evaluates stand-alone
+ * scripts.
+ */
+public interface ScriptEngineProvider {
+
+	/**
+	 * Returns the provider for the JSR-223 script engine with the specified
+	 * name. If the name is {@code null} or equal to
+	 * {@value NashornEngineProvider#NAME} or if no engine with the specified
+	 * name is available, the Nashorn provider is returned.
+	 * 
+	 * @param name
+	 *            the script engine name
+	 * @param manager
+	 *            the script engine manager whose global scope is shared by the
+	 *            engines
+	 * @return the script engine provider
+	 */
+	static ScriptEngineProvider of(String name, ScriptEngineManager manager) {
+		if (name != null && !name.equals(NashornEngineProvider.NAME)) {
+			if (manager.getEngineByName(name) != null) {
+				return new Jsr223EngineProvider(name, manager);
+			}
+			Logger logger = LoggerFactory.getLogger(ScriptEngineProvider.class);
+			logger.error("Script engine '{}' not found. Using {}", name,
+					NashornEngineProvider.NAME);
+		}
+		return new NashornEngineProvider();
+	}
+
+	/**
+	 * @return the name of the script engine
+	 */
+	String getName();
+
+	/**
+	 * Evaluates the library provided by the specified reader.
+	 * 
+	 * @param source
+	 *            the library source
+	 * @return the library, to be passed to
+	 *         {@link FileScope#importLibrary(Object)}
+	 * @throws ScriptException
+	 *             if an error occurs
+	 */
+	Object evalLibrary(Reader source) throws ScriptException;
+
+	/**
+	 * Creates a new scope for a script file.
+	 * 
+	 * @return the new file scope
+	 * @throws ScriptException
+	 *             if an error occurs
+	 */
+	FileScope newFileScope() throws ScriptException;
+
+	/**
+	 * Evaluates the specified script in a new scope.
+	 * 
+	 * @param script
+	 *            the script to evaluate
+	 * @param bindings
+	 *            the bindings to add to the scope (can be {@code null})
+	 * @return the value returned by the script
+	 * @throws ScriptException
+	 *             if an error occurs
+	 */
+	Object eval(String script, Map<String, Object> bindings) throws ScriptException;
+
+	/**
+	 * Compiles the specified expression. Since the scopes the expression is
+	 * evaluated in are reused, the expression must not declare variables.
+	 * 
+	 * @param expression
+	 *            the expression to compile
+	 * @return the compiled expression
+	 * @throws ScriptException
+	 *             if an error occurs
+	 */
+	CompiledExpression compileExpression(String expression) throws ScriptException;
+
+	/**
+	 * Returns the object representing the specified Java type in the scripts.
+	 * 
+	 * @param clazz
+	 *            the class
+	 * @return the Java type
+	 * @throws ScriptException
+	 *             if an error occurs
+	 */
+	Object getJavaType(Class<?> clazz) throws ScriptException;
+
+}
@@ -0,0 +1,549 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts.parser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.AndExpressionContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.AtomExpressionContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.BooleanComparisonContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.EventContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.NotExpressionContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.NumberComparisonContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.OrExpressionContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.StableEventContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.StringComparisonContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TransientEventContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TriggerContext;
+import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.UnknownComparisonContext;
+
+/**
+ * Serializable representation of a trigger condition, built from its parse
+ * tree and independent of it.
+ */
+public final class ConditionTerm implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Pattern TEMPORAL = Pattern
+			.compile("(.+)\\.(for|within|changed|rate)\\(([^()]*)\\)");
+	private static final Pattern NUMBER = Pattern.compile("[-+]?[0-9]+(\\.[0-9]+)?");
+
+	/**
+	 * Term types
+	 */
+	public enum Type {
+		/** Disjunction of the sub-terms */
+		OR,
+		/** Conjunction of the sub-terms */
+		AND,
+		/** Negation of the sub-term */
+		NOT,
+		/** Transient event */
+		TRANSIENT,
+		/** Comparison with a string literal */
+		STRING,
+		/** Comparison with a number literal */
+		NUMBER,
+		/** Comparison with a boolean literal */
+		BOOLEAN,
+		/** Comparison with 'unknown' */
+		UNKNOWN
+	}
+
+	/**
+	 * Comparison operators
+	 */
+	public enum Operator {
+		ET, NE, GT, LT, GE, LE;
+
+		/**
+		 * @param c
+		 *            the result of the comparison of the value with the
+		 *            literal
+		 * @return whether the comparison result satisfies this operator
+		 */
+		public boolean test(int c) {
+			switch (this) {
+			case ET:
+				return c == 0;
+			case NE:
+				return c != 0;
+			case GT:
+				return c > 0;
+			case LT:
+				return c < 0;
+			case GE:
+				return c >= 0;
+			default: // LE
+				return c <= 0;
+			}
+		}
+
+		/**
+		 * @param value
+		 *            the value
+		 * @param literal
+		 *            the literal to compare the value with
+		 * @return whether the comparison is satisfied
+		 */
+		public boolean test(double value, double literal) {
+			switch (this) {
+			case ET:
+				return value == literal;
+			case NE:
+				return value != literal;
+			case GT:
+				return value > literal;
+			case LT:
+				return value < literal;
+			case GE:
+				return value >= literal;
+			default: // LE
+				return value <= literal;
+			}
+		}
+	}
+
+	/**
+	 * Temporal operators, applicable to an event term as its last sub-node.
+	 * The last sub-node of a term is a temporal operator only if its parameter
+	 * is a valid time, i.e. a positive integer number of milliseconds, or, for
+	 * {@code changed}, if it has no parameters; otherwise it is part of the
+	 * node ID.
+	 */
+	public enum Temporal {
+		/**
+		 * {@code node.for(ms)}: the condition on the node has held for the
+		 * specified time
+		 */
+		FOR,
+		/**
+		 * {@code node.within(ms)}: the condition on the node has been met by
+		 * an event in the specified time
+		 */
+		WITHIN,
+		/**
+		 * {@code node.changed()}: the node value has changed
+		 */
+		CHANGED,
+		/**
+		 * {@code node.rate(ms)}: rate of change per second of the node value
+		 * in the specified time
+		 */
+		RATE
+	}
+
+	private final Type type;
+	private final int line;
+	private final ConditionTerm[] terms;
+	private final String node;
+	private final Operator operator;
+	private final Serializable literal;
+
+	/**
+	 * 
+	 * @param type
+	 * @param line
+	 * @param terms
+	 */
+	private ConditionTerm(Type type, int line, ConditionTerm... terms) {
+		this.type = type;
+		this.line = line;
+		this.terms = terms;
+		this.node = null;
+		this.operator = null;
+		this.literal = null;
+	}
+
+	/**
+	 * 
+	 * @param type
+	 * @param line
+	 * @param node
+	 * @param operator
+	 * @param literal
+	 */
+	private ConditionTerm(Type type, int line, String node, Operator operator,
+			Serializable literal) {
+		this.type = type;
+		this.line = line;
+		this.terms = null;
+		this.node = node;
+		this.operator = operator;
+		this.literal = literal;
+	}
+
+	/**
+	 * Builds the term representing the specified trigger condition.
+	 * 
+	 * @param ctx
+	 *            the trigger condition context
+	 * @return the built term
+	 */
+	public static ConditionTerm of(TriggerContext ctx) {
+		return of(ctx.orExpression());
+	}
+
+	/**
+	 * @return the type of this term
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the script line this term starts at
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * @return the sub-terms of an {@code OR}, {@code AND} or {@code NOT}
+	 *         term, {@code null} otherwise
+	 */
+	public ConditionTerm[] getTerms() {
+		return terms;
+	}
+
+	/**
+	 * @return the node ID of an event term, {@code null} otherwise
+	 */
+	public String getNode() {
+		return node;
+	}
+
+	/**
+	 * @return the operator of a comparison term, {@code null} otherwise
+	 */
+	public Operator getOperator() {
+		return operator;
+	}
+
+	/**
+	 * @return the literal of a {@code STRING} ({@code String}),
+	 *         {@code NUMBER} ({@code Double}) or {@code BOOLEAN}
+	 *         ({@code Boolean}) term, {@code null} otherwise
+	 */
+	public Serializable getLiteral() {
+		return literal;
+	}
+
+	/**
+	 * @return the temporal operator of an event term, or {@code null} if the
+	 *         term has no temporal operator
+	 */
+	public Temporal getTemporal() {
+		Matcher m = matchTemporal();
+		return m == null ? null : Temporal.valueOf(m.group(2).toUpperCase());
+	}
+
+	/**
+	 * @return the node ID the temporal operator of an event term is applied
+	 *         to, or {@code null} if the term has no temporal operator
+	 */
+	public String getTemporalNode() {
+		Matcher m = matchTemporal();
+		return m == null ? null : m.group(1);
+	}
+
+	/**
+	 * @return the time parameter, in milliseconds, of the temporal operator
+	 *         of an event term, or {@code -1} if the term has no temporal
+	 *         operator with a time parameter
+	 */
+	public long getTemporalMillis() {
+		Matcher m = matchTemporal();
+		return m == null || m.group(3).isEmpty() ? -1 : Long.parseLong(m.group(3));
+	}
+
+	/**
+	 * Returns whether the last sub-node of this event term has the form of a
+	 * temporal operator with a numeric parameter that is not a valid time,
+	 * e.g. {@code node.for(0)}, so that it cannot be told whether it is meant
+	 * as a temporal operator or as part of the node ID.
+	 * 
+	 * @return whether this term is ambiguous
+	 */
+	public boolean isAmbiguous() {
+		if (node == null) {
+			return false;
+		}
+		Matcher m = TEMPORAL.matcher(node);
+		return m.matches() && !m.group(2).equals("changed") && NUMBER.matcher(m.group(3)).matches()
+				&& !isValidTime(m.group(3));
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	private Matcher matchTemporal() {
+		if (node == null) {
+			return null;
+		}
+		Matcher m = TEMPORAL.matcher(node);
+		if (!m.matches()) {
+			return null;
+		}
+		if (m.group(2).equals("changed")) {
+			return m.group(3).isEmpty() ? m : null;
+		}
+		return isValidTime(m.group(3)) ? m : null;
+	}
+
+	/**
+	 * 
+	 * @param param
+	 * @return
+	 */
+	private static boolean isValidTime(String param) {
+		if (!param.matches("[0-9]+")) {
+			return false;
+		}
+		try {
+			return Long.parseLong(param) > 0;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the node IDs of all the event terms of this term, i.e. the
+	 * triggers of the condition. Terms with a temporal operator other than
+	 * {@link Temporal#FOR} are triggered by the node they are applied to;
+	 * {@code FOR} terms are triggered when the specified time elapses.
+	 * 
+	 * @return the node IDs of the event terms
+	 */
+	public List<String> getTriggers() {
+		List<String> triggers = new ArrayList<>();
+		addTriggers(triggers);
+		return triggers;
+	}
+
+	/**
+	 * 
+	 * @param triggers
+	 */
+	private void addTriggers(List<String> triggers) {
+		if (terms != null) {
+			for (ConditionTerm term : terms) {
+				term.addTriggers(triggers);
+			}
+		} else {
+			Temporal temporal = getTemporal();
+			if (temporal == null || temporal == Temporal.FOR) {
+				triggers.add(node);
+			} else {
+				triggers.add(getTemporalNode());
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(OrExpressionContext ctx) {
+		List<AndExpressionContext> ands = ctx.andExpression();
+		if (ands.size() == 1) {
+			return of(ands.get(0));
+		}
+		ConditionTerm[] terms = new ConditionTerm[ands.size()];
+		for (int i = 0; i < terms.length; i++) {
+			terms[i] = of(ands.get(i));
+		}
+		return new ConditionTerm(Type.OR, getLine(ctx), terms);
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(AndExpressionContext ctx) {
+		List<NotExpressionContext> nots = ctx.notExpression();
+		if (nots.size() == 1) {
+			return of(nots.get(0));
+		}
+		ConditionTerm[] terms = new ConditionTerm[nots.size()];
+		for (int i = 0; i < terms.length; i++) {
+			terms[i] = of(nots.get(i));
+		}
+		return new ConditionTerm(Type.AND, getLine(ctx), terms);
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(NotExpressionContext ctx) {
+		ConditionTerm term = of(ctx.atomExpression());
+		if (ctx.NOT() != null) {
+			return new ConditionTerm(Type.NOT, getLine(ctx), term);
+		} else {
+			return term;
+		}
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(AtomExpressionContext ctx) {
+		if (ctx.event() != null) {
+			return of(ctx.event());
+		} else {
+			return of(ctx.orExpression());
+		}
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(EventContext ctx) {
+		if (ctx.stableEvent() != null) {
+			return of(ctx.stableEvent());
+		} else {
+			return of(ctx.transientEvent());
+		}
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(TransientEventContext ctx) {
+		return new ConditionTerm(Type.TRANSIENT, getLine(ctx), ctx.getText(), null, null);
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(StableEventContext ctx) {
+		if (ctx.stringComparison() != null) {
+			return of(ctx.stringComparison());
+		} else if (ctx.numberComparison() != null) {
+			return of(ctx.numberComparison());
+		} else if (ctx.booleanComparison() != null) {
+			return of(ctx.booleanComparison());
+		} else { // 'unknown' comparison
+			return of(ctx.unknownComparison());
+		}
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(StringComparisonContext ctx) {
+		String text = ctx.StringLiteral().getText();
+		String literal = text.substring(1, text.length() - 1);
+		return new ConditionTerm(Type.STRING, getLine(ctx), ctx.terminalNode().getText(),
+				getOperator(ctx), literal);
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(NumberComparisonContext ctx) {
+		Double literal = Double.parseDouble(ctx.NumberLiteral().getText());
+		return new ConditionTerm(Type.NUMBER, getLine(ctx), ctx.terminalNode().getText(),
+				getOperator(ctx), literal);
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(BooleanComparisonContext ctx) {
+		Boolean literal = Boolean.parseBoolean(ctx.BooleanLiteral().getText());
+		return new ConditionTerm(Type.BOOLEAN, getLine(ctx), ctx.terminalNode().getText(),
+				getOperator(ctx), literal);
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static ConditionTerm of(UnknownComparisonContext ctx) {
+		return new ConditionTerm(Type.UNKNOWN, getLine(ctx), ctx.terminalNode().getText(),
+				getOperator(ctx), null);
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static int getLine(ParserRuleContext ctx) {
+		return ctx.getStart().getLine();
+	}
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return
+	 */
+	private static Operator getOperator(ParserRuleContext ctx) {
+		if (ctx.getToken(SferaScriptGrammarParser.ET, 0) != null) {
+			return Operator.ET;
+		} else if (ctx.getToken(SferaScriptGrammarParser.NE, 0) != null) {
+			return Operator.NE;
+		} else if (ctx.getToken(SferaScriptGrammarParser.GT, 0) != null) {
+			return Operator.GT;
+		} else if (ctx.getToken(SferaScriptGrammarParser.LT, 0) != null) {
+			return Operator.LT;
+		} else if (ctx.getToken(SferaScriptGrammarParser.GE, 0) != null) {
+			return Operator.GE;
+		} else {
+			return Operator.LE;
+		}
+	}
+
+}
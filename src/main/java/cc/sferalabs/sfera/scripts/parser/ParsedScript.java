@@ -0,0 +1,91 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+/**
+ * 
+ */
+package cc.sferalabs.sfera.scripts.parser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializable outline of a parsed script file, containing everything needed
+ * to load the file without parsing it again.
+ */
+public class ParsedScript implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	final List<Block> imports = new ArrayList<>();
+	Block init;
+	final List<RuleBlock> rules = new ArrayList<>();
+
+	/**
+	 * Import path, init script or rule action together with the line it
+	 * starts at
+	 */
+	static class Block implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final String text;
+		final int line;
+
+		/**
+		 * 
+		 * @param text
+		 * @param line
+		 */
+		Block(String text, int line) {
+			this.text = text;
+			this.line = line;
+		}
+	}
+
+	/**
+	 * Rule condition, action and execution policy
+	 */
+	static class RuleBlock extends Block {
+
+		private static final long serialVersionUID = 2L;
+
+		final ConditionTerm condition;
+		final String policy;
+
+		/**
+		 * 
+		 * @param condition
+		 * @param action
+		 * @param line
+		 * @param policy
+		 *            the execution policy annotation, or {@code null}
+		 */
+		RuleBlock(ConditionTerm condition, String action, int line, String policy) {
+			super(action, line);
+			this.condition = condition;
+			this.policy = policy;
+		}
+	}
+
+}
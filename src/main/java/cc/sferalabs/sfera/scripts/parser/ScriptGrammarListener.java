@@ -29,24 +29,24 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import javax.script.Bindings;
-import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
+import cc.sferalabs.sfera.events.EventId;
+import cc.sferalabs.sfera.scripts.ExecutionPolicy;
 import cc.sferalabs.sfera.scripts.Rule;
+import cc.sferalabs.sfera.scripts.engine.FileScope;
 import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarBaseListener;
 import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.ImportLineContext;
 import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.InitContext;
 import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.RuleLineContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.StableEventContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TransientEventContext;
-import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TriggerContext;
 
 /**
  *
@@ -57,31 +57,37 @@ import cc.sferalabs.sfera.scripts.parser.antlr.SferaScriptGrammarParser.TriggerC
  */
 public class ScriptGrammarListener extends SferaScriptGrammarBaseListener {
 
+	private static final Pattern POLICY_ANNOTATION = Pattern.compile("//\\s*@policy\\s+(.*?)\\s*");
+	private static final int MAX_ANNOTATIONS_LENGTH = 4096;
+
 	private final Path scriptFile;
-	private final ScriptEngine engine;
-	private final Bindings fileScope;
-	private final Map<String, Bindings> libraries;
+	private final FileScope scope;
+	/**
+	 * Imported libraries are shared among script files, possibly loaded in
+	 * parallel: importing them and evaluating code that can access them is
+	 * done holding the lock on this map.
+	 */
+	private final Map<String, Object> libraries;
 
-	private final List<Bindings> imports = new ArrayList<>();
-	private final HashMap<String, Set<Rule>> triggerRulesMap = new HashMap<String, Set<Rule>>();
+	private final List<Object> imports = new ArrayList<>();
+	private final Set<String> importedLibraries = new HashSet<>();
+	private final HashMap<EventId, Set<Rule>> triggerRulesMap = new HashMap<EventId, Set<Rule>>();
 	private final List<Object> errors = new ArrayList<>();
-
-	private Rule currentRule;
+	private final ParsedScript parsedScript = new ParsedScript();
 
 	/**
 	 * 
 	 * @param scriptFile
 	 *            the path of the script file
 	 * @param libraries
-	 *            the map of library-files and respective bindings
-	 * @param engine
-	 *            the script engine
+	 *            the map of library-files and respective libraries
+	 * @param scope
+	 *            the scope of the script file
 	 */
-	public ScriptGrammarListener(Path scriptFile, Map<String, Bindings> libraries,
-			ScriptEngine engine) {
+	public ScriptGrammarListener(Path scriptFile, Map<String, Object> libraries,
+			FileScope scope) {
 		this.scriptFile = scriptFile;
-		this.engine = engine;
-		this.fileScope = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+		this.scope = scope;
 		this.libraries = libraries;
 	}
 
@@ -92,19 +98,67 @@ public class ScriptGrammarListener extends SferaScriptGrammarBaseListener {
 		return errors;
 	}
 
+	/**
+	 * @return the paths of the imported libraries, including the ones not
+	 *         found
+	 */
+	public Set<String> getImportedLibraries() {
+		return importedLibraries;
+	}
+
+	/**
+	 * Returns the outline of the script file walked by this listener, which
+	 * can be later loaded using {@link #load(ParsedScript)} instead of parsing
+	 * the file again.
+	 * 
+	 * @return the outline of the walked script file
+	 */
+	public ParsedScript getParsedScript() {
+		return parsedScript;
+	}
+
+	/**
+	 * Loads the specified outline of a previously parsed script file, as if
+	 * this listener had walked the file.
+	 * 
+	 * @param script
+	 *            the outline of the script file
+	 */
+	public void load(ParsedScript script) {
+		for (ParsedScript.Block imp : script.imports) {
+			importLibrary(imp.text, imp.line);
+		}
+		if (script.init != null) {
+			init(script.init.text, script.init.line);
+		}
+		for (ParsedScript.RuleBlock rule : script.rules) {
+			addRule(rule.condition, rule.text, rule.line, rule.policy);
+		}
+	}
+
 	/**
 	 * @return the trigger-rules map
 	 */
-	public HashMap<String, Set<Rule>> getTriggerRulesMap() {
+	public HashMap<EventId, Set<Rule>> getTriggerRulesMap() {
 		return triggerRulesMap;
 	}
 
 	@Override
 	public void enterImportLine(ImportLineContext ctx) {
-		try {
-			String text = ctx.getText();
-			String importPath = text.substring(text.indexOf(' ') + 1, text.length() - 1).trim();
+		String text = ctx.getText();
+		String importPath = text.substring(text.indexOf(' ') + 1, text.length() - 1).trim();
+		int line = ctx.getStart().getLine();
+		parsedScript.imports.add(new ParsedScript.Block(importPath, line));
+		importLibrary(importPath, line);
+	}
 
+	/**
+	 * 
+	 * @param importPath
+	 * @param line
+	 */
+	private void importLibrary(String importPath, int line) {
+		try {
 			Path libPath;
 			try {
 				if (importPath.startsWith("/")) {
@@ -117,16 +171,19 @@ public class ScriptGrammarListener extends SferaScriptGrammarBaseListener {
 				throw new Exception("Illegal import path: " + importPath, e);
 			}
 
-			Bindings lib = libraries.get(libPath.normalize().toString());
+			String libKey = libPath.normalize().toString();
+			importedLibraries.add(libKey);
+			Object lib = libraries.get(libKey);
 			if (lib != null) {
 				imports.add(lib);
+				synchronized (libraries) {
+					scope.importLibrary(lib);
+				}
 			} else {
-				int line = ctx.getStart().getLine();
 				errors.add("line " + line + " - import error: file '" + libPath + "' not found");
 			}
 
 		} catch (Throwable e) {
-			int line = ctx.getStart().getLine();
 			errors.add(new Exception("line " + line + ": " + e.getMessage(), e));
 		}
 	}
@@ -134,31 +191,35 @@ public class ScriptGrammarListener extends SferaScriptGrammarBaseListener {
 	@Override
 	public void enterInit(InitContext ctx) {
 		String action = getAction(ctx.Script());
-		try {
-			Bindings b = engine.createBindings();
-			for (Bindings imp : imports) {
-				b.putAll(imp);
-			}
-			b.putAll(fileScope);
-
-			engine.eval(action, b);
-
-			for (Entry<String, Object> e : b.entrySet()) {
-				String key = e.getKey();
-				Object val = e.getValue();
-				boolean replaced = false;
-				for (Bindings imp : imports) {
-					if (imp.replace(key, val) != null) {
-						replaced = true;
-						break;
-					}
-				}
-				if (!replaced) {
-					fileScope.put(key, val);
-				}
+		int line = ctx.getStart().getLine();
+		parsedScript.init = new ParsedScript.Block(action, line);
+		init(action, line);
+	}
+
+	/**
+	 * 
+	 * @param action
+	 * @param line
+	 */
+	private void init(String action, int line) {
+		if (imports.isEmpty()) {
+			evalInit(action, line);
+		} else {
+			synchronized (libraries) {
+				evalInit(action, line);
 			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param action
+	 * @param line
+	 */
+	private void evalInit(String action, int line) {
+		try {
+			scope.eval(action);
 		} catch (Throwable e) {
-			int line = ctx.getStart().getLine();
 			if (e instanceof ScriptException) {
 				if (((ScriptException) e).getLineNumber() >= 0) {
 					line += ((ScriptException) e).getLineNumber() - 1;
@@ -170,17 +231,79 @@ public class ScriptGrammarListener extends SferaScriptGrammarBaseListener {
 
 	@Override
 	public void enterRuleLine(RuleLineContext ctx) {
-		currentRule = null;
-		TriggerContext condition = ctx.trigger();
+		ConditionTerm condition = ConditionTerm.of(ctx.trigger());
 		String action = getAction(ctx.action().Script());
+		int line = ctx.getStart().getLine();
+		String policy = getPolicyAnnotation(ctx.getStart());
+		parsedScript.rules.add(new ParsedScript.RuleBlock(condition, action, line, policy));
+		addRule(condition, action, line, policy);
+	}
+
+	/**
+	 * Returns the value of the {@code @policy} annotation in the line
+	 * comments immediately preceding the specified rule start token.
+	 * 
+	 * @param start
+	 *            the start token of the rule
+	 * @return the value of the annotation, or {@code null} if not present
+	 */
+	private String getPolicyAnnotation(Token start) {
+		int end = start.getStartIndex();
+		if (end <= 0) {
+			return null;
+		}
+		int from = Math.max(0, end - MAX_ANNOTATIONS_LENGTH);
+		String before = start.getInputStream().getText(Interval.of(from, end - 1));
+		String[] lines = before.split("\\r?\\n", -1);
+		// the last line is the text preceding the rule on its same line
+		for (int i = lines.length - 2; i >= 0; i--) {
+			String l = lines[i].trim();
+			if (!l.startsWith("//")) {
+				break;
+			}
+			Matcher m = POLICY_ANNOTATION.matcher(l);
+			if (m.matches()) {
+				return m.group(1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 
+	 * @param condition
+	 * @param action
+	 * @param line
+	 * @param policy
+	 */
+	private void addRule(ConditionTerm condition, String action, int line, String policy) {
+		ExecutionPolicy executionPolicy = ExecutionPolicy.CONCURRENT;
+		if (policy != null) {
+			try {
+				executionPolicy = ExecutionPolicy.of(policy);
+			} catch (IllegalArgumentException e) {
+				errors.add(new Exception("line " + line + ": " + e.getMessage(), e));
+				return;
+			}
+		}
+		Rule rule;
 		try {
-			currentRule = new Rule(condition, action, scriptFile, engine, fileScope, imports);
+			rule = new Rule(condition, action, scriptFile, scope, executionPolicy);
 		} catch (ScriptException e) {
-			int line = ctx.getStart().getLine();
 			if (e.getLineNumber() >= 0) {
 				line += e.getLineNumber() - 1;
 			}
 			errors.add(new Exception("line " + line + ": " + e.getMessage(), e));
+			return;
+		}
+		for (String trigger : condition.getTriggers()) {
+			EventId eventId = EventId.of(trigger);
+			Set<Rule> rules = triggerRulesMap.get(eventId);
+			if (rules == null) {
+				rules = new HashSet<Rule>();
+				triggerRulesMap.put(eventId, rules);
+			}
+			rules.add(rule);
 		}
 	}
 
@@ -193,29 +316,4 @@ public class ScriptGrammarListener extends SferaScriptGrammarBaseListener {
 		String action = script.getText();
 		return action.substring(1, action.length() - 1);
 	}
-
-	@Override
-	public void enterStableEvent(StableEventContext ctx) {
-		addTrigger(ctx.getChild(0).getChild(0).getText());
-	}
-
-	@Override
-	public void enterTransientEvent(TransientEventContext ctx) {
-		addTrigger(ctx.getChild(0).getText());
-	}
-
-	/**
-	 * 
-	 * @param id
-	 */
-	private void addTrigger(String id) {
-		if (currentRule != null) {
-			Set<Rule> rules = triggerRulesMap.get(id);
-			if (rules == null) {
-				rules = new HashSet<Rule>();
-				triggerRulesMap.put(id, rules);
-			}
-			rules.add(currentRule);
-		}
-	}
 }
@@ -0,0 +1,116 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts.primitives;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe counter, available to scripts as {@code Counter}.
+ * 
+ * <pre>
+ * var count = new Counter();
+ * count.increment();
+ * </pre>
+ */
+public class Counter {
+
+	private final AtomicLong value;
+
+	/**
+	 * Constructs a counter with initial value 0.
+	 */
+	public Counter() {
+		this(0);
+	}
+
+	/**
+	 * Constructs a counter with the specified initial value.
+	 * 
+	 * @param initialValue
+	 *            the initial value
+	 */
+	public Counter(long initialValue) {
+		this.value = new AtomicLong(initialValue);
+	}
+
+	/**
+	 * Increments the counter by one.
+	 * 
+	 * @return the updated value
+	 */
+	public long increment() {
+		return value.incrementAndGet();
+	}
+
+	/**
+	 * Decrements the counter by one.
+	 * 
+	 * @return the updated value
+	 */
+	public long decrement() {
+		return value.decrementAndGet();
+	}
+
+	/**
+	 * Adds the specified delta to the counter.
+	 * 
+	 * @param delta
+	 *            the value to add
+	 * @return the updated value
+	 */
+	public long add(long delta) {
+		return value.addAndGet(delta);
+	}
+
+	/**
+	 * @return the current value
+	 */
+	public long get() {
+		return value.get();
+	}
+
+	/**
+	 * Sets the counter to the specified value.
+	 * 
+	 * @param newValue
+	 *            the new value
+	 */
+	public void set(long newValue) {
+		value.set(newValue);
+	}
+
+	/**
+	 * Sets the counter to 0.
+	 * 
+	 * @return the value before the reset
+	 */
+	public long reset() {
+		return value.getAndSet(0);
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(get());
+	}
+
+}
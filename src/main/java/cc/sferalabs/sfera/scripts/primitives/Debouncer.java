@@ -0,0 +1,124 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts.primitives;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cc.sferalabs.sfera.core.services.TasksManager;
+import cc.sferalabs.sfera.scripts.TimerWheel;
+
+/**
+ * Thread-safe debouncer, available to scripts as {@code Debouncer}. A task
+ * submitted to the debouncer is run only once no other tasks have been
+ * submitted for the specified delay; each submission replaces the pending
+ * task. Delays are measured by the shared {@link TimerWheel}, hence with its
+ * resolution, and tasks are run through the {@link TasksManager}.
+ * 
+ * <pre>
+ * var motion = new Debouncer(30000);
+ * 
+ * sensor.motion == true : {
+ *     lights.on();
+ *     motion.submit(function() {
+ *         lights.off();
+ *     });
+ * }
+ * </pre>
+ */
+public class Debouncer {
+
+	private static final Logger logger = LoggerFactory.getLogger(Debouncer.class);
+
+	private final long delayMillis;
+	private TimerWheel.Timeout pending;
+
+	/**
+	 * Constructs a debouncer with the specified delay.
+	 * 
+	 * @param delayMillis
+	 *            the delay, in milliseconds
+	 */
+	public Debouncer(long delayMillis) {
+		this.delayMillis = delayMillis;
+	}
+
+	/**
+	 * Schedules the specified task to be run after the delay, cancelling the
+	 * pending one, if any.
+	 * 
+	 * @param task
+	 *            the task
+	 */
+	public synchronized void submit(Runnable task) {
+		cancel();
+		TimerWheel.Timeout[] t = new TimerWheel.Timeout[1];
+		t[0] = TimerWheel.INSTANCE.schedule(delayMillis, () -> elapsed(t[0], task));
+		pending = t[0];
+	}
+
+	/**
+	 * Runs the specified task, unless its timeout has been cancelled or
+	 * replaced in the meantime.
+	 * 
+	 * @param t
+	 * @param task
+	 */
+	private void elapsed(TimerWheel.Timeout t, Runnable task) {
+		synchronized (this) {
+			if (pending != t) {
+				return;
+			}
+			pending = null;
+		}
+		TasksManager.execute("script-debouncer", () -> {
+			try {
+				task.run();
+			} catch (Throwable e) {
+				logger.error("Error executing debounced task", e);
+			}
+		});
+	}
+
+	/**
+	 * Cancels the pending task, if any.
+	 * 
+	 * @return {@code true} if a pending task was cancelled
+	 */
+	public synchronized boolean cancel() {
+		if (pending == null) {
+			return false;
+		}
+		pending.cancel();
+		pending = null;
+		return true;
+	}
+
+	/**
+	 * @return whether a task is pending
+	 */
+	public synchronized boolean isPending() {
+		return pending != null;
+	}
+
+}
@@ -0,0 +1,95 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts.primitives;
+
+/**
+ * Thread-safe exponentially weighted moving average, available to scripts as
+ * {@code Ewma}. Each new sample {@code x} updates the average as
+ * {@code avg = avg + alpha * (x - avg)}; the first sample initializes it.
+ * 
+ * <pre>
+ * var avg = new Ewma(0.1);
+ * 
+ * sensor.temp : {
+ *     log.info("Average: " + avg.update(_e.value));
+ * }
+ * </pre>
+ */
+public class Ewma {
+
+	private final double alpha;
+	private double average = Double.NaN;
+
+	/**
+	 * Constructs an average with the specified smoothing factor.
+	 * 
+	 * @param alpha
+	 *            the smoothing factor, greater than 0 and not greater than 1;
+	 *            higher values discount older samples faster
+	 * @throws IllegalArgumentException
+	 *             if {@code alpha} is out of range
+	 */
+	public Ewma(double alpha) throws IllegalArgumentException {
+		if (!(alpha > 0 && alpha <= 1)) {
+			throw new IllegalArgumentException("alpha must be in (0, 1]");
+		}
+		this.alpha = alpha;
+	}
+
+	/**
+	 * Adds a sample to the average.
+	 * 
+	 * @param value
+	 *            the sample
+	 * @return the updated average
+	 */
+	public synchronized double update(double value) {
+		if (Double.isNaN(average)) {
+			average = value;
+		} else {
+			average += alpha * (value - average);
+		}
+		return average;
+	}
+
+	/**
+	 * @return the current average, or {@code NaN} if no samples have been
+	 *         added
+	 */
+	public synchronized double get() {
+		return average;
+	}
+
+	/**
+	 * Discards all the samples.
+	 */
+	public synchronized void reset() {
+		average = Double.NaN;
+	}
+
+	@Override
+	public String toString() {
+		return Double.toString(get());
+	}
+
+}
@@ -0,0 +1,124 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts.primitives;
+
+/**
+ * Thread-safe comparator with hysteresis, available to scripts as
+ * {@code Hysteresis}. Its state becomes {@code true} when a value reaches the
+ * high threshold and {@code false} when a value reaches the low threshold;
+ * values in between leave it unchanged.
+ * 
+ * <pre>
+ * var tooHot = new Hysteresis(24.5, 25.5);
+ * 
+ * sensor.temp : {
+ *     if (tooHot.update(_e.value) &amp;&amp; tooHot.isChanged()) {
+ *         fan.on();
+ *     }
+ * }
+ * </pre>
+ */
+public class Hysteresis {
+
+	private final double low;
+	private final double high;
+	private boolean state;
+	private boolean changed;
+
+	/**
+	 * Constructs a comparator with the specified thresholds and initial state
+	 * {@code false}.
+	 * 
+	 * @param low
+	 *            the low threshold
+	 * @param high
+	 *            the high threshold
+	 * @throws IllegalArgumentException
+	 *             if {@code low} is greater than {@code high}
+	 */
+	public Hysteresis(double low, double high) throws IllegalArgumentException {
+		this(low, high, false);
+	}
+
+	/**
+	 * Constructs a comparator with the specified thresholds and initial
+	 * state.
+	 * 
+	 * @param low
+	 *            the low threshold
+	 * @param high
+	 *            the high threshold
+	 * @param initialState
+	 *            the initial state
+	 * @throws IllegalArgumentException
+	 *             if {@code low} is greater than {@code high}
+	 */
+	public Hysteresis(double low, double high, boolean initialState)
+			throws IllegalArgumentException {
+		if (low > high) {
+			throw new IllegalArgumentException("low threshold greater than high threshold");
+		}
+		this.low = low;
+		this.high = high;
+		this.state = initialState;
+	}
+
+	/**
+	 * Compares the specified value with the thresholds, updating the state.
+	 * 
+	 * @param value
+	 *            the value
+	 * @return the updated state
+	 */
+	public synchronized boolean update(double value) {
+		boolean previous = state;
+		if (value >= high) {
+			state = true;
+		} else if (value <= low) {
+			state = false;
+		}
+		changed = state != previous;
+		return state;
+	}
+
+	/**
+	 * @return the current state
+	 */
+	public synchronized boolean get() {
+		return state;
+	}
+
+	/**
+	 * @return whether the state was changed by the last call to
+	 *         {@link #update(double)}
+	 */
+	public synchronized boolean isChanged() {
+		return changed;
+	}
+
+	@Override
+	public String toString() {
+		return Boolean.toString(get());
+	}
+
+}
@@ -0,0 +1,221 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts.primitives;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe aggregator of the samples added in a sliding time window,
+ * available to scripts as {@code MovingWindow}. Sum, average, min and max
+ * are computed in constant amortized time. The window holds at most
+ * {@link #DEFAULT_MAX_SIZE} samples, unless a different limit is specified:
+ * when full, the oldest sample is discarded to make room for a new one.
+ * 
+ * <pre>
+ * var lastMinute = new MovingWindow(60000);
+ * 
+ * meter.power : {
+ *     lastMinute.add(_e.value);
+ *     if (lastMinute.getAverage() &gt; 3000) {
+ *         // ...
+ *     }
+ * }
+ * </pre>
+ */
+public class MovingWindow {
+
+	/**
+	 * Default max number of samples in a window
+	 */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	private final long windowNanos;
+	private final int maxSize;
+	private final Deque<Sample> samples = new ArrayDeque<>();
+	private final Deque<Sample> mins = new ArrayDeque<>();
+	private final Deque<Sample> maxs = new ArrayDeque<>();
+	private double sum;
+
+	/**
+	 * 
+	 */
+	private static class Sample {
+
+		private final long time;
+		private final double value;
+
+		/**
+		 * 
+		 * @param time
+		 * @param value
+		 */
+		private Sample(long time, double value) {
+			this.time = time;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Constructs a window of the specified duration.
+	 * 
+	 * @param windowMillis
+	 *            the duration of the window, in milliseconds
+	 * @throws IllegalArgumentException
+	 *             if {@code windowMillis} is not positive
+	 */
+	public MovingWindow(long windowMillis) throws IllegalArgumentException {
+		this(windowMillis, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Constructs a window of the specified duration holding at most the
+	 * specified number of samples.
+	 * 
+	 * @param windowMillis
+	 *            the duration of the window, in milliseconds
+	 * @param maxSize
+	 *            the max number of samples in the window
+	 * @throws IllegalArgumentException
+	 *             if {@code windowMillis} or {@code maxSize} is not positive
+	 */
+	public MovingWindow(long windowMillis, int maxSize) throws IllegalArgumentException {
+		if (windowMillis <= 0) {
+			throw new IllegalArgumentException("window must be positive");
+		}
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("max size must be positive");
+		}
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Adds a sample to the window.
+	 * 
+	 * @param value
+	 *            the sample
+	 */
+	public synchronized void add(double value) {
+		long now = System.nanoTime();
+		evict(now);
+		if (samples.size() >= maxSize) {
+			removeOldest();
+		}
+		Sample s = new Sample(now, value);
+		samples.addLast(s);
+		sum += value;
+		while (!mins.isEmpty() && mins.peekLast().value >= value) {
+			mins.pollLast();
+		}
+		mins.addLast(s);
+		while (!maxs.isEmpty() && maxs.peekLast().value <= value) {
+			maxs.pollLast();
+		}
+		maxs.addLast(s);
+	}
+
+	/**
+	 * @return the number of samples in the window
+	 */
+	public synchronized int getCount() {
+		evict(System.nanoTime());
+		return samples.size();
+	}
+
+	/**
+	 * @return the sum of the samples in the window
+	 */
+	public synchronized double getSum() {
+		evict(System.nanoTime());
+		return sum;
+	}
+
+	/**
+	 * @return the average of the samples in the window, or {@code NaN} if the
+	 *         window is empty
+	 */
+	public synchronized double getAverage() {
+		evict(System.nanoTime());
+		return samples.isEmpty() ? Double.NaN : sum / samples.size();
+	}
+
+	/**
+	 * @return the minimum of the samples in the window, or {@code NaN} if the
+	 *         window is empty
+	 */
+	public synchronized double getMin() {
+		evict(System.nanoTime());
+		return mins.isEmpty() ? Double.NaN : mins.peekFirst().value;
+	}
+
+	/**
+	 * @return the maximum of the samples in the window, or {@code NaN} if the
+	 *         window is empty
+	 */
+	public synchronized double getMax() {
+		evict(System.nanoTime());
+		return maxs.isEmpty() ? Double.NaN : maxs.peekFirst().value;
+	}
+
+	/**
+	 * Discards all the samples.
+	 */
+	public synchronized void reset() {
+		samples.clear();
+		mins.clear();
+		maxs.clear();
+		sum = 0;
+	}
+
+	/**
+	 * Removes the samples older than the window.
+	 * 
+	 * @param now
+	 */
+	private void evict(long now) {
+		while (!samples.isEmpty() && now - samples.peekFirst().time > windowNanos) {
+			removeOldest();
+		}
+		if (samples.isEmpty()) {
+			// clear the accumulated rounding errors
+			sum = 0;
+		}
+	}
+
+	/**
+	 * Removes the oldest sample.
+	 */
+	private void removeOldest() {
+		Sample s = samples.pollFirst();
+		sum -= s.value;
+		if (mins.peekFirst() == s) {
+			mins.pollFirst();
+		}
+		if (maxs.peekFirst() == s) {
+			maxs.pollFirst();
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts.primitives;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe token bucket rate limiter, available to scripts as
+ * {@code RateLimiter}. Permits are replenished at a fixed rate up to a
+ * maximum burst.
+ * 
+ * <pre>
+ * var notifications = new RateLimiter(1 / 60, 3);
+ * 
+ * alarm.zone : {
+ *     if (notifications.tryAcquire()) {
+ *         // send notification
+ *     }
+ * }
+ * </pre>
+ */
+public class RateLimiter {
+
+	private final double permitsPerNano;
+	private final double burst;
+	private double permits;
+	private long lastRefill;
+
+	/**
+	 * Constructs a rate limiter with a burst of one permit.
+	 * 
+	 * @param permitsPerSecond
+	 *            the rate at which permits are replenished
+	 * @throws IllegalArgumentException
+	 *             if {@code permitsPerSecond} is not positive
+	 */
+	public RateLimiter(double permitsPerSecond) throws IllegalArgumentException {
+		this(permitsPerSecond, 1);
+	}
+
+	/**
+	 * Constructs a rate limiter with the specified rate and burst. The
+	 * limiter is initially full.
+	 * 
+	 * @param permitsPerSecond
+	 *            the rate at which permits are replenished
+	 * @param burst
+	 *            the max number of permits that can be acquired at once
+	 * @throws IllegalArgumentException
+	 *             if {@code permitsPerSecond} or {@code burst} are not
+	 *             positive
+	 */
+	public RateLimiter(double permitsPerSecond, int burst) throws IllegalArgumentException {
+		if (!(permitsPerSecond > 0) || burst <= 0) {
+			throw new IllegalArgumentException("rate and burst must be positive");
+		}
+		this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.burst = burst;
+		this.permits = burst;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Acquires a permit if available.
+	 * 
+	 * @return {@code true} if the permit was acquired, {@code false}
+	 *         otherwise
+	 */
+	public boolean tryAcquire() {
+		return tryAcquire(1);
+	}
+
+	/**
+	 * Acquires the specified number of permits if available.
+	 * 
+	 * @param n
+	 *            the number of permits
+	 * @return {@code true} if the permits were acquired, {@code false}
+	 *         otherwise
+	 */
+	public synchronized boolean tryAcquire(int n) {
+		refill();
+		if (permits >= n) {
+			permits -= n;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of permits currently available
+	 */
+	public synchronized double getAvailablePermits() {
+		refill();
+		return permits;
+	}
+
+	/**
+	 * 
+	 */
+	private void refill() {
+		long now = System.nanoTime();
+		permits = Math.min(burst, permits + (now - lastRefill) * permitsPerNano);
+		lastRefill = now;
+	}
+
+}
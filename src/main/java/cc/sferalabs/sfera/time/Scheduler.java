@@ -29,6 +29,8 @@ import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
 import static org.quartz.TriggerBuilder.newTrigger;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -77,6 +79,11 @@ public class Scheduler extends Node implements AutoStartService {
 		return instance;
 	}
 
+	@Override
+	public Collection<Class<? extends AutoStartService>> getDependencies() {
+		return Collections.emptyList();
+	}
+
 	@Override
 	public void init() throws Exception {
 		// The quartz scheduler is only initialized when the first job is
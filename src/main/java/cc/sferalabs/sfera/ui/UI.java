@@ -25,6 +25,9 @@
  */
 package cc.sferalabs.sfera.ui;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import cc.sferalabs.sfera.core.services.AutoStartService;
 import cc.sferalabs.sfera.events.Bus;
 import cc.sferalabs.sfera.events.Node;
@@ -48,6 +51,11 @@ public class UI extends Node implements AutoStartService {
 		super("ui");
 	}
 
+	@Override
+	public Collection<Class<? extends AutoStartService>> getDependencies() {
+		return Collections.emptyList();
+	}
+
 	@Override
 	public void init() throws Exception {
 		INSTANCE = this;
@@ -0,0 +1,136 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.web;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects statistics about the compression of data sent to clients.
+ */
+public class CompressionStats {
+
+	/**
+	 * Statistics of the gzip-encoded HTTP responses
+	 */
+	public static final CompressionStats HTTP = new CompressionStats("http");
+
+	/**
+	 * Statistics of the WebSocket messages compressed with the
+	 * permessage-deflate extension
+	 */
+	public static final CompressionStats WEBSOCKET = new CompressionStats("websocket");
+
+	private final String name;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder bytesIn = new LongAdder();
+	private final LongAdder bytesOut = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+
+	/**
+	 * 
+	 * @param name
+	 */
+	private CompressionStats(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records the compression of a payload.
+	 * 
+	 * @param bytes
+	 *            number of uncompressed bytes
+	 * @param nanos
+	 *            time spent compressing, in nanoseconds
+	 */
+	public void addUncompressed(long bytes, long nanos) {
+		count.increment();
+		bytesIn.add(bytes);
+		this.nanos.add(nanos);
+	}
+
+	/**
+	 * Records the size of compressed data.
+	 * 
+	 * @param bytes
+	 *            number of compressed bytes
+	 */
+	public void addCompressed(long bytes) {
+		bytesOut.add(bytes);
+	}
+
+	/**
+	 * @return the name of these statistics
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of compressed payloads, i.e. HTTP responses or
+	 *         WebSocket messages
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the total number of uncompressed bytes
+	 */
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	/**
+	 * @return the total number of compressed bytes
+	 */
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	/**
+	 * @return the ratio between compressed and uncompressed bytes, or 1 if
+	 *         nothing has been compressed yet
+	 */
+	public double getRatio() {
+		long in = getBytesIn();
+		if (in == 0) {
+			return 1;
+		}
+		return (double) getBytesOut() / in;
+	}
+
+	/**
+	 * @return the total time spent compressing, in milliseconds
+	 */
+	public long getTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d compressed, %d bytes -> %d bytes (ratio %.3f), %d ms", name, getCount(),
+				getBytesIn(), getBytesOut(), getRatio(), getTimeMillis());
+	}
+
+}
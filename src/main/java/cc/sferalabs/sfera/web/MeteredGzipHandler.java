@@ -0,0 +1,83 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.web;
+
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+
+/**
+ * {@link GzipHandler} recording the compression statistics in
+ * {@link CompressionStats#HTTP}.
+ */
+class MeteredGzipHandler extends GzipHandler {
+
+	@Override
+	public Deflater getDeflater(Request request, long content_length) {
+		Deflater deflater = super.getDeflater(request, content_length);
+		if (deflater == null || deflater instanceof MeteredDeflater) {
+			return deflater;
+		}
+		deflater.end();
+		return new MeteredDeflater(getCompressionLevel());
+	}
+
+	@Override
+	public void recycle(Deflater deflater) {
+		if (deflater instanceof MeteredDeflater) {
+			MeteredDeflater md = (MeteredDeflater) deflater;
+			CompressionStats.HTTP.addUncompressed(md.getBytesRead(), md.nanos);
+			CompressionStats.HTTP.addCompressed(md.getBytesWritten());
+			md.nanos = 0;
+		}
+		super.recycle(deflater);
+	}
+
+	/**
+	 * {@link Deflater} keeping track of the time spent deflating.
+	 */
+	private static class MeteredDeflater extends Deflater {
+
+		private long nanos;
+
+		/**
+		 * 
+		 * @param level
+		 */
+		MeteredDeflater(int level) {
+			super(level, true);
+		}
+
+		@Override
+		public int deflate(byte[] b, int off, int len, int flush) {
+			long start = System.nanoTime();
+			try {
+				return super.deflate(b, off, len, flush);
+			} finally {
+				nanos += System.nanoTime() - start;
+			}
+		}
+	}
+
+}
@@ -33,8 +33,11 @@ import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchProviderException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.zip.Deflater;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
@@ -46,6 +49,7 @@ import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.server.session.FileSessionDataStoreFactory;
 import org.eclipse.jetty.server.session.NullSessionDataStore;
 import org.eclipse.jetty.server.session.SessionCache;
@@ -62,9 +66,11 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cc.sferalabs.sfera.console.Console;
 import cc.sferalabs.sfera.core.Configuration;
 import cc.sferalabs.sfera.core.SystemNode;
 import cc.sferalabs.sfera.core.services.AutoStartService;
+import cc.sferalabs.sfera.scripts.ScriptsEngine;
 import cc.sferalabs.sfera.web.api.http.servlets.CommandServlet;
 import cc.sferalabs.sfera.web.api.http.servlets.ConnectServlet;
 import cc.sferalabs.sfera.web.api.http.servlets.EventServlet;
@@ -86,6 +92,7 @@ import cc.sferalabs.sfera.web.api.http.servlets.files.MoveFilesServlet;
 import cc.sferalabs.sfera.web.api.http.servlets.files.ReadFileServlet;
 import cc.sferalabs.sfera.web.api.http.servlets.files.UploadFilesServlet;
 import cc.sferalabs.sfera.web.api.http.servlets.files.WriteFileServlet;
+import cc.sferalabs.sfera.web.api.http.servlets.scripts.ScriptsStatsServlet;
 import cc.sferalabs.sfera.web.api.websockets.ApiWebSocketServlet;
 
 /**
@@ -110,6 +117,11 @@ public class WebServer implements AutoStartService {
 	private static Server server;
 	private static ServletContextHandler contexts;
 
+	@Override
+	public Collection<Class<? extends AutoStartService>> getDependencies() {
+		return Collections.singletonList(ScriptsEngine.class);
+	}
+
 	@Override
 	public void init() throws Exception {
 		Configuration config = SystemNode.getConfiguration();
@@ -203,7 +215,16 @@ public class WebServer implements AutoStartService {
 		contexts.addFilter(AuthenticationFilter.class, "/*", null);
 		contexts.addServlet(DefaultErrorServlet.class, "/*");
 
+		if (config.get("http_gzip", true)) {
+			GzipHandler gzipHandler = new MeteredGzipHandler();
+			gzipHandler.setMinGzipSize(config.get("http_gzip_min_size", 512));
+			gzipHandler.setCompressionLevel(config.get("http_gzip_level", Deflater.DEFAULT_COMPRESSION));
+			gzipHandler.addIncludedMethods("POST");
+			contexts.setGzipHandler(gzipHandler);
+		}
+
 		registerApiServlets();
+		Console.addHandler(WebConsoleCommandHandler.INSTANCE);
 
 		try {
 			server.start();
@@ -315,6 +336,9 @@ public class WebServer implements AutoStartService {
 		addServlet(AddAccessServlet.class, AddAccessServlet.PATH);
 		addServlet(RemoveAccessServlet.class, RemoveAccessServlet.PATH);
 		addServlet(UpdateAccessServlet.class, UpdateAccessServlet.PATH);
+
+		// scripts
+		addServlet(ScriptsStatsServlet.class, ScriptsStatsServlet.PATH);
 	}
 
 	/**
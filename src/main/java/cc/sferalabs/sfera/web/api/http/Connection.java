@@ -64,10 +64,24 @@ public class Connection {
 	 *            the nodes IDs specification
 	 */
 	public void subscribe(String nodes) {
+		subscribe(nodes, null);
+	}
+
+	/**
+	 * Creates a subscription to the specified nodes, resuming from the specified
+	 * sequence number if possible.
+	 * 
+	 * @param nodes
+	 *            the nodes IDs specification
+	 * @param seq
+	 *            the sequence number of the last event received by the client,
+	 *            or {@code null} to start from the current state
+	 */
+	public void subscribe(String nodes, Long seq) {
 		if (subscription != null) {
 			subscription.destroy();
 		}
-		subscription = new PollingSubscription(nodes, id);
+		subscription = new PollingSubscription(nodes, id, seq);
 	}
 
 	/**
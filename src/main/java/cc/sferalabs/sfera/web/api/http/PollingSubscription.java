@@ -24,13 +24,16 @@ package cc.sferalabs.sfera.web.api.http;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import cc.sferalabs.sfera.core.SystemNode;
 import cc.sferalabs.sfera.events.Bus;
 import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.EventsReplay;
 import cc.sferalabs.sfera.web.ConnectionEventIdSpecListener;
 import cc.sferalabs.sfera.web.api.http.servlets.SubscribeServlet;
 
@@ -47,6 +50,9 @@ public class PollingSubscription extends ConnectionEventIdSpecListener {
 	private final BlockingQueue<Event> changes = new LinkedBlockingQueue<Event>();
 	private long lastAckTs;
 	private Map<String, Event> lastPolled = new HashMap<String, Event>();
+	private final int snapshotChunkSize;
+	private Iterator<Event> snapshot;
+	private long seq;
 
 	/**
 	 * Constructs a PollingSubscription.
@@ -56,11 +62,24 @@ public class PollingSubscription extends ConnectionEventIdSpecListener {
 	 * 
 	 * @param connectionId
 	 *            the connection ID
+	 * @param since
+	 *            the sequence number of the last event received by the client,
+	 *            if not {@code null} and the subsequent events are still
+	 *            available, only these events will be returned instead of the
+	 *            current state
 	 */
-	PollingSubscription(String spec, String connectionId) {
+	PollingSubscription(String spec, String connectionId, Long since) {
 		super(spec, connectionId);
-		for (Event e : Bus.getCurrentState().values()) {
-			process(e);
+		this.snapshotChunkSize = Math.max(1, SystemNode.getConfiguration().get("api_snapshot_chunk_size", 500));
+		EventsReplay missed = since == null ? null : Bus.getEventsAfter(since);
+		if (missed != null) {
+			this.seq = missed.getSequence();
+			for (Event e : missed.getEvents()) {
+				process(e);
+			}
+		} else {
+			this.seq = Bus.getSequence();
+			this.snapshot = Bus.getCurrentEvents().iterator();
 		}
 	}
 
@@ -72,6 +91,11 @@ public class PollingSubscription extends ConnectionEventIdSpecListener {
 	 * previous one.
 	 * </p>
 	 * <p>
+	 * The current state of the subscribed nodes is returned first, in chunks
+	 * of at most {@code api_snapshot_chunk_size} events per call, together with
+	 * the events occurred in the meantime.
+	 * </p>
+	 * <p>
 	 * The collection will be empty if the timeout expires before any new event
 	 * is collected.
 	 * </p>
@@ -98,9 +122,27 @@ public class PollingSubscription extends ConnectionEventIdSpecListener {
 				timeout = 0;
 			}
 		}
+		if (snapshot != null) {
+			while (map.size() < snapshotChunkSize && snapshot.hasNext()) {
+				Event e = snapshot.next();
+				if (matches(e)) {
+					map.put(e.getId(), e);
+				}
+			}
+			if (!snapshot.hasNext()) {
+				snapshot = null;
+			}
+			if (map.size() > 0) {
+				timeout = 0;
+			}
+		}
 		Event e = changes.poll(timeout, unit);
 		while (e != null) {
 			map.put(e.getId(), e);
+			long s = Bus.getSequence(e);
+			if (s > seq) {
+				seq = s;
+			}
 			e = changes.poll();
 		}
 
@@ -110,6 +152,21 @@ public class PollingSubscription extends ConnectionEventIdSpecListener {
 		return map.values();
 	}
 
+	/**
+	 * Returns the sequence number of the last event returned by
+	 * {@link #pollChanges(long, long, TimeUnit)}, to be used by the client to
+	 * resume the subscription.
+	 * 
+	 * @return the sequence number of the last event returned, or -1 if the
+	 *         current state has not been completely returned yet
+	 */
+	public synchronized long getSequence() {
+		if (snapshot != null) {
+			return -1;
+		}
+		return seq;
+	}
+
 	@Override
 	protected void handleEvent(Event event) {
 		changes.add(event);
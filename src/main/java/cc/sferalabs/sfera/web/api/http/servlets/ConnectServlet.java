@@ -31,6 +31,7 @@ import javax.servlet.http.HttpSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cc.sferalabs.sfera.events.Bus;
 import cc.sferalabs.sfera.web.api.http.Connection;
 import cc.sferalabs.sfera.web.api.http.ConnectionsSet;
 import cc.sferalabs.sfera.web.api.http.HttpResponse;
@@ -67,6 +68,7 @@ public class ConnectServlet extends AuthenticatedUserServlet {
 		connections.put(connection);
 		String cid = connection.getId();
 		logger.debug("Connected - session '{}' connection '{}'", sessionId, cid);
+		resp.put("epoch", Bus.getEpoch());
 		resp.send("cid", cid);
 	}
 
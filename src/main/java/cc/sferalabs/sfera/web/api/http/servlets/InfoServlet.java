@@ -23,12 +23,15 @@
 package cc.sferalabs.sfera.web.api.http.servlets;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 
+import cc.sferalabs.sfera.core.BootProfiler;
 import cc.sferalabs.sfera.core.Plugin;
 import cc.sferalabs.sfera.core.Plugins;
 import cc.sferalabs.sfera.core.SystemNode;
@@ -60,6 +63,20 @@ public class InfoServlet extends AuthenticatedUserServlet {
 			plugins.put(plugin.getId(), plugProp);
 		}
 		resp.put("plugins", plugins);
+		Map<String, Object> boot = new HashMap<>();
+		boot.put("time", BootProfiler.getBootMillis());
+		List<Map<String, Object>> phases = new ArrayList<>();
+		for (BootProfiler.Phase p : BootProfiler.getPhases()) {
+			Map<String, Object> phase = new HashMap<>();
+			phase.put("name", p.getName());
+			phase.put("thread", p.getThread());
+			phase.put("start", p.getStartMillis());
+			phase.put("wall", p.getWallMillis());
+			phase.put("cpu", p.getCpuMillis());
+			phases.add(phase);
+		}
+		boot.put("phases", phases);
+		resp.put("boot", boot);
 		resp.send();
 	}
 
@@ -32,6 +32,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import cc.sferalabs.sfera.events.Bus;
 import cc.sferalabs.sfera.events.Event;
 import cc.sferalabs.sfera.web.api.ErrorMessage;
 import cc.sferalabs.sfera.web.api.http.Connection;
@@ -87,6 +88,11 @@ public class StateServlet extends ConnectionRequiredApiServlet {
 			for (Event ev : changes) {
 				nodes.put(ev.getId(), ev.getValue());
 			}
+			long seq = subscription.getSequence();
+			if (seq >= 0) {
+				resp.put("seq", seq);
+				resp.put("epoch", Bus.getEpoch());
+			}
 			resp.sendResult(nodes);
 		} catch (InterruptedException e) {
 			resp.sendServerError("Interrupted");
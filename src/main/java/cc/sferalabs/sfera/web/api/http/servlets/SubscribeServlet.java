@@ -30,6 +30,7 @@ import javax.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cc.sferalabs.sfera.events.Bus;
 import cc.sferalabs.sfera.web.api.http.Connection;
 import cc.sferalabs.sfera.web.api.http.HttpResponse;
 import cc.sferalabs.sfera.web.api.http.MissingRequiredParamException;
@@ -54,7 +55,15 @@ public class SubscribeServlet extends ConnectionRequiredApiServlet {
 			Connection connection) throws ServletException, IOException {
 		try {
 			String nodes = getRequiredParameter("nodes", req, resp);
-			connection.subscribe(nodes);
+			Long seq = null;
+			String seqParam = req.getParameter("seq");
+			if (seqParam != null && Bus.getEpoch().equals(req.getParameter("epoch"))) {
+				try {
+					seq = Long.parseLong(seqParam);
+				} catch (NumberFormatException e) {
+				}
+			}
+			connection.subscribe(nodes, seq);
 			logger.debug("Subscribed - session '{}' connection '{}' nodes: {}",
 					req.getSession(false).getId(), connection.getId(), nodes);
 			resp.sendResult("ok");
@@ -0,0 +1,80 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.web.api.http.servlets.scripts;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.json.JSONObject;
+
+import cc.sferalabs.sfera.scripts.Rule;
+import cc.sferalabs.sfera.scripts.RuleStats;
+import cc.sferalabs.sfera.scripts.ScriptsEngine;
+import cc.sferalabs.sfera.web.api.http.HttpResponse;
+import cc.sferalabs.sfera.web.api.http.servlets.ApiServlet;
+import cc.sferalabs.sfera.web.api.http.servlets.AuthorizedAdminApiServlet;
+
+/**
+ * API servlet returning the execution statistics of the script rules.
+ */
+@SuppressWarnings("serial")
+public class ScriptsStatsServlet extends AuthorizedAdminApiServlet {
+
+	public static final String PATH = ApiServlet.PATH + "scripts/stats";
+
+	@Override
+	protected void processAuthorizedRequest(HttpServletRequest req, HttpResponse resp)
+			throws ServletException, IOException {
+		List<Rule> rules = new ArrayList<>(ScriptsEngine.getRules());
+		rules.sort(Comparator.comparingDouble((Rule r) -> r.getStats().getTotalMillis())
+				.reversed());
+		List<JSONObject> array = new ArrayList<>();
+		for (Rule r : rules) {
+			RuleStats stats = r.getStats();
+			JSONObject obj = new JSONObject();
+			obj.put("file", r.getScriptFile().toString());
+			obj.put("line", r.getStartLine());
+			obj.put("policy", r.getPolicy().toString());
+			obj.put("disabled", r.isDisabled());
+			obj.put("evaluations", stats.getEvaluations());
+			obj.put("matches", stats.getMatches());
+			obj.put("executions", stats.getExecutions());
+			obj.put("errors", stats.getErrors());
+			obj.put("dropped", stats.getDropped());
+			obj.put("violations", stats.getViolations());
+			obj.put("totalMs", stats.getTotalMillis());
+			obj.put("p50Ms", stats.getPercentileMillis(50));
+			obj.put("p99Ms", stats.getPercentileMillis(99));
+			obj.put("maxMs", stats.getMaxMillis());
+			array.add(obj);
+		}
+
+		resp.sendResult(array);
+	}
+
+}
@@ -119,6 +119,7 @@ public class ApiSocket extends WebSocketAdapter {
 				resp.put("connectionId", connectionId);
 				resp.put("pingInterval", pingInterval);
 				resp.put("responseTimeout", respTimeout);
+				resp.put("epoch", Bus.getEpoch());
 				resp.send();
 				ping();
 				logger.debug("Socket connected - Host: {}", hostname);
@@ -219,7 +220,12 @@ public class ApiSocket extends WebSocketAdapter {
 						nodesSubscription.destroy();
 					}
 					nodesSubscription = new WsEventListener(this, nodes, connectionId);
-					nodesSubscription.sendCurrentSate();
+					Object seq = message.get("seq");
+					Object epoch = message.get("epoch");
+					if (!(seq instanceof Number) || !Bus.getEpoch().equals(epoch)
+							|| !nodesSubscription.sendEventsAfter(((Number) seq).longValue())) {
+						nodesSubscription.sendCurrentSate();
+					}
 					ok = true;
 				}
 				if (files != null) {
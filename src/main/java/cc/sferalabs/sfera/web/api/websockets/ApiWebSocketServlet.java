@@ -22,6 +22,7 @@
 
 package cc.sferalabs.sfera.web.api.websockets;
 
+import org.eclipse.jetty.websocket.api.extensions.ExtensionFactory;
 import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
 import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 
@@ -47,6 +48,14 @@ public class ApiWebSocketServlet extends WebSocketServlet {
 		long respTimeout = SystemNode.getConfiguration().get("ws_response_timeout", 5000l);
 		factory.setCreator(new ApiSocketCreator(pingInterval, respTimeout));
 		factory.getPolicy().setIdleTimeout(pingInterval + respTimeout);
+		ExtensionFactory extensions = factory.getExtensionFactory();
+		extensions.unregister("deflate-frame");
+		extensions.unregister("x-webkit-deflate-frame");
+		if (SystemNode.getConfiguration().get("ws_compression", true)) {
+			extensions.register("permessage-deflate", MeteredPerMessageDeflateExtension.class);
+		} else {
+			extensions.unregister("permessage-deflate");
+		}
 	}
 
 }
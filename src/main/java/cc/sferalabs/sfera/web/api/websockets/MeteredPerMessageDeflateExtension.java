@@ -0,0 +1,59 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.web.api.websockets;
+
+import org.eclipse.jetty.websocket.api.BatchMode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.common.OpCode;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
+
+import cc.sferalabs.sfera.web.CompressionStats;
+
+/**
+ * {@link PerMessageDeflateExtension} recording the compression statistics in
+ * {@link CompressionStats#WEBSOCKET}.
+ */
+public class MeteredPerMessageDeflateExtension extends PerMessageDeflateExtension {
+
+	@Override
+	public void outgoingFrame(Frame frame, WriteCallback callback, BatchMode batchMode) {
+		if (OpCode.isControlFrame(frame.getOpCode())) {
+			super.outgoingFrame(frame, callback, batchMode);
+			return;
+		}
+		int length = frame.getPayloadLength();
+		long start = System.nanoTime();
+		super.outgoingFrame(frame, callback, batchMode);
+		CompressionStats.WEBSOCKET.addUncompressed(length, System.nanoTime() - start);
+	}
+
+	@Override
+	protected void nextOutgoingFrame(Frame frame, WriteCallback callback, BatchMode batchMode) {
+		if (!OpCode.isControlFrame(frame.getOpCode())) {
+			CompressionStats.WEBSOCKET.addCompressed(frame.getPayloadLength());
+		}
+		super.nextOutgoingFrame(frame, callback, batchMode);
+	}
+
+}
@@ -22,14 +22,14 @@
 
 package cc.sferalabs.sfera.web.api.websockets;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import cc.sferalabs.sfera.core.SystemNode;
 import cc.sferalabs.sfera.events.Bus;
 import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.EventsReplay;
 import cc.sferalabs.sfera.web.ConnectionEventIdSpecListener;
 
 /**
@@ -44,6 +44,7 @@ import cc.sferalabs.sfera.web.ConnectionEventIdSpecListener;
 class WsEventListener extends ConnectionEventIdSpecListener {
 
 	private final ApiSocket socket;
+	private final int snapshotChunkSize;
 
 	/**
 	 * 
@@ -57,38 +58,81 @@ class WsEventListener extends ConnectionEventIdSpecListener {
 	WsEventListener(ApiSocket socket, String eventIdSpec, String connectionId) {
 		super(eventIdSpec, connectionId);
 		this.socket = socket;
+		this.snapshotChunkSize = Math.max(1, SystemNode.getConfiguration().get("api_snapshot_chunk_size", 500));
 	}
 
 	/**
-	 * 
+	 * Sends the current state of the subscribed nodes in messages of at most
+	 * {@code snapshotChunkSize} nodes, each one including the sequence number
+	 * the state is consistent with.
 	 */
 	void sendCurrentSate() {
-		List<Event> evs = new ArrayList<>();
-		for (Event e : Bus.getCurrentState().values()) {
+		sendChunked(Bus.getCurrentEvents(), Bus.getSequence());
+	}
+
+	/**
+	 * Sends the last state of the subscribed nodes that generated events after
+	 * the one with the specified sequence number, if still available.
+	 * 
+	 * @param seq
+	 *            the sequence number of the last event received by the client
+	 * @return {@code true} if the missed events were available and have been
+	 *         sent, {@code false} otherwise
+	 */
+	boolean sendEventsAfter(long seq) {
+		EventsReplay missed = Bus.getEventsAfter(seq);
+		if (missed == null) {
+			return false;
+		}
+		Map<String, Event> latest = new LinkedHashMap<>();
+		for (Event e : missed.getEvents()) {
 			if (matches(e)) {
-				evs.add(e);
+				latest.put(e.getId(), e);
 			}
 		}
-		if (!evs.isEmpty()) {
-			sendEvents(evs);
+		sendChunked(latest.values(), missed.getSequence());
+		return true;
+	}
+
+	/**
+	 * 
+	 * @param events
+	 * @param seq
+	 */
+	private void sendChunked(Iterable<Event> events, long seq) {
+		Map<String, Object> chunk = new HashMap<>();
+		for (Event e : events) {
+			if (matches(e)) {
+				chunk.put(e.getId(), e.getValue());
+				if (chunk.size() >= snapshotChunkSize) {
+					sendEvents(chunk, seq);
+					chunk = new HashMap<>();
+				}
+			}
+		}
+		if (!chunk.isEmpty()) {
+			sendEvents(chunk, seq);
 		}
 	}
 
 	@Override
 	protected void handleEvent(Event event) {
-		sendEvents(Arrays.asList(event));
+		Map<String, Object> eventsMap = new HashMap<>();
+		eventsMap.put(event.getId(), event.getValue());
+		long seq = Bus.getSequence(event);
+		sendEvents(eventsMap, seq < 0 ? null : seq);
 	}
 
 	/**
 	 * 
-	 * @param events
+	 * @param eventsMap
+	 * @param seq
 	 */
-	private void sendEvents(List<Event> events) {
-		Map<String, Object> eventsMap = new HashMap<>();
+	private void sendEvents(Map<String, Object> eventsMap, Long seq) {
 		try {
 			OutgoingWsMessage m = new OutgoingWsMessage("event", socket);
-			for (Event e : events) {
-				eventsMap.put(e.getId(), e.getValue());
+			if (seq != null) {
+				m.put("seq", seq);
 			}
 			m.send("nodes", eventsMap);
 		} catch (Exception e) {
@@ -0,0 +1,79 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+public class EventIdTest {
+
+	@Test
+	public void testIdentity() {
+		EventId id = EventId.of("eventIdTest.a.b");
+		assertSame(id, EventId.of("eventIdTest.a.b"));
+		assertSame(id, EventId.of("eventIdTest.a").getChild("b"));
+		assertEquals("eventIdTest.a.b", id.toString());
+	}
+
+	@Test
+	public void testHierarchy() {
+		EventId id = EventId.of("eventIdTest.light(1).level");
+		assertEquals(4, id.getHierarchy().size());
+		assertSame(EventId.of("eventIdTest.light(1)"), id.getParent());
+		assertSame(EventId.of("eventIdTest.light"), id.getParent().getParent());
+		assertNull(EventId.of("eventIdTest").getParent());
+		assertTrue(id.isOrDescendsFrom(EventId.of("eventIdTest.light")));
+	}
+
+	@Test
+	public void testRelease() throws Exception {
+		WeakReference<EventId> ref = new WeakReference<>(EventId.of("eventIdTest.released"));
+		for (int i = 0; i < 50 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(ref.get());
+	}
+
+	@Test
+	public void testBaseEventId() {
+		Node source = new Node("eventIdTestSource") {
+		};
+		try {
+			Event e = new ObjectEvent(source, "v", 1) {
+			};
+			assertEquals("eventIdTestSource.v", e.getId());
+			assertSame(EventId.of("eventIdTestSource.v"), e.getEventId());
+			assertSame(e.getEventId(), e.getEventId());
+		} finally {
+			source.destroy();
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.events;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+public class EventsUtilTest {
+
+	private static Event event(String id) {
+		return new Event() {
+
+			@Override
+			public String getId() {
+				return id;
+			}
+
+			@Override
+			public String getSubId() {
+				return id;
+			}
+
+			@Override
+			public Object getSource() {
+				return null;
+			}
+
+			@Override
+			public long getTimestamp() {
+				return 0;
+			}
+
+			@Override
+			public Object getValue() {
+				return null;
+			}
+
+			@Override
+			public Object getSimpleValue() {
+				return null;
+			}
+
+			@Override
+			public boolean isLoacal() {
+				return false;
+			}
+		};
+	}
+
+	private static boolean matches(String spec, String id) {
+		Predicate<Event> p = EventsUtil.getEventIdSpecMatchingPredicate(spec);
+		return p.test(event(id));
+	}
+
+	@Test
+	public void testExactAndAll() {
+		assertTrue(matches("a.b", "a.b"));
+		assertFalse(matches("a.b", "a.bc"));
+		assertTrue(matches("x;a.b;y", "a.b"));
+		assertTrue(matches("*", "a.b"));
+		assertTrue(matches("", "a.b"));
+		assertTrue(matches("x;*", "a.b"));
+	}
+
+	@Test
+	public void testWildcards() {
+		assertTrue(matches("a.*", "a.b.c"));
+		assertTrue(matches("a*", "a"));
+		assertFalse(matches("a.*", "a"));
+		assertTrue(matches("*.c", "a.b.c"));
+		assertFalse(matches("*.c", "a.b.cd"));
+		assertTrue(matches("a*c", "abc"));
+		assertFalse(matches("ab*bc", "abc"));
+		assertTrue(matches("a.*.c.*", "a.b.c.d"));
+		assertTrue(matches("a.*(*).level", "a.light(1).level"));
+		assertFalse(matches("a.*(*).level", "a.light.level"));
+		assertTrue(matches("x;a*c*e", "abcde"));
+		assertFalse(matches("a*c*e", "abced"));
+	}
+
+	@Test
+	public void testSegmentsWildcards() {
+		assertTrue(matches("a.**.c", "a.c"));
+		assertTrue(matches("a.**.c", "a.b.c"));
+		assertTrue(matches("a.**.c", "a.b.b.c"));
+		assertFalse(matches("a.**.c", "ab.c"));
+		assertTrue(matches("a.**", "a"));
+		assertTrue(matches("a.**", "a.b"));
+		assertFalse(matches("a.**", "ab"));
+		assertTrue(matches("**.c", "c"));
+		assertTrue(matches("**.c", "a.b.c"));
+		assertFalse(matches("**.c", "bc"));
+		assertTrue(matches("**", "a.b"));
+		assertTrue(matches("a.**.c.**.e", "a.c.e"));
+		assertTrue(matches("a.**.c.**.e", "a.b.c.d.e"));
+		assertTrue(matches("a**c", "abc"));
+	}
+
+}
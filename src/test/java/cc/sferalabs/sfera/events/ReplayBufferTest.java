@@ -0,0 +1,122 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ReplayBufferTest {
+
+	private static final Node SOURCE = new Node("replayBufferTest") {
+	};
+
+	private static Event[] add(ReplayBuffer buffer, long from, long to) {
+		Event[] events = new Event[(int) (to - from + 1)];
+		for (long seq = from; seq <= to; seq++) {
+			Event e = new ObjectEvent(SOURCE, "e" + seq, seq) {
+			};
+			events[(int) (seq - from)] = e;
+			buffer.add(seq, e);
+		}
+		return events;
+	}
+
+	@Test
+	public void testEventsAfter() {
+		ReplayBuffer buffer = new ReplayBuffer(4);
+		Event[] events = add(buffer, 1, 3);
+		EventsReplay replay = buffer.getEventsAfter(0, 3);
+		List<Event> after = replay.getEvents();
+		assertEquals(3, after.size());
+		for (int i = 0; i < 3; i++) {
+			assertSame(events[i], after.get(i));
+		}
+		assertEquals(3, replay.getSequence());
+		after = buffer.getEventsAfter(2, 3).getEvents();
+		assertEquals(1, after.size());
+		assertSame(events[2], after.get(0));
+		assertTrue(buffer.getEventsAfter(3, 3).getEvents().isEmpty());
+		assertEquals(3, buffer.getEventsAfter(3, 3).getSequence());
+	}
+
+	@Test
+	public void testOutOfRange() {
+		ReplayBuffer buffer = new ReplayBuffer(4);
+		add(buffer, 1, 10);
+		assertNull(buffer.getEventsAfter(11, 10));
+		assertNull(buffer.getEventsAfter(5, 10));
+		assertNull(buffer.getEventsAfter(-1, 10));
+		assertEquals(4, buffer.getEventsAfter(6, 10).getEvents().size());
+	}
+
+	@Test
+	public void testNotYetWritten() {
+		ReplayBuffer buffer = new ReplayBuffer(4);
+		Event[] events = add(buffer, 1, 1);
+		// sequence number 2 taken but its event not added yet
+		EventsReplay replay = buffer.getEventsAfter(0, 2);
+		assertEquals(1, replay.getEvents().size());
+		assertSame(events[0], replay.getEvents().get(0));
+		assertEquals(1, replay.getSequence());
+	}
+
+	@Test
+	public void testGap() {
+		ReplayBuffer buffer = new ReplayBuffer(8);
+		Event[] events = add(buffer, 1, 1);
+		// sequence number 2 still being posted while 3 and 4 already added
+		Event[] later = add(buffer, 3, 4);
+		EventsReplay replay = buffer.getEventsAfter(0, 4);
+		assertEquals(3, replay.getEvents().size());
+		assertSame(events[0], replay.getEvents().get(0));
+		assertSame(later[0], replay.getEvents().get(1));
+		assertSame(later[1], replay.getEvents().get(2));
+		// resume from the last event before the gap
+		assertEquals(1, replay.getSequence());
+	}
+
+	@Test
+	public void testOverwritten() {
+		ReplayBuffer buffer = new ReplayBuffer(4);
+		add(buffer, 1, 6);
+		// the head read before events 5 and 6 overwrote events 1 and 2
+		assertNull(buffer.getEventsAfter(1, 4));
+	}
+
+	@Test
+	public void testSequenceLookup() {
+		ReplayBuffer buffer = new ReplayBuffer(4);
+		Event[] events = add(buffer, 1, 6);
+		assertEquals(6, buffer.getSequence(events[5], 6));
+		assertEquals(3, buffer.getSequence(events[2], 6));
+		// overwritten
+		assertEquals(-1, buffer.getSequence(events[0], 6));
+	}
+
+}
@@ -0,0 +1,209 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.script.ScriptException;
+
+import org.junit.Test;
+
+import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.events.ObjectEvent;
+import cc.sferalabs.sfera.scripts.engine.CompiledAction;
+import cc.sferalabs.sfera.scripts.engine.FileScope;
+import cc.sferalabs.sfera.scripts.parser.ConditionTerm;
+import cc.sferalabs.sfera.scripts.parser.Parser;
+import cc.sferalabs.sfera.scripts.parser.ScriptErrorListener;
+
+public class ActionDispatcherTest {
+
+	private static final Node SOURCE = new Node("actionDispatcherTest") {
+	};
+
+	/**
+	 * Action blocking until released, recording its executions
+	 */
+	private static class BlockingAction implements CompiledAction {
+
+		private final CountDownLatch release = new CountDownLatch(1);
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger maxRunning = new AtomicInteger();
+		private final List<Event> executed = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public void call(Event event) throws ScriptException {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+			} finally {
+				executed.add(event);
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	private static Rule rule(String policy, CompiledAction action) throws ScriptException {
+		FileScope scope = new FileScope() {
+
+			@Override
+			public void put(String key, Object value) {
+			}
+
+			@Override
+			public void importLibrary(Object library) {
+			}
+
+			@Override
+			public void eval(String script) {
+			}
+
+			@Override
+			public CompiledAction compile(String a) {
+				return action;
+			}
+		};
+		ConditionTerm condition = ConditionTerm
+				.of(Parser.getParser("actionDispatcherTest.e", new ScriptErrorListener()).trigger());
+		return new Rule(condition, "", Paths.get("test.ev"), scope, ExecutionPolicy.of(policy));
+	}
+
+	private static Event[] dispatch(Rule rule, int count) {
+		Event[] events = new Event[count];
+		for (int i = 0; i < count; i++) {
+			events[i] = new ObjectEvent(SOURCE, "e", i) {
+			};
+			rule.executeAction(events[i]);
+		}
+		return events;
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timed out", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		BlockingAction action = new BlockingAction();
+		Rule rule = rule("concurrent", action);
+		dispatch(rule, 3);
+		waitFor(() -> action.running.get() == 3);
+		action.release.countDown();
+		waitFor(() -> rule.getStats().getExecutions() == 3);
+		assertEquals(0, rule.getStats().getDropped());
+	}
+
+	@Test
+	public void testSerial() throws Exception {
+		BlockingAction action = new BlockingAction();
+		Rule rule = rule("serial", action);
+		Event[] events = dispatch(rule, 4);
+		waitFor(() -> action.running.get() == 1);
+		action.release.countDown();
+		waitFor(() -> rule.getStats().getExecutions() == 4);
+		assertEquals(1, action.maxRunning.get());
+		for (int i = 0; i < events.length; i++) {
+			assertEquals(events[i], action.executed.get(i));
+		}
+	}
+
+	@Test
+	public void testDrop() throws Exception {
+		BlockingAction action = new BlockingAction();
+		Rule rule = rule("drop", action);
+		Event[] events = dispatch(rule, 1);
+		waitFor(() -> action.running.get() == 1);
+		dispatch(rule, 2);
+		assertEquals(2, rule.getStats().getDropped());
+		action.release.countDown();
+		waitFor(() -> rule.getStats().getExecutions() == 1);
+		assertEquals(1, action.executed.size());
+		assertEquals(events[0], action.executed.get(0));
+		dispatch(rule, 1);
+		waitFor(() -> rule.getStats().getExecutions() == 2);
+	}
+
+	@Test
+	public void testLatest() throws Exception {
+		BlockingAction action = new BlockingAction();
+		Rule rule = rule("latest", action);
+		Event first = dispatch(rule, 1)[0];
+		waitFor(() -> action.running.get() == 1);
+		Event[] events = dispatch(rule, 3);
+		assertEquals(2, rule.getStats().getDropped());
+		action.release.countDown();
+		waitFor(() -> rule.getStats().getExecutions() == 2);
+		assertEquals(first, action.executed.get(0));
+		assertEquals(events[2], action.executed.get(1));
+		assertEquals(1, action.maxRunning.get());
+	}
+
+	@Test
+	public void testMax() throws Exception {
+		BlockingAction action = new BlockingAction();
+		Rule rule = rule("max(2)", action);
+		dispatch(rule, 6);
+		waitFor(() -> action.running.get() == 2);
+		Thread.sleep(50);
+		assertEquals(2, action.running.get());
+		action.release.countDown();
+		waitFor(() -> rule.getStats().getExecutions() == 6);
+		assertEquals(2, action.maxRunning.get());
+		assertEquals(0, rule.getStats().getDropped());
+	}
+
+	@Test
+	public void testQueueOverflow() throws Exception {
+		BlockingAction action = new BlockingAction();
+		Rule rule = rule("serial", action);
+		ActionDispatcher dispatcher = new ActionDispatcher(rule, ExecutionPolicy.of("serial"), 2);
+		for (int i = 0; i < 5; i++) {
+			dispatcher.dispatch(new ObjectEvent(SOURCE, "e", i) {
+			});
+			if (i == 0) {
+				waitFor(() -> action.running.get() == 1);
+			}
+		}
+		assertEquals(2, rule.getStats().getDropped());
+		action.release.countDown();
+		waitFor(() -> rule.getStats().getExecutions() == 3);
+		assertEquals(3, action.executed.size());
+	}
+
+}
@@ -0,0 +1,147 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.script.ScriptException;
+
+import org.junit.Test;
+
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.events.ObjectEvent;
+import cc.sferalabs.sfera.scripts.engine.CompiledAction;
+import cc.sferalabs.sfera.scripts.engine.FileScope;
+import cc.sferalabs.sfera.scripts.parser.ConditionTerm;
+import cc.sferalabs.sfera.scripts.parser.Parser;
+import cc.sferalabs.sfera.scripts.parser.ScriptErrorListener;
+
+public class ActionsWatchdogTest {
+
+	private static final Node SOURCE = new Node("actionsWatchdogTest") {
+	};
+
+	private static Rule rule(CompiledAction action) throws ScriptException {
+		FileScope scope = new FileScope() {
+
+			@Override
+			public void put(String key, Object value) {
+			}
+
+			@Override
+			public void importLibrary(Object library) {
+			}
+
+			@Override
+			public void eval(String script) {
+			}
+
+			@Override
+			public CompiledAction compile(String a) {
+				return action;
+			}
+		};
+		ConditionTerm condition = ConditionTerm
+				.of(Parser.getParser("actionsWatchdogTest.e", new ScriptErrorListener()).trigger());
+		return new Rule(condition, "", Paths.get("test.ev"), scope, ExecutionPolicy.of("concurrent"));
+	}
+
+	private static Rule scriptRule(String action) throws ScriptException {
+		ConditionTerm condition = ConditionTerm
+				.of(Parser.getParser("actionsWatchdogTest.e", new ScriptErrorListener()).trigger());
+		return new Rule(condition, action, Paths.get("test.ev"),
+				ScriptsEngine.getProvider().newFileScope(), ExecutionPolicy.of("concurrent"));
+	}
+
+	private static void run(Rule rule, long timeoutMillis, int maxViolations) {
+		ActionsWatchdog.configure(timeoutMillis, 0, maxViolations);
+		try {
+			new ActionTask(new ObjectEvent(SOURCE, "e", 1) {
+			}, rule).execute();
+		} finally {
+			ActionsWatchdog.configure(0, 0, 0);
+		}
+	}
+
+	@Test
+	public void testInterrupt() throws Exception {
+		AtomicBoolean interrupted = new AtomicBoolean();
+		Rule rule = rule(e -> {
+			try {
+				Thread.sleep(5000);
+			} catch (InterruptedException ie) {
+				interrupted.set(true);
+			}
+		});
+		run(rule, 50, 0);
+		assertTrue(interrupted.get());
+		assertEquals(1, rule.getStats().getViolations());
+		assertFalse(rule.isDisabled());
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	public void testRepeatedViolations() throws Exception {
+		Rule rule = rule(e -> {
+			long end = System.currentTimeMillis() + 400;
+			while (System.currentTimeMillis() < end) {
+				// ignores interrupts
+			}
+		});
+		run(rule, 50, 3);
+		assertTrue(rule.getStats().getViolations() >= 3);
+		assertTrue(rule.isDisabled());
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	public void testEndlessScriptLoops() throws Exception {
+		String[] actions = { "while (true) {}", "for (;;);", "do {} while (1);",
+				"function spin() { for (var i = 0; i >= 0; i = 1); } spin();",
+				"while (true) { try { for (;;) {} } catch (e) {} }" };
+		for (String action : actions) {
+			Rule rule = scriptRule(action);
+			Thread t = new Thread(() -> run(rule, 50, 0));
+			t.start();
+			t.join(5000);
+			assertFalse(action, t.isAlive());
+			assertEquals(action, 1, rule.getStats().getViolations());
+			assertEquals(action, 1, rule.getStats().getErrors());
+		}
+	}
+
+	@Test
+	public void testWithinLimits() throws Exception {
+		Rule rule = rule(e -> {
+		});
+		run(rule, 1000, 1);
+		assertEquals(0, rule.getStats().getViolations());
+		assertFalse(rule.isDisabled());
+	}
+
+}
@@ -0,0 +1,142 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Objects;
+
+import org.junit.Test;
+
+import cc.sferalabs.sfera.events.Bus;
+import cc.sferalabs.sfera.events.DoubleEvent;
+import cc.sferalabs.sfera.events.Node;
+
+public class AggregateNodeTest {
+
+	private static void post(Node source, String id, double value) {
+		Bus.post(new DoubleEvent(source, id, value) {
+		});
+	}
+
+	/**
+	 * Waits until the events with the specified IDs have the specified values,
+	 * since the aggregates are posted one at a time.
+	 */
+	private static void waitForValues(Object... idsAndValues) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		for (int i = 0; i < idsAndValues.length; i += 2) {
+			while (!Objects.equals(Bus.getValueOf((String) idsAndValues[i]), idsAndValues[i + 1])) {
+				assertTrue(idsAndValues[i] + " = " + Bus.getValueOf((String) idsAndValues[i]),
+						System.currentTimeMillis() < deadline);
+				Thread.sleep(5);
+			}
+		}
+	}
+
+	@Test
+	public void testSlidingWindow() throws Exception {
+		Node in = new Node("aggSlidingIn") {
+		};
+		AggregateNode agg = new AggregateNode("aggSliding", "aggSlidingIn.*", 500);
+		try {
+			post(in, "a", 1);
+			post(in, "b", 5);
+			post(in, "a", 3);
+			waitForValues("aggSliding.count", 3L, "aggSliding.sum", 9.0, "aggSliding.avg", 3.0,
+					"aggSliding.min", 1.0, "aggSliding.max", 5.0);
+			// all the values exit the window
+			waitForValues("aggSliding.count", 0L, "aggSliding.sum", 0.0, "aggSliding.avg", null,
+					"aggSliding.min", null, "aggSliding.max", null);
+		} finally {
+			agg.destroy();
+			in.destroy();
+		}
+	}
+
+	@Test
+	public void testSlidingMinMax() throws Exception {
+		Node in = new Node("aggMinMaxIn") {
+		};
+		AggregateNode agg = new AggregateNode("aggMinMax", "aggMinMaxIn.v", 400);
+		try {
+			post(in, "v", 2);
+			waitForValues("aggMinMax.count", 1L);
+			Thread.sleep(200);
+			post(in, "v", 7);
+			post(in, "v", 4);
+			waitForValues("aggMinMax.count", 3L, "aggMinMax.min", 2.0, "aggMinMax.max", 7.0);
+			// the first value exits the window
+			waitForValues("aggMinMax.count", 2L, "aggMinMax.sum", 11.0, "aggMinMax.min", 4.0,
+					"aggMinMax.max", 7.0);
+		} finally {
+			agg.destroy();
+			in.destroy();
+		}
+	}
+
+	@Test
+	public void testTumblingWindow() throws Exception {
+		Node in = new Node("aggTumblingIn") {
+		};
+		AggregateNode agg = new AggregateNode("aggTumbling", "aggTumblingIn.v", 300, "tumbling");
+		try {
+			post(in, "v", 2);
+			post(in, "v", 4);
+			// aggregates are posted at the end of the window only
+			assertNull(Bus.getValueOf("aggTumbling.count"));
+			waitForValues("aggTumbling.count", 2L, "aggTumbling.sum", 6.0, "aggTumbling.avg", 3.0,
+					"aggTumbling.min", 2.0, "aggTumbling.max", 4.0);
+			// next window without values
+			waitForValues("aggTumbling.count", 0L, "aggTumbling.avg", null);
+		} finally {
+			agg.destroy();
+			in.destroy();
+		}
+	}
+
+	@Test
+	public void testGroups() throws Exception {
+		Node in = new Node("aggGroupsIn") {
+		};
+		AggregateNode agg = new AggregateNode("aggGroups", "aggGroupsIn.*.v", 1000, "sliding", 2);
+		try {
+			post(in, "a.v", 1);
+			post(in, "b.v", 10);
+			post(in, "a.v", 3);
+			waitForValues("aggGroups.count", 3L, "aggGroups.sum", 14.0, "aggGroups.group(a).count", 2L,
+					"aggGroups.group(a).sum", 4.0, "aggGroups.group(b).count", 1L,
+					"aggGroups.group(b).max", 10.0);
+		} finally {
+			agg.destroy();
+			in.destroy();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWindow() {
+		new AggregateNode("aggInvalid", "aggInvalidIn.v", 100, "hopping");
+	}
+
+}
@@ -0,0 +1,178 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Objects;
+
+import org.junit.Test;
+
+import cc.sferalabs.sfera.events.Bus;
+import cc.sferalabs.sfera.events.DoubleEvent;
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.events.ObjectEvent;
+
+public class ComputedNodeTest {
+
+	private static void post(Node source, String id, double value) {
+		Bus.post(new DoubleEvent(source, id, value) {
+		});
+	}
+
+	/**
+	 * Waits until the events with the specified IDs have the specified values.
+	 */
+	private static void waitForValues(Object... idsAndValues) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		for (int i = 0; i < idsAndValues.length; i += 2) {
+			while (!Objects.equals(Bus.getValueOf((String) idsAndValues[i]), idsAndValues[i + 1])) {
+				assertTrue(idsAndValues[i] + " = " + Bus.getValueOf((String) idsAndValues[i]),
+						System.currentTimeMillis() < deadline);
+				Thread.sleep(5);
+			}
+		}
+	}
+
+	@Test
+	public void testFunctions() throws Exception {
+		Node in = new Node("compIn") {
+		};
+		ComputedNode[] nodes = { ComputedNode.define("compSum = sum(compIn.*)"),
+				ComputedNode.define("compAvg = avg(compIn.*)"),
+				ComputedNode.define("compMin = min(compIn.*)"),
+				ComputedNode.define("compMax = max(compIn.*)"),
+				ComputedNode.define("compCount = count(compIn.*)") };
+		try {
+			post(in, "a", 1);
+			post(in, "b", 5);
+			post(in, "c", 3);
+			waitForValues("compSum", 9.0, "compAvg", 3.0, "compMin", 1.0, "compMax", 5.0,
+					"compCount", 3L);
+			// inputs are replaced by their new values
+			post(in, "a", 4);
+			waitForValues("compSum", 12.0, "compAvg", 4.0, "compMin", 3.0, "compMax", 5.0,
+					"compCount", 3L);
+		} finally {
+			for (ComputedNode n : nodes) {
+				n.destroy();
+			}
+			in.destroy();
+		}
+	}
+
+	@Test
+	public void testNonNumericInput() throws Exception {
+		Node in = new Node("compNonNumIn") {
+		};
+		ComputedNode sum = ComputedNode.define("compNonNumSum = sum(compNonNumIn.*)");
+		ComputedNode count = ComputedNode.define("compNonNumCount = count(compNonNumIn.*)");
+		try {
+			post(in, "a", 2);
+			post(in, "b", 3);
+			waitForValues("compNonNumSum", 5.0, "compNonNumCount", 2L);
+			// a non-numeric value removes the input
+			Bus.post(new ObjectEvent(in, "a", "off") {
+			});
+			waitForValues("compNonNumSum", 3.0, "compNonNumCount", 1L);
+		} finally {
+			sum.destroy();
+			count.destroy();
+			in.destroy();
+		}
+	}
+
+	@Test
+	public void testInitialValues() throws Exception {
+		Node in = new Node("compInitIn") {
+		};
+		try {
+			post(in, "a", 2);
+			post(in, "b", 8);
+			waitForValues("compInitIn.a", 2.0, "compInitIn.b", 8.0);
+			// current values are taken as inputs when the node is defined
+			ComputedNode avg = ComputedNode.define("compInitAvg = avg(compInitIn.*)");
+			try {
+				waitForValues("compInitAvg", 5.0);
+			} finally {
+				avg.destroy();
+			}
+		} finally {
+			in.destroy();
+		}
+	}
+
+	@Test
+	public void testDestroyedInput() throws Exception {
+		Node a = new Node("compDeadIn.a") {
+		};
+		Node b = new Node("compDeadIn.b") {
+		};
+		ComputedNode sum = ComputedNode.define("compDeadSum = sum(compDeadIn.*.v)");
+		ComputedNode count = ComputedNode.define("compDeadCount = count(compDeadIn.*.v)");
+		try {
+			post(a, "v", 2);
+			post(b, "v", 3);
+			waitForValues("compDeadSum", 5.0, "compDeadCount", 2L);
+			// the inputs of destroyed nodes are discarded
+			b.destroy();
+			post(a, "v", 4);
+			waitForValues("compDeadSum", 4.0, "compDeadCount", 1L);
+		} finally {
+			sum.destroy();
+			count.destroy();
+			a.destroy();
+			b.destroy();
+		}
+	}
+
+	@Test
+	public void testNoDrift() throws Exception {
+		Node in = new Node("compDriftIn") {
+		};
+		ComputedNode sum = ComputedNode.define("compDriftSum = sum(compDriftIn.*)");
+		try {
+			post(in, "a", 1e16);
+			post(in, "b", 1);
+			waitForValues("compDriftSum", 1e16);
+			// the sum is recomputed from the inputs, so the precision lost
+			// adding the large value is not carried over
+			post(in, "a", 0);
+			waitForValues("compDriftSum", 1.0);
+		} finally {
+			sum.destroy();
+			in.destroy();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidDefinition() {
+		ComputedNode.define("compInvalid sum(compIn.*)");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownFunction() {
+		ComputedNode.define("compUnknown = median(compIn.*)");
+	}
+
+}
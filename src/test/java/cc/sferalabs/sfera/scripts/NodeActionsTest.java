@@ -0,0 +1,143 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.scripts.NodeActions.Template;
+
+public class NodeActionsTest {
+
+	public static class RecorderNode extends Node {
+
+		private Object value;
+
+		public RecorderNode(String id) {
+			super(id);
+		}
+
+		public Object set(Object value) {
+			this.value = value;
+			return value;
+		}
+	}
+
+	private static void assertTemplate(String action, String text, Object... params) {
+		Template t = NodeActions.toTemplate(action);
+		assertEquals(text, t.text);
+		assertEquals(Arrays.asList(params), t.params);
+		for (int i = 0; i < params.length; i++) {
+			assertEquals(params[i].getClass(), t.params.get(i).getClass());
+		}
+	}
+
+	private static void assertNotTemplated(String action) {
+		Template t = NodeActions.toTemplate(action);
+		assertEquals(action, t.text);
+		assertEquals(Collections.emptyList(), t.params);
+	}
+
+	@Test
+	public void testStrings() {
+		assertTemplate("n.set(\"a b\", 'c')", "n.set($p0, $p1)", "a b", "c");
+		assertTemplate("n.set('')", "n.set($p0)", "");
+	}
+
+	@Test
+	public void testNumbers() {
+		assertTemplate("n.set(12, 1.5, 0)", "n.set($p0, $p1, $p2)", 12, 1.5, 0);
+		assertTemplate("n.set(2147483647, 2147483648)", "n.set($p0, $p1)", 2147483647,
+				2147483648.0);
+	}
+
+	@Test
+	public void testNegativeNumbers() {
+		assertTemplate("n.set(-3, +4, -0.25)", "n.set($p0, $p1, $p2)", -3, 4, -0.25);
+		// the sign is an operator applied to the literal
+		assertTemplate("n.set(-2147483648, -0)", "n.set($p0, $p1)", -2147483648.0, -0.0);
+	}
+
+	@Test
+	public void testBooleans() {
+		assertTemplate("n.set(true, false)", "n.set($p0, $p1)", true, false);
+		assertNotTemplated("n.set(trueValue)");
+	}
+
+	@Test
+	public void testNested() {
+		assertTemplate("n.set([1, 'a'], x.get(2))", "n.set([$p0, $p1], x.get($p2))", 1, "a", 2);
+		assertNotTemplated("n.v1.set(x)");
+	}
+
+	@Test
+	public void testFallback() {
+		assertNotTemplated("n.set('a\\'b')");
+		assertNotTemplated("n.set(\"a\\nb\")");
+		assertNotTemplated("n.set(1e3)");
+		assertNotTemplated("n.set(0x1F)");
+		assertNotTemplated("n.set(1a)");
+		assertNotTemplated("n.set('unterminated)");
+		// engine dependent literals are left in place
+		assertNotTemplated("n.set(1.0)");
+		assertNotTemplated("n.set(010)");
+		assertTemplate("n.set(2.0, 'a')", "n.set(2.0, $p0)", "a");
+	}
+
+	@Test
+	public void testSameValuesAsEngine() throws Exception {
+		RecorderNode node = new RecorderNode("nodeActionsTest");
+		try {
+			for (String literal : new String[] { "1", "-1", "+7", "1.5", "-2.75", "0", "-0", "2.0",
+					"2147483647", "2147483648", "-2147483648", "010", "'s'", "\"s t\"", "'a\\tb'",
+					"true", "false" }) {
+				String action = "nodeActionsTest.set(" + literal + ")";
+				Object direct = NodeActions.eval(action, null);
+				node.value = null;
+				ScriptsEngine.getProvider().eval(action, null);
+				Object engine = node.value;
+				assertEquals(literal, engine, direct);
+				assertEquals(literal, engine.getClass(), direct.getClass());
+			}
+		} finally {
+			node.destroy();
+		}
+	}
+
+	@Test
+	public void testExpressionScopesNotShared() throws Exception {
+		for (String expression : new String[] { "leaked = 1", "var leaked = 1",
+				"function leaked() {}" }) {
+			ScriptsEngine.getProvider().compileExpression(expression).eval(null);
+			Object type = ScriptsEngine.getProvider().compileExpression("typeof leaked").eval(null);
+			assertTrue(expression, "undefined".equals(type));
+		}
+	}
+
+}
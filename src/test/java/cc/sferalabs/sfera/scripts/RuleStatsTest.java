@@ -0,0 +1,100 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RuleStatsTest {
+
+	private static void addExecutions(RuleStats stats, int count, long micros) {
+		for (int i = 0; i < count; i++) {
+			stats.addExecution(TimeUnit.MICROSECONDS.toNanos(micros), false);
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		RuleStats stats = new RuleStats();
+		assertEquals(0, stats.getPercentileMillis(50), 0);
+		assertEquals(0, stats.getPercentileMillis(99), 0);
+		assertEquals(0, stats.getMaxMillis(), 0);
+	}
+
+	@Test
+	public void testPercentiles() {
+		RuleStats stats = new RuleStats();
+		addExecutions(stats, 90, 100);
+		addExecutions(stats, 10, 10000);
+		assertEquals(100, stats.getExecutions());
+		// 100 us falls in the [64, 128) us bucket
+		assertEquals(0.128, stats.getPercentileMillis(50), 1e-9);
+		assertEquals(0.128, stats.getPercentileMillis(90), 1e-9);
+		// bucket upper bounds are capped to the max
+		assertEquals(10, stats.getPercentileMillis(91), 1e-9);
+		assertEquals(10, stats.getPercentileMillis(99), 1e-9);
+		assertEquals(10, stats.getPercentileMillis(100), 1e-9);
+		assertEquals(10, stats.getMaxMillis(), 1e-9);
+		assertEquals(109, stats.getTotalMillis(), 1e-9);
+	}
+
+	@Test
+	public void testBucketBounds() {
+		RuleStats stats = new RuleStats();
+		addExecutions(stats, 1, 0);
+		assertEquals(0, stats.getPercentileMillis(100), 1e-9);
+		stats.reset();
+		addExecutions(stats, 1, 1023);
+		addExecutions(stats, 1, 1024);
+		addExecutions(stats, 1, 2000);
+		// 1023 us falls in the [512, 1024) us bucket, 1024 us in the next one
+		assertEquals(1.024, stats.getPercentileMillis(33), 1e-9);
+		assertEquals(2, stats.getPercentileMillis(66), 1e-9);
+		assertEquals(2, stats.getPercentileMillis(100), 1e-9);
+	}
+
+	@Test
+	public void testCountersAndReset() {
+		RuleStats stats = new RuleStats();
+		stats.addEvaluation(true);
+		stats.addEvaluation(false);
+		stats.addExecution(1000, true);
+		stats.addDropped();
+		stats.addViolation();
+		assertEquals(2, stats.getEvaluations());
+		assertEquals(1, stats.getMatches());
+		assertEquals(1, stats.getExecutions());
+		assertEquals(1, stats.getErrors());
+		assertEquals(1, stats.getDropped());
+		assertEquals(1, stats.getViolations());
+		stats.reset();
+		assertEquals(0, stats.getEvaluations());
+		assertEquals(0, stats.getExecutions());
+		assertEquals(0, stats.getDropped());
+		assertEquals(0, stats.getPercentileMillis(50), 0);
+	}
+
+}
@@ -0,0 +1,112 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptException;
+
+import org.junit.Test;
+
+import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.events.Nodes;
+import cc.sferalabs.sfera.events.ObjectEvent;
+import cc.sferalabs.sfera.scripts.engine.CompiledAction;
+import cc.sferalabs.sfera.scripts.engine.FileScope;
+import cc.sferalabs.sfera.scripts.parser.ConditionTerm;
+import cc.sferalabs.sfera.scripts.parser.Parser;
+import cc.sferalabs.sfera.scripts.parser.ScriptErrorListener;
+
+public class ScriptNodesTest {
+
+	private static final Node SOURCE = new Node("scriptNodesTest") {
+	};
+
+	private static Rule rule(Path scriptFile, CompiledAction action) throws ScriptException {
+		FileScope scope = new FileScope() {
+
+			@Override
+			public void put(String key, Object value) {
+			}
+
+			@Override
+			public void importLibrary(Object library) {
+			}
+
+			@Override
+			public void eval(String script) {
+			}
+
+			@Override
+			public CompiledAction compile(String a) {
+				return action;
+			}
+		};
+		ConditionTerm condition = ConditionTerm
+				.of(Parser.getParser("scriptNodesTest.e", new ScriptErrorListener()).trigger());
+		return new Rule(condition, "", scriptFile, scope);
+	}
+
+	@Test
+	public void testActionNodesClearedWithFile() throws Exception {
+		Path file = Paths.get("scriptNodesTest.ev");
+		CountDownLatch[] done = { new CountDownLatch(1) };
+		Rule rule = rule(file, new CompiledAction() {
+
+			@Override
+			public void call(Event event) throws ScriptException {
+				try {
+					ComputedNode.define("scriptNodesTestSum = sum(scriptNodesTest.*)");
+				} finally {
+					done[0].countDown();
+				}
+			}
+		});
+		try {
+			rule.executeAction(new ObjectEvent(SOURCE, "e", 1) {
+			});
+			assertTrue(done[0].await(5, TimeUnit.SECONDS));
+			assertNotNull(Nodes.get("scriptNodesTestSum"));
+			// reloading the file of the rule destroys the nodes created by
+			// its actions, so that they can be created again
+			ScriptNodes.clear(file.toUri().toString());
+			assertNull(Nodes.get("scriptNodesTestSum"));
+			done[0] = new CountDownLatch(1);
+			rule.executeAction(new ObjectEvent(SOURCE, "e", 2) {
+			});
+			assertTrue(done[0].await(5, TimeUnit.SECONDS));
+			assertNotNull(Nodes.get("scriptNodesTestSum"));
+		} finally {
+			ScriptNodes.clear(file.toUri().toString());
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import cc.sferalabs.sfera.events.DoubleEvent;
+import cc.sferalabs.sfera.events.Event;
+import cc.sferalabs.sfera.events.EventId;
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.events.ObjectEvent;
+
+public class TemporalOperatorTest {
+
+	private static final Node SOURCE = new Node("temporalOperatorTest") {
+	};
+	private static final EventId NODE = EventId.of("temporalOperatorTest.v");
+
+	private static Event event(double value) {
+		return new DoubleEvent(SOURCE, "v", value) {
+		};
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timed out", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void testForPredicate() throws Exception {
+		TemporalOperator.For op = new TemporalOperator.For(NODE,
+				e -> ((DoubleEvent) e).getDoubleValue() > 5, 50);
+		op.update(event(6));
+		assertFalse(op.isSatisfied());
+		waitFor(op::isSatisfied);
+		op.update(event(7));
+		assertTrue(op.isSatisfied());
+		op.update(event(3));
+		assertFalse(op.isSatisfied());
+		op.update(event(8));
+		op.update(event(2));
+		Thread.sleep(150);
+		assertFalse(op.isSatisfied());
+		op.close();
+	}
+
+	@Test
+	public void testForUnchanged() throws Exception {
+		TemporalOperator.For op = new TemporalOperator.For(NODE, null, 50);
+		op.update(event(1));
+		assertFalse(op.isSatisfied());
+		waitFor(op::isSatisfied);
+		op.update(event(1));
+		assertTrue(op.isSatisfied());
+		op.update(event(2));
+		assertFalse(op.isSatisfied());
+		waitFor(op::isSatisfied);
+		op.close();
+	}
+
+	@Test
+	public void testForClose() throws Exception {
+		TemporalOperator.For op = new TemporalOperator.For(NODE, null, 50);
+		op.update(event(1));
+		op.close();
+		Thread.sleep(150);
+		assertFalse(op.isSatisfied());
+	}
+
+	@Test
+	public void testWithin() throws Exception {
+		TemporalOperator.Within op = new TemporalOperator.Within(NODE,
+				e -> ((DoubleEvent) e).getDoubleValue() > 5, 100);
+		assertFalse(op.isSatisfied());
+		op.update(event(3));
+		assertFalse(op.isSatisfied());
+		op.update(event(6));
+		assertTrue(op.isSatisfied());
+		Thread.sleep(150);
+		assertFalse(op.isSatisfied());
+	}
+
+	@Test
+	public void testChanged() throws Exception {
+		TemporalOperator.Changed op = new TemporalOperator.Changed(NODE);
+		Event e1 = event(1);
+		op.update(e1);
+		assertTrue(op.isChangedBy(e1));
+		Event e2 = event(1);
+		op.update(e2);
+		assertFalse(op.isChangedBy(e2));
+		Event e3 = new ObjectEvent(SOURCE, "v", "on") {
+		};
+		op.update(e3);
+		assertTrue(op.isChangedBy(e3));
+		assertFalse(op.isChangedBy(e1));
+	}
+
+	@Test
+	public void testRate() throws Exception {
+		TemporalOperator.Rate op = new TemporalOperator.Rate(NODE, 60000);
+		assertTrue(Double.isNaN(op.getRate()));
+		op.update(event(0));
+		assertTrue(Double.isNaN(op.getRate()));
+		Thread.sleep(50);
+		op.update(event(10));
+		assertTrue(op.getRate() > 0);
+		Thread.sleep(50);
+		op.update(event(-10));
+		assertTrue(op.getRate() < 0);
+		op.update(new ObjectEvent(SOURCE, "v", "off") {
+		});
+		assertTrue(op.getRate() < 0);
+	}
+
+	@Test
+	public void testRateMaxSamples() throws Exception {
+		TemporalOperator.Rate op = new TemporalOperator.Rate(NODE, 60000);
+		for (int i = 0; i < TemporalOperator.Rate.MAX_SAMPLES; i++) {
+			op.update(event(0));
+		}
+		Thread.sleep(10);
+		for (int i = 0; i < TemporalOperator.Rate.MAX_SAMPLES; i++) {
+			op.update(event(1000));
+		}
+		// the samples with value 0 have been discarded
+		assertEquals(0, op.getRate(), 0);
+	}
+
+}
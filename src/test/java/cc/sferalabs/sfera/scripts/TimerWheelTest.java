@@ -0,0 +1,91 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+	@Test
+	public void testSchedule() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		TimerWheel.INSTANCE.schedule(50, latch::countDown);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 40);
+	}
+
+	@Test
+	public void testZeroDelay() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		TimerWheel.INSTANCE.schedule(0, latch::countDown);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(1);
+		TimerWheel.INSTANCE.schedule(30, runs::incrementAndGet).cancel();
+		TimerWheel.INSTANCE.schedule(100, latch::countDown);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(0, runs.get());
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch latch = new CountDownLatch(3);
+		for (int delay : new int[] { 150, 20, 80 }) {
+			TimerWheel.INSTANCE.schedule(delay, () -> {
+				order.add(delay);
+				latch.countDown();
+			});
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(20, (int) order.get(0));
+		assertEquals(80, (int) order.get(1));
+		assertEquals(150, (int) order.get(2));
+	}
+
+	@Test
+	public void testTaskError() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		TimerWheel.INSTANCE.schedule(10, () -> {
+			throw new RuntimeException("test");
+		});
+		TimerWheel.INSTANCE.schedule(30, latch::countDown);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+}
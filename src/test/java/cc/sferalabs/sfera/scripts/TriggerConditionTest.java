@@ -0,0 +1,82 @@
+/*-
+ * +======================================================================+
+ * Sfera
+ * ---
+ * Copyright (C) 2015 - 2016 Sfera Labs S.r.l.
+ * ---
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * -======================================================================-
+ */
+
+package cc.sferalabs.sfera.scripts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cc.sferalabs.sfera.events.Node;
+import cc.sferalabs.sfera.events.StringEvent;
+import cc.sferalabs.sfera.scripts.parser.ConditionTerm;
+import cc.sferalabs.sfera.scripts.parser.ConditionTerm.Temporal;
+import cc.sferalabs.sfera.scripts.parser.Parser;
+import cc.sferalabs.sfera.scripts.parser.ScriptErrorListener;
+
+public class TriggerConditionTest {
+
+	private static ConditionTerm parse(String trigger) {
+		return ConditionTerm.of(Parser.getParser(trigger, new ScriptErrorListener()).trigger());
+	}
+
+	@Test
+	public void testTemporal() {
+		ConditionTerm term = parse("door.open.for(60000) == true");
+		assertEquals(Temporal.FOR, term.getTemporal());
+		assertEquals("door.open", term.getTemporalNode());
+		assertEquals(60000, term.getTemporalMillis());
+		term = parse("remote.changed()");
+		assertEquals(Temporal.CHANGED, term.getTemporal());
+		assertEquals(-1, term.getTemporalMillis());
+	}
+
+	@Test
+	public void testNodeIdParameters() throws Exception {
+		// not a valid time, so part of the node ID
+		ConditionTerm term = parse("remote.changed(1)");
+		assertNull(term.getTemporal());
+		assertFalse(term.isAmbiguous());
+		assertNull(parse("remote.for('a')").getTemporal());
+		Node remote = new Node("remote") {
+		};
+		try {
+			TriggerCondition condition = new TriggerCondition(term);
+			assertTrue(condition.eval(new StringEvent(remote, "changed(1)", "x") {
+			}));
+			assertTrue(condition.getOperators().isEmpty());
+		} finally {
+			remote.destroy();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAmbiguous() {
+		ConditionTerm term = parse("door.open.for(0) == true");
+		assertTrue(term.isAmbiguous());
+		new TriggerCondition(term);
+	}
+
+}